@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.util.Log;
+import android.util.Size;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+/**
+ * Selection of the image analysis resolution.
+ *
+ * The number of converted pixels per frame (and the detection latency) scales with the
+ * analysis resolution. In the automatic mode, the smallest resolution supported by the
+ * back camera is chosen at which the detection area still gives enough pixels per module
+ * for the requested formats.
+ *
+ * Sizes are expressed in sensor (landscape) orientation.
+ */
+public class AnalysisResolution {
+
+    private static final String TAG = "AnalysisResolution";
+
+    public static final String MODE_AUTO = "auto";
+
+    /** Pixels per module required by MLKit */
+    private static final int PIXELS_PER_MODULE = 2;
+    /** Min ratio of the code width to the detection area assumed by the automatic mode */
+    private static final double CODE_FILL_RATIO = 0.8;
+
+    /**
+     * Parse resolution option ("WIDTHxHEIGHT")
+     *
+     * @param value option value
+     * @return size in landscape orientation, or null if invalid
+     */
+    public static Size parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        String[] values = value.toLowerCase().split("x");
+        if (values.length != 2) {
+            return null;
+        }
+        try {
+            int width = Integer.parseInt(values[0].trim());
+            int height = Integer.parseInt(values[1].trim());
+            if (width <= 0 || height <= 0) {
+                return null;
+            }
+            return new Size(Math.max(width, height), Math.min(width, height));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the analysis resolutions supported by the back camera
+     *
+     * @param context
+     * @return sizes in landscape orientation, or null if not available
+     */
+    public static Size[] getSupportedSizes(Context context) {
+        CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        if (manager == null) {
+            return null;
+        }
+        try {
+            for (String cameraId : manager.getCameraIdList()) {
+                CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
+                Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+                if (facing == null || facing != CameraCharacteristics.LENS_FACING_BACK) {
+                    continue;
+                }
+                StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+                if (map != null) {
+                    return map.getOutputSizes(ImageFormat.YUV_420_888);
+                }
+            }
+        } catch (CameraAccessException e) {
+            Log.d(TAG, "Failed to get camera characteristics");
+        }
+        return null;
+    }
+
+    /**
+     * Choose the smallest resolution which gives enough pixels per module in the detection area
+     *
+     * The preview shows the image scaled by FILL_CENTER, so the image pixels per preview pixel
+     * is the smaller of the ratios of the long sides and of the short sides (the other side is
+     * cropped), as the visible part of the image is mapped by {@link CropGeometry}.
+     *
+     * @param supported     supported sizes (landscape)
+     * @param previewWidth  preview view width
+     * @param previewHeight preview view height
+     * @param areaWidth     detection area width
+     * @param areaHeight    detection area height
+     * @param formats       formats to detect (Barcode.FORMAT_XXXX)
+     * @return chosen size, or null if no size is supported
+     */
+    public static Size selectAuto(Size[] supported, int previewWidth, int previewHeight,
+                                  int areaWidth, int areaHeight, int[] formats) {
+        if (supported == null || supported.length == 0) {
+            return null;
+        }
+        int previewLong = Math.max(previewWidth, previewHeight);
+        int previewShort = Math.min(previewWidth, previewHeight);
+        int areaShort = Math.min(areaWidth, areaHeight);
+        // 検出範囲の短辺に必要な画素数
+        double requiredAreaPixels = getRequiredModules(formats) * PIXELS_PER_MODULE / CODE_FILL_RATIO;
+
+        Size best = null;
+        Size largest = null;
+        for (Size size : supported) {
+            long pixels = (long) size.getWidth() * size.getHeight();
+            if (largest == null || pixels > (long) largest.getWidth() * largest.getHeight()) {
+                largest = size;
+            }
+            if (areaShort > 0 && previewShort > 0) {
+                // FILL_CENTER: はみ出さない方の辺で拡大率が決まる
+                double pixelsPerPoint = Math.min(
+                        (double) Math.max(size.getWidth(), size.getHeight()) / previewLong,
+                        (double) Math.min(size.getWidth(), size.getHeight()) / previewShort);
+                if (areaShort * pixelsPerPoint < requiredAreaPixels) {
+                    continue;
+                }
+            } else if (Math.max(size.getWidth(), size.getHeight()) < requiredAreaPixels) {
+                continue;
+            }
+            if (best == null || pixels < (long) best.getWidth() * best.getHeight()) {
+                best = size;
+            }
+        }
+        Size chosen = best != null ? best : largest;
+        return new Size(Math.max(chosen.getWidth(), chosen.getHeight()), Math.min(chosen.getWidth(), chosen.getHeight()));
+    }
+
+    /**
+     * Get the max number of modules across the code among the formats
+     *
+     * The values are typical widths (including quiet zones for linear codes)
+     * rather than the max of each symbology.
+     *
+     * @param formats Barcode.FORMAT_XXXX
+     * @return number of modules
+     */
+    static int getRequiredModules(int[] formats) {
+        int modules = 0;
+        for (int format : formats) {
+            modules = Math.max(modules, getModules(format));
+        }
+        return modules;
+    }
+
+    private static int getModules(int format) {
+        switch (format) {
+            case Barcode.FORMAT_EAN_8:
+                return 81;
+            case Barcode.FORMAT_UPC_E:
+                return 69;
+            case Barcode.FORMAT_EAN_13:
+            case Barcode.FORMAT_UPC_A:
+                return 113;
+            case Barcode.FORMAT_ITF:
+                // ITF-14
+                return 155;
+            case Barcode.FORMAT_CODE_128:
+                // 12 文字程度
+                return 180;
+            case Barcode.FORMAT_CODE_39:
+                return 220;
+            case Barcode.FORMAT_CODE_93:
+                return 150;
+            case Barcode.FORMAT_CODABAR:
+                return 160;
+            case Barcode.FORMAT_PDF417:
+                return 200;
+            case Barcode.FORMAT_QR_CODE:
+                // version 10 + quiet zone
+                return 65;
+            case Barcode.FORMAT_DATA_MATRIX:
+                return 48;
+            case Barcode.FORMAT_AZTEC:
+                return 45;
+            default:
+                return 113;
+        }
+    }
+}
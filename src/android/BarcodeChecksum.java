@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+/**
+ * Check digit validator of GS1 numeric barcodes (EAN-8, EAN-13, UPC-A, UPC-E, ITF-14)
+ */
+public class BarcodeChecksum {
+
+    /**
+     * Check if the format has a check digit which can be validated
+     *
+     * @param format Barcode.FORMAT_XXXX
+     * @param value  raw value
+     * @return true if the value can be validated
+     */
+    public static boolean isSupported(int format, String value) {
+        if (value == null || !isDigits(value)) {
+            return false;
+        }
+        switch (format) {
+            case Barcode.FORMAT_EAN_8:
+                return value.length() == 8;
+            case Barcode.FORMAT_EAN_13:
+                return value.length() == 13;
+            case Barcode.FORMAT_UPC_A:
+                return value.length() == 12;
+            case Barcode.FORMAT_UPC_E:
+                return value.length() == 8;
+            case Barcode.FORMAT_ITF:
+                // ITF はチェックデジットが任意なので ITF-14 (GTIN-14) のみ検証する
+                return value.length() == 14;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Validate the check digit
+     *
+     * @param format Barcode.FORMAT_XXXX
+     * @param value  raw value
+     * @return true if the check digit is valid (false if not supported)
+     */
+    public static boolean isValid(int format, String value) {
+        if (!isSupported(format, value)) {
+            return false;
+        }
+        if (format == Barcode.FORMAT_UPC_E) {
+            String upcA = expandUpcE(value);
+            return upcA != null && isValidMod10(upcA);
+        }
+        return isValidMod10(value);
+    }
+
+    /**
+     * Validate GS1 mod 10 check digit (last digit)
+     *
+     * @param digits numeric string
+     * @return true if valid
+     */
+    static boolean isValidMod10(String digits) {
+        int length = digits.length();
+        int sum = 0;
+        // チェックデジットの左隣から重み 3, 1, 3, ... を掛ける
+        for (int i = length - 2, weight = 3; i >= 0; i --, weight = 4 - weight) {
+            sum += (digits.charAt(i) - '0') * weight;
+        }
+        int check = (10 - sum % 10) % 10;
+        return check == digits.charAt(length - 1) - '0';
+    }
+
+    /**
+     * Expand 8 digits UPC-E to 12 digits UPC-A
+     *
+     * @param upcE number system + 6 digits + check digit
+     * @return UPC-A, or null if the number system is not 0 or 1
+     */
+    static String expandUpcE(String upcE) {
+        char numberSystem = upcE.charAt(0);
+        if (numberSystem != '0' && numberSystem != '1') {
+            return null;
+        }
+        String d = upcE.substring(1, 7);
+        char last = d.charAt(5);
+        String body;
+        switch (last) {
+            case '0':
+            case '1':
+            case '2':
+                body = d.substring(0, 2) + last + "0000" + d.substring(2, 5);
+                break;
+            case '3':
+                body = d.substring(0, 3) + "00000" + d.substring(3, 5);
+                break;
+            case '4':
+                body = d.substring(0, 4) + "00000" + d.charAt(4);
+                break;
+            default:
+                body = d.substring(0, 5) + "0000" + last;
+                break;
+        }
+        return numberSystem + body + upcE.charAt(7);
+    }
+
+    private static boolean isDigits(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i ++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Mapping between MLKit barcode formats (Barcode.FORMAT_XXXX) and plugin format names
+ */
+public class BarcodeFormats {
+
+    public static final String UNKNOWN = "UNKNOWN";
+
+    /** Formats detected when no format is specified */
+    public static final int[] DEFAULT_FORMATS = {
+            Barcode.FORMAT_QR_CODE,
+            Barcode.FORMAT_EAN_8,
+            Barcode.FORMAT_EAN_13,
+            Barcode.FORMAT_ITF,
+            Barcode.FORMAT_CODE_128
+    };
+
+    private static final Map<String, Integer> NAME_TO_FORMAT = new LinkedHashMap<>();
+    private static final Map<Integer, String> FORMAT_TO_NAME = new LinkedHashMap<>();
+
+    static {
+        // CODE_128 は従来通り "128" として返す
+        register(Barcode.FORMAT_QR_CODE, "QR_CODE");
+        register(Barcode.FORMAT_EAN_8, "EAN_8");
+        register(Barcode.FORMAT_EAN_13, "EAN_13");
+        register(Barcode.FORMAT_ITF, "ITF");
+        register(Barcode.FORMAT_CODE_128, "128");
+        register(Barcode.FORMAT_CODE_39, "CODE_39");
+        register(Barcode.FORMAT_CODE_93, "CODE_93");
+        register(Barcode.FORMAT_CODABAR, "CODABAR");
+        register(Barcode.FORMAT_UPC_A, "UPC_A");
+        register(Barcode.FORMAT_UPC_E, "UPC_E");
+        register(Barcode.FORMAT_PDF417, "PDF417");
+        register(Barcode.FORMAT_DATA_MATRIX, "DATA_MATRIX");
+        register(Barcode.FORMAT_AZTEC, "AZTEC");
+        // aliases
+        NAME_TO_FORMAT.put("CODE_128", Barcode.FORMAT_CODE_128);
+        NAME_TO_FORMAT.put("ITF_14", Barcode.FORMAT_ITF);
+    }
+
+    private static void register(int format, String name) {
+        NAME_TO_FORMAT.put(name, format);
+        FORMAT_TO_NAME.put(format, name);
+    }
+
+    /**
+     * 定数 Barcode.FORMAT_XXXX からプラグインのフォーマット形式に変換
+     * @param format Barcode.FORMAT_XXXX
+     * @return formatStr: プラグインで定義するフォーマット文字列
+     */
+    public static String toName(int format) {
+        String name = FORMAT_TO_NAME.get(format);
+        return name != null ? name : UNKNOWN;
+    }
+
+    /**
+     * プラグインのフォーマット文字列から定数 Barcode.FORMAT_XXXX に変換
+     * @param name format name (case insensitive)
+     * @return Barcode.FORMAT_XXXX, or Barcode.FORMAT_UNKNOWN if not supported
+     */
+    public static int fromName(String name) {
+        if (name == null) {
+            return Barcode.FORMAT_UNKNOWN;
+        }
+        // 端末のロケールによらず変換する (トルコ語では "itf" が "İTF" になる)
+        Integer format = NAME_TO_FORMAT.get(name.trim().toUpperCase(Locale.ROOT));
+        return format != null ? format : Barcode.FORMAT_UNKNOWN;
+    }
+
+    /**
+     * Convert format names to the formats to detect
+     *
+     * @param names format names (unsupported names are ignored)
+     * @return formats, or {@link #DEFAULT_FORMATS} if no supported name is given
+     */
+    public static int[] fromNames(String[] names) {
+        if (names == null) {
+            return DEFAULT_FORMATS;
+        }
+        int[] formats = new int[names.length];
+        int count = 0;
+        for (String name : names) {
+            int format = fromName(name);
+            if (format == Barcode.FORMAT_UNKNOWN) {
+                continue;
+            }
+            boolean duplicated = false;
+            for (int i = 0; i < count; i ++) {
+                duplicated |= formats[i] == format;
+            }
+            if (!duplicated) {
+                formats[count ++] = format;
+            }
+        }
+        if (count == 0) {
+            return DEFAULT_FORMATS;
+        }
+        return Arrays.copyOf(formats, count);
+    }
+}
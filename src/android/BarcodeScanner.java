@@ -8,6 +8,7 @@ import android.app.Activity;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 
 import org.apache.cordova.CordovaPlugin;
@@ -19,7 +20,9 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Barcode scanner plugin class
@@ -31,18 +34,31 @@ public class BarcodeScanner extends CordovaPlugin {
     protected final static String[] permissions = {Manifest.permission.CAMERA};
     public static final String PERMISSION_DENIED_ERROR = "permission denied";
     public static final String UNKNOWN_ERROR = "unknown error";
+    public static final String FINISH_REASON_CANCELLED = "cancelled";
+    public static final String INVALID_ARGUMENT_ERROR = "invalid argument";
+    public static final String IMAGE_LOAD_ERROR = ImageScanner.IMAGE_LOAD_ERROR;
+    public static final String DETECTION_ERROR = ImageScanner.DETECTION_ERROR;
+    /** config.xml preference to prepare the scanner on startup */
+    public static final String PREFERENCE_WARMUP = "MonacaBarcodeScannerWarmUp";
+    /** Default idle timeout of a scanner session (sec) */
+    public static final int DEFAULT_SESSION_IDLE_TIMEOUT = 60;
     private JSONObject options;
+    private boolean continuous = false;
+    private int continuousCount = 0;
+    private long continuousStartTime = 0;
 
     public CallbackContext callbackContext;
+    /** Running batch of scanImages */
+    private volatile BatchImageScanner imageBatch;
 
     /**
      * ${inheritDoc}
      */
     @Override
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) {
-        this.callbackContext = callbackContext;
         if ("scan".equals(action)) {
             // plugin scan action
+            this.callbackContext = callbackContext;
             try {
                 if (args.length() > 0) {
                     options = args.getJSONObject(0);
@@ -50,13 +66,246 @@ public class BarcodeScanner extends CordovaPlugin {
             } catch (JSONException e) {
                 options = null;
             }
+            JSONObject continuousOptions = options != null ? options.optJSONObject("continuous") : null;
+            continuous = continuousOptions != null && continuousOptions.optBoolean("enable", false);
             callScanner();
+        } else if ("stop".equals(action)) {
+            // plugin stop action (continuous mode)
+            if (ScanChannel.requestStop()) {
+                callbackContext.success();
+            } else {
+                callbackContext.error("not scanning");
+            }
+        } else if ("openSession".equals(action)) {
+            // plugin openSession action
+            JSONObject sessionOptions = args.optJSONObject(0);
+            cordova.getActivity().runOnUiThread(() -> {
+                openSession(sessionOptions);
+                callbackContext.success();
+            });
+        } else if ("closeSession".equals(action)) {
+            // plugin closeSession action
+            cordova.getActivity().runOnUiThread(() -> {
+                ScannerSession session = ScannerSession.getCurrent();
+                if (session != null) {
+                    session.close();
+                    callbackContext.success();
+                } else {
+                    callbackContext.error("no session");
+                }
+            });
+        } else if ("scanImage".equals(action)) {
+            // plugin scanImage action
+            String uri = args.optString(0, null);
+            JSONObject imageOptions = args.optJSONObject(1);
+            if (uri == null || uri.isEmpty()) {
+                callbackContext.error(INVALID_ARGUMENT_ERROR);
+                return true;
+            }
+            cordova.getThreadPool().execute(() -> scanImage(uri, imageOptions, callbackContext));
+        } else if ("scanImages".equals(action)) {
+            // plugin scanImages action
+            JSONArray uris = args.optJSONArray(0);
+            if (uris == null) {
+                callbackContext.error(INVALID_ARGUMENT_ERROR);
+                return true;
+            }
+            scanImages(uris, args.optJSONObject(1), callbackContext);
+        } else if ("cancelScanImages".equals(action)) {
+            // plugin cancelScanImages action
+            BatchImageScanner batch = imageBatch;
+            if (batch != null && !batch.isCancelled()) {
+                batch.cancel();
+                callbackContext.success();
+            } else {
+                callbackContext.error("not scanning");
+            }
+        } else if ("prepare".equals(action)) {
+            // plugin prepare action
+            JSONObject prepareOptions = args.optJSONObject(0);
+            prepare(prepareOptions, callbackContext);
+        } else if ("getStats".equals(action)) {
+            // plugin getStats action
+            callbackContext.success(getStatsData());
         } else {
             return false;
         }
         return true;
     }
 
+    /**
+     * ${inheritDoc}
+     */
+    @Override
+    protected void pluginInitialize() {
+        // config.xml で指定された場合は事前準備しておく
+        // (MONACA_BARCODE_SCANNER_WARMUP 変数でインストールした場合はアプリ起動時に読み込まれる)
+        if (preferences.getBoolean(PREFERENCE_WARMUP, false)) {
+            ScannerWarmup.prepare(cordova.getActivity(), BarcodeFormats.DEFAULT_FORMATS, null);
+        }
+    }
+
+    /**
+     * Open a scanner session (main thread)
+     *
+     * @param sessionOptions {formats, idleTimeout} (nullable)
+     */
+    private void openSession(JSONObject sessionOptions) {
+        int idleTimeout = DEFAULT_SESSION_IDLE_TIMEOUT;
+        if (sessionOptions != null) {
+            idleTimeout = sessionOptions.optInt("idleTimeout", DEFAULT_SESSION_IDLE_TIMEOUT);
+        }
+        ScannerSession.open(cordova.getActivity(), BarcodeFormats.fromNames(getFormatNames(sessionOptions)),
+                idleTimeout * 1000L);
+    }
+
+    /**
+     * Get format names from options
+     *
+     * @param formatOptions {formats} (nullable)
+     * @return format names, or null if not specified
+     */
+    private static String[] getFormatNames(JSONObject formatOptions) {
+        JSONArray formats = formatOptions != null ? formatOptions.optJSONArray("formats") : null;
+        if (formats == null) {
+            return null;
+        }
+        String[] formatNames = new String[formats.length()];
+        for (int i = 0; i < formats.length(); i ++) {
+            formatNames[i] = formats.optString(i);
+        }
+        return formatNames;
+    }
+
+    /**
+     * Detect barcodes in an image (worker thread)
+     *
+     * @param uri          image URI (content://, file:// or file path)
+     * @param imageOptions {formats, maxPixels, tiling} (nullable)
+     * @param context      callback context
+     */
+    private void scanImage(String uri, JSONObject imageOptions, CallbackContext context) {
+        int[] formats = BarcodeFormats.fromNames(getFormatNames(imageOptions));
+        int maxPixels = imageOptions != null
+                ? imageOptions.optInt("maxPixels", ImageScanner.DEFAULT_MAX_PIXELS) : ImageScanner.DEFAULT_MAX_PIXELS;
+        try {
+            TiledDetector.Options tiling = TiledDetector.Options.fromJSON(
+                    imageOptions != null ? imageOptions.optJSONObject("tiling") : null);
+            ImageScanner.Result result = ImageScanner.scan(cordova.getActivity().getContentResolver(),
+                    ImageScanner.parseUri(uri), formats, maxPixels, tiling);
+            if (result == null) {
+                context.error(IMAGE_LOAD_ERROR);
+                return;
+            }
+            context.success(result.toJSON());
+        } catch (IOException | SecurityException e) {
+            Log.d(TAG, "Failed to load image: " + e.getMessage());
+            context.error(IMAGE_LOAD_ERROR);
+        } catch (ExecutionException e) {
+            Log.d(TAG, "Detection failed: " + e.getMessage());
+            context.error(DETECTION_ERROR);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            context.error(DETECTION_ERROR);
+        }
+    }
+
+    /**
+     * Detect barcodes in images in parallel, and send the result of each image
+     *
+     * @param uris         image URIs
+     * @param imageOptions {formats, maxPixels, parallelism, memoryBudget} (nullable)
+     * @param context      callback context
+     */
+    private void scanImages(JSONArray uris, JSONObject imageOptions, CallbackContext context) {
+        String[] uriStrings = new String[uris.length()];
+        for (int i = 0; i < uris.length(); i ++) {
+            uriStrings[i] = uris.optString(i);
+        }
+        int[] formats = BarcodeFormats.fromNames(getFormatNames(imageOptions));
+        int maxPixels = ImageScanner.DEFAULT_MAX_PIXELS;
+        int parallelism = 0;
+        long memoryBudget = 0;
+        if (imageOptions != null) {
+            maxPixels = imageOptions.optInt("maxPixels", ImageScanner.DEFAULT_MAX_PIXELS);
+            parallelism = imageOptions.optInt("parallelism", 0);
+            // MB
+            memoryBudget = imageOptions.optInt("memoryBudget", 0) * 1024L * 1024L;
+        }
+        final int total = uriStrings.length;
+        BatchImageScanner[] batchRef = new BatchImageScanner[1];
+        BatchImageScanner batch = new BatchImageScanner(cordova.getActivity().getContentResolver(), uriStrings,
+                formats, maxPixels, parallelism, memoryBudget, new BatchImageScanner.Listener() {
+            @Override
+            public void onImage(int index, String uri, ImageScanner.Result result, String error, int completed) {
+                JSONObject progress = new JSONObject();
+                try {
+                    progress.put("finished", false);
+                    progress.put("index", index);
+                    progress.put("uri", uri);
+                    if (result != null) {
+                        progress.put("result", result.toJSON());
+                    } else {
+                        progress.put("error", error);
+                    }
+                    progress.put("completed", completed);
+                    progress.put("total", total);
+                } catch (JSONException e) {
+                    Log.d(TAG, "Failed to create JSONObject");
+                }
+                PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, progress);
+                pluginResult.setKeepCallback(true);
+                context.sendPluginResult(pluginResult);
+            }
+
+            @Override
+            public void onFinished(int completed, boolean cancelled, long duration) {
+                if (imageBatch == batchRef[0]) {
+                    imageBatch = null;
+                }
+                JSONObject summary = new JSONObject();
+                try {
+                    summary.put("finished", true);
+                    summary.put("cancelled", cancelled);
+                    summary.put("completed", completed);
+                    summary.put("total", total);
+                    summary.put("duration", duration);
+                    summary.put("parallelism", batchRef[0].getParallelism());
+                    summary.put("imagesPerSecond", duration > 0 ? completed * 1000.0 / duration : 0);
+                } catch (JSONException e) {
+                    Log.d(TAG, "Failed to create JSONObject");
+                }
+                context.success(summary);
+            }
+        });
+        batchRef[0] = batch;
+        BatchImageScanner previous = imageBatch;
+        if (previous != null) {
+            previous.cancel();
+        }
+        imageBatch = batch;
+        batch.start();
+    }
+
+    /**
+     * Prepare camera and detector before scan
+     *
+     * @param prepareOptions {formats} (nullable)
+     * @param context        callback context
+     */
+    private void prepare(JSONObject prepareOptions, CallbackContext context) {
+        int[] formats = BarcodeFormats.fromNames(getFormatNames(prepareOptions));
+        ScannerWarmup.prepare(cordova.getActivity(), formats, (duration) -> {
+            JSONObject result = new JSONObject();
+            try {
+                result.put("duration", duration);
+            } catch (JSONException e) {
+                Log.d(TAG, "Failed to create JSONObject");
+            }
+            context.success(result);
+        });
+    }
+
     /**
      * Call scanner feature
      */
@@ -79,12 +328,63 @@ public class BarcodeScanner extends CordovaPlugin {
      */
     private void showScanner() {
         Intent intent = new Intent(this.cordova.getActivity(), BarcodeScannerActivity.class);
+        intent.putExtra(BarcodeScannerActivity.INTENT_REQUEST_TIME, SystemClock.elapsedRealtime());
         if (options != null) {
             setIntentExtras(options, intent, "");
         }
+        if (continuous) {
+            startContinuous();
+        }
         this.cordova.startActivityForResult((CordovaPlugin) this, intent, REQUEST_CODE_SCANNER);
     }
 
+    /**
+     * Start receiving detections in continuous mode
+     */
+    private void startContinuous() {
+        continuousCount = 0;
+        continuousStartTime = System.currentTimeMillis();
+        final CallbackContext context = this.callbackContext;
+        ScanChannel.setListener((data) -> {
+            continuousCount ++;
+            JSONObject result = new JSONObject();
+            try {
+                result.put("data", data);
+                result.put("cancelled", false);
+                result.put("finished", false);
+                result.put("count", continuousCount);
+            } catch (JSONException e) {
+                Log.d(TAG, "Failed to create JSONObject");
+            }
+            PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, result);
+            pluginResult.setKeepCallback(true);
+            context.sendPluginResult(pluginResult);
+        });
+    }
+
+    /**
+     * Finish continuous mode and send summary
+     *
+     * @param reason finish reason
+     */
+    private void finishContinuous(String reason) {
+        ScanChannel.setListener(null);
+        JSONObject result = new JSONObject();
+        try {
+            JSONObject summary = new JSONObject();
+            summary.put("count", continuousCount);
+            summary.put("duration", System.currentTimeMillis() - continuousStartTime);
+            summary.put("reason", reason);
+            result.put("summary", summary);
+            result.put("finished", true);
+            result.put("cancelled", FINISH_REASON_CANCELLED.equals(reason));
+            result.put("stats", getStatsData());
+        } catch (JSONException e) {
+            Log.d(TAG, "Failed to create JSONObject");
+        }
+        this.callbackContext.success(result);
+    }
+
     /**
      * Set option parameters to intent extras
      */
@@ -109,6 +409,13 @@ public class BarcodeScanner extends CordovaPlugin {
                     intent.putExtra(extraKey, (String) value);
                 } else if (value instanceof JSONObject) {
                     setIntentExtras((JSONObject) value, intent, extraKey + ".");
+                } else if (value instanceof JSONArray) {
+                    JSONArray array = (JSONArray) value;
+                    String[] strings = new String[array.length()];
+                    for (int j = 0; j < array.length(); j ++) {
+                        strings[j] = array.optString(j);
+                    }
+                    intent.putExtra(extraKey, strings);
                 }
             } catch (JSONException e) {
                 continue;
@@ -185,21 +492,44 @@ public class BarcodeScanner extends CordovaPlugin {
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent intent) {
         if (requestCode == REQUEST_CODE_SCANNER) {
-            if (resultCode == Activity.RESULT_OK) {
+            if (continuous) {
+                String reason = FINISH_REASON_CANCELLED;
+                if (resultCode == Activity.RESULT_OK && intent != null) {
+                    reason = intent.getStringExtra(BarcodeScannerActivity.INTENT_FINISH_REASON);
+                }
+                finishContinuous(reason);
+            } else if (resultCode == Activity.RESULT_OK) {
                 String detectedText = intent.getStringExtra(BarcodeScannerActivity.INTENT_DETECTED_TEXT);
                 String detectedFormat = intent.getStringExtra(BarcodeScannerActivity.INTENT_DETECTED_FORMAT);
+                String detectedCodes = intent.getStringExtra(BarcodeScannerActivity.INTENT_DETECTED_CODES);
 
-                JSONObject result = getResultData(detectedText, detectedFormat, false);
+                JSONObject result = getResultData(detectedText, detectedFormat, false, getStatsData());
+                if (intent.hasExtra(BarcodeScannerActivity.INTENT_VOTES)) {
+                    try {
+                        JSONObject data = result.getJSONObject("data");
+                        data.put("confidence", intent.getFloatExtra(BarcodeScannerActivity.INTENT_CONFIDENCE, 0));
+                        data.put("votes", intent.getIntExtra(BarcodeScannerActivity.INTENT_VOTES, 0));
+                    } catch (JSONException e) {
+                        Log.d(TAG, "Failed to create JSONObject");
+                    }
+                }
+                if (detectedCodes != null) {
+                    try {
+                        result.getJSONObject("data").put("barcodes", new JSONArray(detectedCodes));
+                    } catch (JSONException e) {
+                        Log.d(TAG, "Failed to parse detected codes");
+                    }
+                }
                 this.callbackContext.success(result);
             } else {
                 // cancelled
-                JSONObject result = getResultData("", "", true);
+                JSONObject result = getResultData("", "", true, getStatsData());
                 this.callbackContext.success(result);
             }
         }
     }
 
-    private static JSONObject getResultData(String text, String format, boolean cancelled) {
+    private static JSONObject getResultData(String text, String format, boolean cancelled, JSONObject stats) {
         JSONObject result = new JSONObject();
         try {
             JSONObject resultData = new JSONObject();
@@ -207,6 +537,9 @@ public class BarcodeScanner extends CordovaPlugin {
             resultData.put("format", format);
             result.put("data", resultData);
             result.put("cancelled", cancelled);
+            if (stats != null) {
+                result.put("stats", stats);
+            }
         } catch (JSONException e) {
             Log.d(TAG, "Failed to create JSONObject");
         }
@@ -214,6 +547,29 @@ public class BarcodeScanner extends CordovaPlugin {
         return result;
     }
 
+    /**
+     * 直近のスキャンの統計情報を取得する  Get stats of the latest scan
+     * @return stats (empty object if no scan has been started)
+     */
+    private static JSONObject getStatsData() {
+        ScanStats stats = ScanStats.getLatest();
+        if (stats == null) {
+            return new JSONObject();
+        }
+        return stats.toJSON();
+    }
+
+    /**
+     * ${inheritDoc}
+     */
+    @Override
+    public void onDestroy() {
+        ScannerSession session = ScannerSession.getCurrent();
+        if (session != null) {
+            session.close();
+        }
+    }
+
     /**
      * ${inheritDoc}
      */
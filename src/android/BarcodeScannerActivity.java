@@ -6,10 +6,13 @@ package io.monaca.plugin.barcodescanner;
 import androidx.annotation.NonNull;
 import androidx.annotation.RequiresPermission;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.core.Camera;
 import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
+import androidx.camera.core.UseCaseGroup;
+import androidx.camera.core.ViewPort;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
@@ -20,29 +23,41 @@ import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.content.res.Resources;
+import android.content.res.Configuration;
 import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
 import android.graphics.drawable.GradientDrawable;
 import android.media.Image;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
 import android.util.Log;
+import android.util.Size;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.mlkit.vision.barcode.BarcodeScanner;
-import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
-import com.google.mlkit.vision.barcode.BarcodeScanning;
-import com.google.mlkit.vision.barcode.common.Barcode;
-import com.google.mlkit.vision.common.InputImage;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Barcode scanner activity class
@@ -53,13 +68,35 @@ public class BarcodeScannerActivity extends AppCompatActivity {
     private PreviewView previewView;
     private Button detectedTextButton;
     private ImageView detectionArea;
-    private Barcode detectedBarcode;
+    private volatile DetectedCode detectedCode;
     private TextView timeoutPromptView;
     private ImageView debugPreviewView;
     private ListenableFuture<ProcessCameraProvider> cameraProviderFuture;
+    private ExecutorService analysisExecutor;
+    private ImageAnalysis imageAnalysis;
+    private ScannerAnalyzer analyzer;
+    private CropGeometry cropGeometry;
+    /** Session which the camera is bound to (null: bound to this activity) */
+    private ScannerSession scannerSession;
+    /** Owner token of the scanner session */
+    private Object sessionToken;
+    private ScanStats stats;
 
     public static final String INTENT_DETECTED_TEXT = "detectedText";
     public static final String INTENT_DETECTED_FORMAT = "detectedFormat";
+    public static final String INTENT_DETECTED_CODES = "detectedCodes";
+    public static final String INTENT_FINISH_REASON = "finishReason";
+    public static final String INTENT_CONFIDENCE = "confidence";
+    public static final String INTENT_VOTES = "votes";
+    /** Time when the scan is requested (SystemClock.elapsedRealtime()) */
+    public static final String INTENT_REQUEST_TIME = "requestTime";
+
+    public static final String FINISH_REASON_STOPPED = "stopped";
+    public static final String FINISH_REASON_MAX_COUNT = "maxCount";
+    public static final String FINISH_REASON_MAX_DURATION = "maxDuration";
+
+    public static final String CONVERSION_DIRECT = "direct";
+    public static final String CONVERSION_BITMAP = "bitmap";
 
     private final int DETECTION_AREA_COLOR = 0xffffffff;
     private final int DETECTION_AREA_DETECTED_COLOR = 0xff0085b1;
@@ -77,6 +114,42 @@ public class BarcodeScannerActivity extends AppCompatActivity {
     private int timeoutPromptSpan;
     private String timeoutPrompt = "Barcode not detected";
     private int debugPreviewMode = 0;
+    private String conversionMode = CONVERSION_DIRECT;
+    private String engineName = DetectionEngine.ENGINE_MLKIT;
+    private boolean continuous = false;
+    private int continuousMaxCount = 0;
+    private int continuousMaxDuration = 0;
+    private int continuousCount = 0;
+    private Handler continuousHandler;
+    private DetectionCache duplicateCache;
+    private int[] barcodeFormats = BarcodeFormats.DEFAULT_FORMATS;
+    private FrameRateGovernor frameRateGovernor;
+    private FrameQualityGate qualityGate;
+    private FocusController focusController;
+    private ZoomController zoomController;
+    private FrameChangeDetector changeDetector;
+    /** Analysis resolution option ("auto", "WIDTHxHEIGHT" or null for the camera default) */
+    private String resolutionOption;
+    private boolean multiple = false;
+    private int multipleMinCount = 1;
+    /** Distinct codes detected in multiple mode (analysis thread) */
+    private final LinkedHashMap<String, DetectedCode> multipleCodes = new LinkedHashMap<>();
+    private volatile List<DetectedCode> multipleResult = Collections.emptyList();
+    private ConsensusVoter consensusVoter;
+    /** Code confirmed by the consensus voter (One Shot mode) */
+    private volatile ConsensusVoter.Confirmation confirmation;
+    /** Key of the code shown on the screen (analysis thread) */
+    private String displayedKey;
+    /** Time of the last detection (SystemClock.elapsedRealtime()) */
+    private volatile long lastDetectionTime = 0;
+
+    private final int DEFAULT_DUPLICATE_WINDOW = 1000;
+    private final int DEFAULT_DUPLICATE_CAPACITY = 64;
+    private final int DEFAULT_QUALITY_THRESHOLD = 35;
+    private final int DEFAULT_CHANGE_THRESHOLD = 4;
+    private final int DEFAULT_CHANGE_REFRESH = 1000;
+    private final int DEFAULT_FOCUS_INTERVAL = 3000;
+    private final int DEFAULT_ZOOM_DENSITY = 4;
 
     private Handler timeoutPromptHandler;
     private Runnable timeoutPromptRunnable;
@@ -87,16 +160,12 @@ public class BarcodeScannerActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        Resources res = getResources();
-        String packageName = getPackageName();
-        int layoutId = getResourceId(res, "activity_barcode_scanner", "layout", packageName);
-        int previewViewId = getResourceId(res, "preview_view", "id", packageName);
-        int detectedTextButtonId = getResourceId(res, "detected_text", "id", packageName);
-        int detectionAreaId = getResourceId(res, "detection_area", "id", packageName);
-        int timeoutPromptId = getResourceId(res, "timeout_prompt", "id", packageName);
-        int debugPreviewId = getResourceId(res, "debug_preview", "id", packageName);
-
         Intent intent = getIntent();
+        stats = ScanStats.start(intent.getLongExtra(INTENT_REQUEST_TIME, SystemClock.elapsedRealtime()),
+                ScannerWarmup.isPrepared());
+        // リソースIDは事前準備 (prepare) 済みならキャッシュから取得される
+        ScannerWarmup.ResourceIds ids = ScannerWarmup.getResourceIds(this);
+
         oneShot = intent.getBooleanExtra("oneShot", false);
         showTimeoutPrompt = intent.getBooleanExtra("timeoutPrompt.show", false);
         timeoutPromptSpan = intent.getIntExtra("timeoutPrompt.timeout", -1);
@@ -105,20 +174,60 @@ public class BarcodeScannerActivity extends AppCompatActivity {
             timeoutPrompt = prompt;
         }
         debugPreviewMode = intent.getIntExtra("debug.preview", 0);
+        if (CONVERSION_BITMAP.equals(intent.getStringExtra("conversion"))) {
+            conversionMode = CONVERSION_BITMAP;
+        }
+        String engine = intent.getStringExtra("engine");
+        if (engine != null) {
+            engineName = engine;
+        }
+        stats.setEngine(engineName);
+        continuous = intent.getBooleanExtra("continuous.enable", false);
+        continuousMaxCount = intent.getIntExtra("continuous.maxCount", 0);
+        continuousMaxDuration = intent.getIntExtra("continuous.maxDuration", 0);
+        multiple = intent.getBooleanExtra("multiple.enable", false);
+        multipleMinCount = Math.max(1, intent.getIntExtra("multiple.minCount", 1));
+        int confirmVotes = intent.getIntExtra("confirm.votes", 1);
+        consensusVoter = new ConsensusVoter(confirmVotes,
+                intent.getIntExtra("confirm.frames", confirmVotes * 2),
+                intent.getBooleanExtra("confirm.checksum", false));
+        resolutionOption = intent.getStringExtra("resolution");
+        barcodeFormats = BarcodeFormats.fromNames(intent.getStringArrayExtra("formats"));
+        frameRateGovernor = new FrameRateGovernor(intent.getStringExtra("powerProfile"),
+                intent.getIntExtra("maxFps", 0));
+        qualityGate = new FrameQualityGate(intent.getBooleanExtra("quality.enable", false),
+                intent.getIntExtra("quality.threshold", DEFAULT_QUALITY_THRESHOLD),
+                intent.getIntExtra("quality.minScore", 0));
+        stats.setQualityGate(qualityGate);
+        focusController = new FocusController(intent.getBooleanExtra("focus.enable", false),
+                intent.getIntExtra("focus.interval", DEFAULT_FOCUS_INTERVAL),
+                intent.getIntExtra("focus.distance", 0));
+        stats.setFocusController(focusController);
+        zoomController = new ZoomController(intent.getBooleanExtra("zoom.enable", false),
+                intent.getIntExtra("zoom.density", DEFAULT_ZOOM_DENSITY),
+                intent.getIntExtra("zoom.maxRatio", 0));
+        stats.setZoomController(zoomController);
+        changeDetector = new FrameChangeDetector(intent.getBooleanExtra("changeDetection.enable", false),
+                intent.getIntExtra("changeDetection.threshold", DEFAULT_CHANGE_THRESHOLD),
+                intent.getIntExtra("changeDetection.refresh", DEFAULT_CHANGE_REFRESH));
+        stats.setChangeDetector(changeDetector);
+        duplicateCache = new DetectionCache(
+                intent.getIntExtra("duplicate.window", DEFAULT_DUPLICATE_WINDOW),
+                intent.getIntExtra("duplicate.capacity", DEFAULT_DUPLICATE_CAPACITY));
 
         // create UI from resource
-        setContentView(LayoutInflater.from(this).inflate(layoutId, null));
-        previewView = findViewById(previewViewId);
+        setContentView(LayoutInflater.from(this).inflate(ids.layout, null));
+        previewView = findViewById(ids.previewView);
         // detected text
-        detectedTextButton = findViewById(detectedTextButtonId);
+        detectedTextButton = findViewById(ids.detectedText);
         detectedTextButton.getBackground().setTint(DETECTED_TEXT_BACKGROUND_COLOR);
         detectedTextButton.setTextColor(DETECTED_TEXT_COLOR);
         detectedTextButton.setVisibility(View.INVISIBLE);
-        detectionArea = findViewById(detectionAreaId);
+        detectionArea = findViewById(ids.detectionArea);
         GradientDrawable drawable = (GradientDrawable) detectionArea.getDrawable();
         drawable.setStroke(DETECTION_AREA_BORDER, DETECTION_AREA_COLOR);
         // timeout prompt
-        timeoutPromptView = findViewById(timeoutPromptId);
+        timeoutPromptView = findViewById(ids.timeoutPrompt);
         GradientDrawable shape = new GradientDrawable();
         shape.setCornerRadius(TIMEOUT_PROMPT_BACKGROUND_CORNER_RADIUS);
         shape.setTint(TIMEOUT_PROMPT_BACKGROUND_COLOR);
@@ -126,17 +235,20 @@ public class BarcodeScannerActivity extends AppCompatActivity {
         timeoutPromptView.setText(timeoutPrompt);
         timeoutPromptView.setVisibility(View.INVISIBLE);
         // for debug mode
-        debugPreviewView = findViewById(debugPreviewId);
+        debugPreviewView = findViewById(ids.debugPreview);
         debugPreviewView.setVisibility( debugPreviewMode == 0 ? View.INVISIBLE : View.VISIBLE);
+        // 検出範囲のジオメトリ (レイアウト変更時に更新される)
+        cropGeometry = new CropGeometry(previewView, detectionArea);
 
         detectedTextButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 // 検出した文字列が選択されたので親画面へ値を渡して遷移する
-                if (detectedBarcode == null) {
+                DetectedCode code = detectedCode;
+                if (code == null || continuous || !isResultReady()) {
                     return;
                 }
-                setResult(Activity.RESULT_OK, getResultIntent());
+                setResult(Activity.RESULT_OK, getResultIntent(code));
                 finish();
             }
         });
@@ -151,18 +263,83 @@ public class BarcodeScannerActivity extends AppCompatActivity {
             Log.d(TAG, "Failed to checkSelfPermission");
             return;
         }
+        if (continuous) {
+            startContinuousSession();
+        }
         initCamera();
     }
 
+    /**
+     * Start continuous scanning session
+     */
+    private void startContinuousSession() {
+        ScanChannel.attach(this);
+        if (continuousMaxDuration > 0) {
+            continuousHandler = new Handler();
+            continuousHandler.postDelayed(() -> finishContinuous(FINISH_REASON_MAX_DURATION),
+                    continuousMaxDuration * 1000L);
+        }
+    }
+
+    /**
+     * Accept a new detection in continuous mode and send it to the plugin (main thread)
+     *
+     * Duplicates are already filtered by the duplicate cache.
+     *
+     * @param code detected code
+     */
+    private void onContinuousDetection(DetectedCode code) {
+        continuousCount ++;
+        ScanChannel.publish(multiple ? code.toJSON() : getResultData(code));
+        if (continuousMaxCount > 0 && continuousCount >= continuousMaxCount) {
+            finishContinuous(FINISH_REASON_MAX_COUNT);
+        }
+    }
+
+    /**
+     * Finish continuous scanning session (main thread)
+     *
+     * @param reason finish reason
+     */
+    private void finishContinuous(String reason) {
+        if (isFinishing()) {
+            return;
+        }
+        Intent intent = new Intent();
+        intent.putExtra(INTENT_FINISH_REASON, reason);
+        setResult(Activity.RESULT_OK, intent);
+        finish();
+    }
+
+    /**
+     * Request to stop scanning (any thread)
+     */
+    void requestStop() {
+        runOnUiThread(() -> finishContinuous(FINISH_REASON_STOPPED));
+    }
+
     /**
      * 検出したバーコード情報からIntentを作成する
+     * @param code 検出したバーコード
      * @return intent: バーコード文字列・フォーマットを格納したIntent
      */
-    private Intent getResultIntent() {
+    private Intent getResultIntent(DetectedCode code) {
         Intent intent = new Intent();
         try {
-            intent.putExtra(INTENT_DETECTED_TEXT, detectedBarcode.getDisplayValue());
-            intent.putExtra(INTENT_DETECTED_FORMAT, getBarcodeFormatString(detectedBarcode.getFormat()));
+            intent.putExtra(INTENT_DETECTED_TEXT, code.getText());
+            intent.putExtra(INTENT_DETECTED_FORMAT, code.getFormatName());
+            ConsensusVoter.Confirmation current = confirmation;
+            if (current != null && current.getCode().getKey().equals(code.getKey())) {
+                intent.putExtra(INTENT_CONFIDENCE, current.getConfidence());
+                intent.putExtra(INTENT_VOTES, current.getVotes());
+            }
+            if (multiple) {
+                JSONArray codes = new JSONArray();
+                for (DetectedCode detected : multipleResult) {
+                    codes.put(detected.toJSON());
+                }
+                intent.putExtra(INTENT_DETECTED_CODES, codes.toString());
+            }
         } catch (NullPointerException e) {
         }
 
@@ -170,34 +347,19 @@ public class BarcodeScannerActivity extends AppCompatActivity {
     }
 
     /**
-     * 定数 Barcode.FORMAT_XXXX からプラグインのフォーマット形式に変換
-     * @param format Barcode.FORMAT_XXXX
-     * @return formatStr: プラグインで定義するフォーマット文字列
+     * 検出したバーコード情報から結果データを作成する
+     * @param code 検出したバーコード
+     * @return {text, format}
      */
-    private static String getBarcodeFormatString(int format) {
-        String formatStr = "";
-        switch (format) {
-            case Barcode.FORMAT_QR_CODE:
-                formatStr = "QR_CODE";
-                break;
-            case Barcode.FORMAT_EAN_8:
-                formatStr = "EAN_8";
-                break;
-            case Barcode.FORMAT_EAN_13:
-                formatStr = "EAN_13";
-                break;
-            case Barcode.FORMAT_ITF:
-                formatStr = "ITF";
-                break;
-            case Barcode.FORMAT_CODE_128:
-                formatStr = "128";
-                break;
-            default:
-                formatStr = "UNKNOWN";
-                break;
-        }
-
-        return formatStr;
+    private static JSONObject getResultData(DetectedCode code) {
+        JSONObject data = new JSONObject();
+        try {
+            data.put("text", code.getText());
+            data.put("format", code.getFormatName());
+        } catch (JSONException e) {
+            Log.d(TAG, "Failed to create JSONObject");
+        }
+        return data;
     }
 
     /**
@@ -205,14 +367,17 @@ public class BarcodeScannerActivity extends AppCompatActivity {
      */
     @RequiresPermission(Manifest.permission.CAMERA)
     private void initCamera() {
+        // 事前準備済みの場合は初期化済みのカメラプロバイダが返される
         cameraProviderFuture = ProcessCameraProvider.getInstance(this);
         Executor executor = ContextCompat.getMainExecutor(this);
+        // 画像解析はUIスレッドをブロックしないよう専用スレッドで実行する
+        analysisExecutor = Executors.newSingleThreadExecutor();
 
         Runnable listenerRunnable = () -> {
             ProcessCameraProvider cameraProvider = null;
             try {
                 cameraProvider = cameraProviderFuture.get();
-                bindToLifecycle(cameraProvider, executor);
+                bindToLifecycle(cameraProvider, analysisExecutor);
             } catch (ExecutionException e) {
                 Log.d(TAG, "CameraProvider ExecutionException");
             } catch (InterruptedException e) {
@@ -228,90 +393,272 @@ public class BarcodeScannerActivity extends AppCompatActivity {
      * Bind preview, analyzer, cameraProvider to camera lifecycle.
      *
      * @param cameraProvider
-     * @param executor
+     * @param executor executor to run the analyzer
      */
     private void bindToLifecycle(ProcessCameraProvider cameraProvider, Executor executor) {
+        if (isDestroyed()) {
+            return;
+        }
+        if (previewView.getWidth() == 0 || previewView.getHeight() == 0) {
+            // ビューポートはプレビューのサイズが決まってからバインドする
+            previewView.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+                @Override
+                public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                           int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                    v.removeOnLayoutChangeListener(this);
+                    bindToLifecycle(cameraProvider, executor);
+                }
+            });
+            return;
+        }
+
+        // セッション中はセッションにバインド済みのカメラを再利用する
+        ScannerSession session = ScannerSession.getCurrent();
+        if (session != null) {
+            scannerSession = session;
+            sessionToken = session.attach();
+            stats.setSessionReused(session.isBound());
+        }
 
         // prepare preview
-        Preview preview = new Preview.Builder().build();
+        Preview preview = session != null && session.isBound() ? session.getPreview() : new Preview.Builder().build();
         CameraSelector cameraSelector = new CameraSelector.Builder()
                 .requireLensFacing(CameraSelector.LENS_FACING_BACK)
                 .build();
         preview.setSurfaceProvider(previewView.getSurfaceProvider());
 
         // prepare analyzer
-        ScannerAnalyzer analyzer = new ScannerAnalyzer();
-
-        ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
-                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
-                .build();
+        // 検出結果のコールバックも解析スレッドで受け取る (終了後に届いたものは破棄する)
+        Executor callbackExecutor = command -> {
+            try {
+                executor.execute(command);
+            } catch (RejectedExecutionException e) {
+                Log.d(TAG, "Detection callback after shutdown");
+            }
+        };
+        analyzer = new ScannerAnalyzer(callbackExecutor, barcodeFormats);
+
+        if (session != null && session.isBound()) {
+            // 一時停止していた解析を再開する
+            imageAnalysis = session.getImageAnalysis();
+            imageAnalysis.setAnalyzer(executor, analyzer);
+            focusController.start(session.getCamera(), previewView.getMeteringPointFactory(), previewView, detectionArea);
+            zoomController.start(session.getCamera());
+            return;
+        }
+        ImageAnalysis.Builder builder = new ImageAnalysis.Builder()
+                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST);
+        Size resolution = getTargetResolution();
+        stats.setResolution(resolutionOption, resolution);
+        if (resolution != null) {
+            // 解像度は画面の向きに回転した座標系で指定する
+            boolean portrait = getResources().getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT;
+            builder.setTargetResolution(portrait ? new Size(resolution.getHeight(), resolution.getWidth()) : resolution);
+        }
+        imageAnalysis = builder.build();
         imageAnalysis.setAnalyzer(executor, analyzer);
 
         // bind preview and analyzer to lifecycle
-        cameraProvider.bindToLifecycle(this, cameraSelector, imageAnalysis, preview);
+        // 同じビューポートでバインドすると解析画像の切り出し範囲 (getCropRect) がプレビューの表示範囲と一致する
+        ViewPort viewPort = previewView.getViewPort();
+        Camera camera;
+        if (session != null) {
+            camera = session.bind(cameraProvider, cameraSelector, preview, imageAnalysis, viewPort);
+        } else if (viewPort != null) {
+            UseCaseGroup useCaseGroup = new UseCaseGroup.Builder()
+                    .setViewPort(viewPort)
+                    .addUseCase(preview)
+                    .addUseCase(imageAnalysis)
+                    .build();
+            camera = cameraProvider.bindToLifecycle(this, cameraSelector, useCaseGroup);
+        } else {
+            camera = cameraProvider.bindToLifecycle(this, cameraSelector, imageAnalysis, preview);
+        }
+
+        // ピント・露出を検出範囲で合わせる
+        focusController.start(camera, previewView.getMeteringPointFactory(), previewView, detectionArea);
+        zoomController.start(camera);
     }
 
     /**
-     * Callback function to retrieve detected barcodes
+     * Get the analysis resolution from the option
      *
-     * @param barcodes
+     * @return size in landscape orientation, or null to use the camera default
      */
-    private void onDetectionTaskSuccess(List<Barcode> barcodes) {
-        int detected = 0;
-        for (Barcode barcode : barcodes) {
-            detectedBarcode = barcode;
-            String detectedText = barcode.getDisplayValue();
-            if (detectedText == null) {
-                detectedBarcode = null;
-                continue;
+    private Size getTargetResolution() {
+        if (resolutionOption == null) {
+            return null;
+        }
+        if (!AnalysisResolution.MODE_AUTO.equals(resolutionOption)) {
+            Size size = AnalysisResolution.parse(resolutionOption);
+            if (size == null) {
+                Log.d(TAG, "Invalid resolution: " + resolutionOption);
             }
-            detected ++;
+            return size;
+        }
+        // レイアウト前の場合は画面サイズとレイアウト指定のサイズを使う
+        int previewWidth = previewView.getWidth();
+        int previewHeight = previewView.getHeight();
+        if (previewWidth == 0 || previewHeight == 0) {
+            DisplayMetrics metrics = getResources().getDisplayMetrics();
+            previewWidth = metrics.widthPixels;
+            previewHeight = metrics.heightPixels;
+        }
+        int areaWidth = detectionArea.getWidth();
+        int areaHeight = detectionArea.getHeight();
+        if (areaWidth == 0 || areaHeight == 0) {
+            ViewGroup.LayoutParams params = detectionArea.getLayoutParams();
+            areaWidth = params != null ? Math.max(0, params.width) : 0;
+            areaHeight = params != null ? Math.max(0, params.height) : 0;
+        }
+        return AnalysisResolution.selectAuto(AnalysisResolution.getSupportedSizes(this),
+                previewWidth, previewHeight, areaWidth, areaHeight, barcodeFormats);
+    }
 
-            // UI
-            if (!oneShot) {
-                GradientDrawable drawable = (GradientDrawable) detectionArea.getDrawable();
-                drawable.setStroke(DETECTION_AREA_BORDER, DETECTION_AREA_DETECTED_COLOR);
+    /**
+     * Callback function to retrieve detected barcodes
+     *
+     * Called on the analysis thread. UI updates are posted to the main thread.
+     *
+     * @param codes          detected codes in full frame coordinates
+     * @param frameTimestamp sensor timestamp of the analyzed frame
+     */
+    private void onDetectionTaskSuccess(List<DetectedCode> codes, long frameTimestamp) {
+        DetectedCode detected = codes.isEmpty() ? null : codes.get(codes.size() - 1);
+        if (!multiple && detected != null) {
+            codes = Collections.singletonList(detected);
+        }
+        detectedCode = detected;
+
+        // One Shot モードでは複数フレームで一致した結果のみ確定する
+        ConsensusVoter.Confirmation confirmed = null;
+        if (oneShot && !continuous && consensusVoter.isEnabled()) {
+            confirmed = consensusVoter.vote(detected);
+            if (confirmed != null) {
+                confirmation = confirmed;
+            }
+        }
 
-                detectedTextButton.setText(
-                        detectedText.substring(0, Math.min(DETECTED_TEXT_MAX_LENGTH, detectedText.length())));
-                detectedTextButton.setVisibility(View.VISIBLE);
+        // 重複した検出や表示に変化がない場合はUIを更新しない
+        final List<DetectedCode> newCodes = new ArrayList<>();
+        String key = null;
+        if (detected != null) {
+            stats.onResult(frameTimestamp);
+            lastDetectionTime = SystemClock.elapsedRealtime();
+            for (DetectedCode code : codes) {
+                if (duplicateCache.add(code.getKey(), lastDetectionTime)) {
+                    newCodes.add(code);
+                }
+                if (multiple) {
+                    multipleCodes.put(code.getKey(), code);
+                }
             }
+            key = detected.getKey();
+            if (multiple) {
+                multipleResult = new ArrayList<>(multipleCodes.values());
+                key += "#" + multipleCodes.size();
+            }
+            if (newCodes.isEmpty() && key.equals(displayedKey) && confirmed == null) {
+                return;
+            }
+        } else if (displayedKey == null) {
+            return;
         }
-        if (detected == 0) {
-            // no item is detected.
-            detectedBarcode = null;
+        displayedKey = key;
+
+        final DetectedCode code = detected;
+        final int total = multipleCodes.size();
+        final long postedTime = System.nanoTime();
+        runOnUiThread(() -> {
+            updateDetectionUI(code, newCodes, total);
+            stats.ui.recordNanos(System.nanoTime() - postedTime);
+        });
+    }
 
-            // UI
+    /**
+     * Update UI with the detected barcode (main thread)
+     *
+     * @param code     detected code, or null if no item is detected
+     * @param newCodes codes which have not been seen within the duplicate window
+     * @param total    number of distinct codes detected in multiple mode
+     */
+    private void updateDetectionUI(DetectedCode code, List<DetectedCode> newCodes, int total) {
+        if (isFinishing()) {
+            return;
+        }
+        if (code == null) {
+            // no item is detected.
             detectedTextButton.setText("");
             detectedTextButton.setVisibility(View.INVISIBLE);
             GradientDrawable drawable = (GradientDrawable) detectionArea.getDrawable();
             drawable.setStroke(DETECTION_AREA_BORDER, DETECTION_AREA_COLOR);
         } else {
-            if (oneShot) {
-                setResult(Activity.RESULT_OK, getResultIntent());
+            if (oneShot && !continuous && isResultReady() && isConfirmed()) {
+                ConsensusVoter.Confirmation current = confirmation;
+                setResult(Activity.RESULT_OK, getResultIntent(current != null ? current.getCode() : code));
                 finish();
+            } else {
+                GradientDrawable drawable = (GradientDrawable) detectionArea.getDrawable();
+                drawable.setStroke(DETECTION_AREA_BORDER, DETECTION_AREA_DETECTED_COLOR);
+
+                String detectedText = code.getText();
+                detectedText = detectedText.substring(0, Math.min(DETECTED_TEXT_MAX_LENGTH, detectedText.length()));
+                if (multiple && total > 1) {
+                    detectedText += " (+" + (total - 1) + ")";
+                }
+                detectedTextButton.setText(detectedText);
+                detectedTextButton.setVisibility(View.VISIBLE);
+                if (continuous) {
+                    for (DetectedCode newCode : newCodes) {
+                        onContinuousDetection(newCode);
+                    }
+                }
             }
             // 検出タイムアウトタイマーを再起動
             restartDetectionTimer();
         }
     }
 
+    /**
+     * Check if enough codes are detected to return the result
+     *
+     * @return true if the result can be returned
+     */
+    private boolean isResultReady() {
+        return !multiple || multipleResult.size() >= multipleMinCount;
+    }
+
+    /**
+     * Check if the result is confirmed by the consensus voter
+     *
+     * @return true if confirmed (or the confirmation is disabled)
+     */
+    private boolean isConfirmed() {
+        return !consensusVoter.isEnabled() || confirmation != null;
+    }
+
+    /**
+     * Show bitmap on debug preview (main thread)
+     *
+     * @param bitmap
+     */
+    private void showDebugPreview(Bitmap bitmap) {
+        runOnUiThread(() -> debugPreviewView.setImageBitmap(bitmap));
+    }
+
     /**
      * Analyzer class for scanning barcodes.
      */
     private class ScannerAnalyzer implements ImageAnalysis.Analyzer {
-        private BarcodeScanner scanner;
-
-        ScannerAnalyzer() {
-            BarcodeScannerOptions options = new BarcodeScannerOptions.Builder()
-                    .setBarcodeFormats(
-                            Barcode.FORMAT_QR_CODE,
-                            Barcode.FORMAT_EAN_8,
-                            Barcode.FORMAT_EAN_13,
-                            Barcode.FORMAT_ITF,
-                            Barcode.FORMAT_CODE_128)
-                    .build();
-            scanner = BarcodeScanning.getClient(options);
+        private final DetectionEngine engine;
+        /** NV21 buffer of the frame being converted (returned to FrameBufferPool after detection) */
+        private byte[] frameBuffer;
+        /** Timestamp of the latest frame whose result is handled (callback executor) */
+        private long lastResultTimestamp = Long.MIN_VALUE;
+
+        ScannerAnalyzer(Executor executor, int[] formats) {
+            // 検出結果のコールバックは executor で呼ばれる
+            engine = createEngine(engineName, formats, executor);
         }
 
         /**
@@ -321,52 +668,291 @@ public class BarcodeScannerActivity extends AppCompatActivity {
         public void analyze(@NonNull ImageProxy imageProxy) {
             // カメラからキャプチャされた画像を毎フレーム取得してバーコード検出ライブラリへ渡す
             @SuppressLint("UnsafeOptInUsageError") Image mediaImage = imageProxy.getImage();
-            int imageWidth, imageHeight;
-            int trimWidth, trimHeight;
-            int rotationDegrees = imageProxy.getImageInfo().getRotationDegrees();
-
-            // 検出範囲の座標を計算
-            int screenWidth = BarcodeScannerActivity.this.previewView.getWidth();
-            int screenHeight = BarcodeScannerActivity.this.previewView.getHeight();
-            int areaWidth = BarcodeScannerActivity.this.detectionArea.getWidth();
-            int areaHeight = BarcodeScannerActivity.this.detectionArea.getHeight();
-            if (rotationDegrees % 180 == 0) {
-                // landscape
-                imageWidth = mediaImage.getWidth();
-                trimWidth = imageWidth * areaWidth / screenWidth;
-                trimHeight = trimWidth * areaHeight / areaWidth;
-            } else {
-                // portrait
-                imageHeight = mediaImage.getWidth();
-                trimHeight = imageHeight * areaHeight / screenHeight;
-                trimWidth = trimHeight * areaWidth / areaHeight;
+            if (mediaImage == null) {
+                imageProxy.close();
+                return;
+            }
+
+            final long frameTimestamp = imageProxy.getImageInfo().getTimestamp();
+            stats.onFrameReceived(frameTimestamp);
+            stats.onFrameSize(mediaImage.getWidth(), mediaImage.getHeight());
+            if (!frameRateGovernor.shouldAnalyze(frameTimestamp)) {
+                // 目標レートを超えるフレームは変換せずに捨てる
+                stats.onFrameSkipped();
+                imageProxy.close();
+                return;
+            }
+            // 検出範囲の座標 (レイアウト・回転・解像度が変わった時のみ再計算される)
+            long startTime = System.nanoTime();
+            // ビューポートの切り出し範囲 (プレビューに表示されている範囲) に検出範囲を合わせる
+            CropGeometry.Snapshot geometry = cropGeometry.get(mediaImage.getWidth(), mediaImage.getHeight(),
+                    imageProxy.getImageInfo().getRotationDegrees(), imageProxy.getCropRect());
+            if (geometry == null) {
+                // レイアウト前
+                imageProxy.close();
+                return;
+            }
+            stats.crop.recordNanos(System.nanoTime() - startTime);
+
+            // 前回検出なしだったフレームから変化がなければ変換・検出を省略する
+            final int[] fingerprint = getFingerprint(mediaImage, geometry);
+            if (fingerprint != null && !changeDetector.shouldAnalyze(fingerprint, SystemClock.elapsedRealtime())) {
+                stats.onFrameSkipped();
+                imageProxy.close();
+                return;
             }
 
-            if (mediaImage != null) {
-                // カメラ画像をトリミングして検出範囲を限定する
-                Bitmap bitmapOrg = BitmapUtils.getBitmap(imageProxy);
-                Bitmap bitmapTrimmed = ImageUtils.trim(bitmapOrg, trimWidth, trimHeight);
-                if (debugPreviewMode == 1) {
-                    debugPreviewView.setImageBitmap(bitmapTrimmed);
-                } else if (debugPreviewMode == 2) {
-                    debugPreviewView.setImageBitmap(bitmapOrg);
+            // 手ぶれ・ピント合わせ中のフレームは変換前に輝度プレーンで判定して捨てる
+            if (!isSharpEnough(mediaImage, geometry)) {
+                stats.onFrameSkipped();
+                imageProxy.close();
+                return;
+            }
+            stats.onFrameAnalyzed();
+
+            DetectionFrame frame = null;
+            if (CONVERSION_DIRECT.equals(conversionMode)) {
+                frame = getFrameFromPlanes(imageProxy, mediaImage, geometry);
+            }
+            if (frame == null) {
+                // プレーンを直接扱えない場合はBitmap経由で変換する
+                frame = getFrameFromBitmap(imageProxy, geometry);
+            }
+            final byte[] buffer = frameBuffer;
+            frameBuffer = null;
+            final Rect detectionCrop = frame.getFrameCrop();
+            final boolean portrait = geometry.getRotationDegrees() % 180 != 0;
+            final int uprightWidth = portrait ? geometry.getImageHeight() : geometry.getImageWidth();
+            final int uprightHeight = portrait ? geometry.getImageWidth() : geometry.getImageHeight();
+            // バーコード検出実行
+            final long detectStartTime = System.nanoTime();
+            engine.detect(frame, new DetectionEngine.Callback() {
+                @Override
+                public void onCandidates(List<CodeCandidate> candidates) {
+                    if (frameTimestamp < lastResultTimestamp) {
+                        return;
+                    }
+                    // 読み取れる前でもコードが写っていれば最大レートに戻す
+                    if (!candidates.isEmpty()) {
+                        frameRateGovernor.onCandidate();
+                    }
+                    // 遠くのコードは読み取れなくても位置が分かれば画素密度が足りるまでズームする
+                    zoomController.onCandidates(candidates, uprightWidth, uprightHeight, detectionCrop);
+                }
+
+                @Override
+                public void onSuccess(List<DetectedCode> codes) {
+                    // RaceEngine の遅い方のエンジンは新しいフレームの結果の後に届くことがあるので、
+                    // 古いフレームの結果で表示・統計・レート制御を巻き戻さないように捨てる
+                    if (frameTimestamp < lastResultTimestamp) {
+                        return;
+                    }
+                    lastResultTimestamp = frameTimestamp;
+                    // 検出された
+                    long detectTime = System.nanoTime() - detectStartTime;
+                    stats.detect.recordNanos(detectTime);
+                    frameRateGovernor.onDetectionLatency(detectTime / 1_000_000.0);
+                    if (!codes.isEmpty()) {
+                        frameRateGovernor.onCandidate();
+                        // 読み取れたらピント位置を動かさない
+                        focusController.onDetected();
+                    }
+                    if (fingerprint != null) {
+                        changeDetector.onAnalyzed(fingerprint, codes.isEmpty(), SystemClock.elapsedRealtime());
+                    }
+                    BarcodeScannerActivity.this.onDetectionTaskSuccess(codes, frameTimestamp);
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    Log.d(TAG, "Detection failed: " + e);
                 }
-                InputImage inputImage = InputImage.fromBitmap(bitmapTrimmed, 0);
-                // バーコード検出実行
-                scanner.process(inputImage)
-                        .addOnSuccessListener(barcodes -> {
-                            // 検出された
-                            BarcodeScannerActivity.this.onDetectionTaskSuccess(barcodes);
-                        })
-                        .addOnFailureListener(e -> {
-
-                        }).addOnCompleteListener(task -> imageProxy.close());
+
+                @Override
+                public void onComplete() {
+                    FrameBufferPool.release(buffer);
+                    imageProxy.close();
+                }
+            });
+        }
+
+        /**
+         * Compute the luma fingerprint of the detection area
+         *
+         * @return fingerprint, or null if the change detection is disabled or not available
+         */
+        private int[] getFingerprint(Image mediaImage, CropGeometry.Snapshot geometry) {
+            if (!changeDetector.isEnabled() || mediaImage.getFormat() != ImageFormat.YUV_420_888) {
+                return null;
+            }
+            long startTime = System.nanoTime();
+            Image.Plane luma = mediaImage.getPlanes()[0];
+            int[] fingerprint = FrameChangeDetector.computeFingerprint(luma.getBuffer(), luma.getRowStride(),
+                    luma.getPixelStride(), geometry.getSensorCropRect());
+            stats.fingerprint.recordNanos(System.nanoTime() - startTime);
+            return fingerprint;
+        }
+
+        /**
+         * Evaluate the sharpness of the detection area on the luma plane
+         *
+         * @return true if the frame should be passed to the detection
+         */
+        private boolean isSharpEnough(Image mediaImage, CropGeometry.Snapshot geometry) {
+            if (mediaImage.getFormat() != ImageFormat.YUV_420_888) {
+                return true;
+            }
+            long startTime = System.nanoTime();
+            Image.Plane luma = mediaImage.getPlanes()[0];
+            boolean accepted = qualityGate.accept(luma.getBuffer(), luma.getRowStride(), luma.getPixelStride(),
+                    geometry.getSensorCropRect());
+            stats.gate.recordNanos(System.nanoTime() - startTime);
+            // ピントが外れたら検出範囲で合わせ直す
+            focusController.onSharpness(qualityGate.getLastScore());
+            return accepted;
+        }
+
+        /**
+         * Create the detection engine
+         *
+         * @param name     DetectionEngine.ENGINE_XXXX (MLKit if unknown)
+         * @param formats  formats to detect (Barcode.FORMAT_XXXX)
+         * @param executor executor to call the callbacks
+         * @return engine
+         */
+        private DetectionEngine createEngine(String name, int[] formats, Executor executor) {
+            if (DetectionEngine.ENGINE_ZXING.equals(name)) {
+                return new ZxingEngine(formats, multiple, multiple, executor);
+            } else if (DetectionEngine.ENGINE_RACE.equals(name)) {
+                return new RaceEngine(new MlKitEngine(formats, executor),
+                        new ZxingEngine(formats, multiple, multiple, executor));
+            }
+            return new MlKitEngine(formats, executor);
+        }
+
+        /**
+         * Release the detection engine
+         */
+        void close() {
+            engine.close();
+        }
+
+        /**
+         * Crop the detection area directly from the YUV planes (in sensor coordinates)
+         * into NV21 with rotation.
+         *
+         * @return frame, or null if the planes cannot be handled directly
+         */
+        private DetectionFrame getFrameFromPlanes(ImageProxy imageProxy, Image mediaImage,
+                                                   CropGeometry.Snapshot geometry) {
+            if (mediaImage.getFormat() != ImageFormat.YUV_420_888) {
+                return null;
+            }
+            // 切り出しは変換と同時に行われる
+            long startTime = System.nanoTime();
+            Rect cropRect = geometry.getSensorCropRect();
+            // ZXing は輝度しか読まないので色差プレーンの展開を省く (デバッグ表示にはNV21が必要)
+            boolean lumaOnly = DetectionEngine.ENGINE_ZXING.equals(engineName) && debugPreviewMode != 1;
+            byte[] nv21;
+            if (lumaOnly) {
+                nv21 = BitmapUtils.yuv420ToLuma(
+                        mediaImage.getPlanes(), geometry.getImageWidth(), geometry.getImageHeight(), cropRect);
             } else {
-                imageProxy.close();
+                nv21 = BitmapUtils.yuv420ThreePlanesToNV21(
+                        mediaImage.getPlanes(), geometry.getImageWidth(), geometry.getImageHeight(), cropRect);
             }
+            if (nv21 == null) {
+                return null;
+            }
+            stats.convert.recordNanos(System.nanoTime() - startTime);
+            frameBuffer = nv21;
+            int rotationDegrees = geometry.getRotationDegrees();
+            if (debugPreviewMode == 1) {
+                FrameMetadata metadata = new FrameMetadata.Builder()
+                        .setWidth(cropRect.width())
+                        .setHeight(cropRect.height())
+                        .setRotation(rotationDegrees)
+                        .build();
+                showDebugPreview(BitmapUtils.getBitmap(ByteBuffer.wrap(nv21), metadata));
+            } else if (debugPreviewMode == 2) {
+                showDebugPreview(BitmapUtils.getBitmap(imageProxy));
+            }
+            if (lumaOnly) {
+                return DetectionFrame.fromLuma(nv21, cropRect.width(), cropRect.height(),
+                        rotationDegrees, geometry.getUprightCropRect());
+            }
+            return DetectionFrame.fromNV21(nv21, cropRect.width(), cropRect.height(),
+                    rotationDegrees, geometry.getUprightCropRect());
+        }
+
+        /**
+         * Convert the camera image to Bitmap and trim the detection area.
+         *
+         * @return frame
+         */
+        private DetectionFrame getFrameFromBitmap(ImageProxy imageProxy, CropGeometry.Snapshot geometry) {
+            // カメラ画像をトリミングして検出範囲を限定する
+            long startTime = System.nanoTime();
+            Bitmap bitmapOrg = BitmapUtils.getBitmap(imageProxy);
+            long convertedTime = System.nanoTime();
+            stats.convert.recordNanos(convertedTime - startTime);
+            Bitmap bitmapTrimmed = ImageUtils.trim(bitmapOrg, geometry.getTrimRect());
+            stats.crop.recordNanos(System.nanoTime() - convertedTime);
+            if (debugPreviewMode == 1) {
+                showDebugPreview(bitmapTrimmed);
+            } else if (debugPreviewMode == 2) {
+                showDebugPreview(bitmapOrg);
+            }
+            return DetectionFrame.fromBitmap(bitmapTrimmed, geometry.getTrimRect());
         }
     }
 
+    /**
+     * ${inheritDoc}
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        ScanChannel.detach(this);
+        if (continuousHandler != null) {
+            continuousHandler.removeCallbacksAndMessages(null);
+        }
+        if (cropGeometry != null) {
+            cropGeometry.release();
+        }
+        // 次のスキャンがセッションを使い始めていたらカメラの設定は戻さない
+        boolean ownsCamera = scannerSession == null || scannerSession.isOwner(sessionToken);
+        focusController.stop(ownsCamera);
+        zoomController.stop(ownsCamera);
+        if (scannerSession != null) {
+            // カメラは閉じずに解析だけ一時停止する
+            scannerSession.detach(sessionToken);
+        } else if (imageAnalysis != null) {
+            imageAnalysis.clearAnalyzer();
+        }
+        if (analysisExecutor != null) {
+            // 実行中の解析が終わってから検出器を解放する
+            analysisExecutor.execute(() -> {
+                if (analyzer != null) {
+                    analyzer.close();
+                }
+            });
+            analysisExecutor.shutdown();
+        }
+        FrameBufferPool.clear();
+    }
+
+    /**
+     * ${inheritDoc}
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // プールしているフレームバッファと使用していない検出器を解放する
+        FrameBufferPool.clear();
+        ScannerWarmup.trim();
+    }
+
     private boolean isEnableTimeoutPrompt() {
         return showTimeoutPrompt && timeoutPromptSpan >= 0;
     }
@@ -375,9 +961,21 @@ public class BarcodeScannerActivity extends AppCompatActivity {
         if (!isEnableTimeoutPrompt()) {
             return;
         }
+        final long span = Math.max(timeoutPromptSpan * 1000, 400);
         timeoutPromptHandler = new Handler();
-        timeoutPromptRunnable = () -> timeoutPromptView.setVisibility(View.VISIBLE);
-        timeoutPromptHandler.postDelayed(timeoutPromptRunnable, Math.max(timeoutPromptSpan * 1000, 400));
+        timeoutPromptRunnable = new Runnable() {
+            @Override
+            public void run() {
+                // 重複として抑制された検出ではタイマーを再起動しないため、最終検出時刻から判定する
+                long elapsed = SystemClock.elapsedRealtime() - lastDetectionTime;
+                if (lastDetectionTime > 0 && elapsed < span) {
+                    timeoutPromptHandler.postDelayed(this, span - elapsed);
+                    return;
+                }
+                timeoutPromptView.setVisibility(View.VISIBLE);
+            }
+        };
+        timeoutPromptHandler.postDelayed(timeoutPromptRunnable, span);
     }
 
     private void restartDetectionTimer () {
@@ -390,17 +988,4 @@ public class BarcodeScannerActivity extends AppCompatActivity {
         timeoutPromptView.setVisibility(View.INVISIBLE);
         startDetectionTimer();
     }
-
-    /**
-     * Get resource id
-     *
-     * @param res        resource object
-     * @param name       resource name
-     * @param defType    resource type
-     * @param defPackage package name
-     * @return resource id
-     */
-    private static int getResourceId(Resources res, String name, String defType, String defPackage) {
-        return res.getIdentifier(name, defType, defPackage);
-    }
 }
@@ -0,0 +1,317 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import android.content.ContentResolver;
+import android.util.Log;
+
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Parallel barcode detection on a batch of images.
+ *
+ * Images are decoded and detected on a worker pool sized to the available cores.
+ * A detector client processes its images serially, so each worker uses its own client
+ * ({@link Worker}, created on demand and closed when the batch is finished).
+ * Decoded bitmaps are the dominant memory cost, so each worker reserves the max pixels
+ * of its bitmap from a shared memory budget before decoding, and decodes no larger than
+ * the reserved pixels, which limits the memory of the bitmaps alive at once regardless
+ * of the pool size.
+ *
+ * The listener is called while holding the lock of the batch, so no image is reported
+ * after {@link #cancel()} returns and onFinished is called exactly once.
+ */
+public class BatchImageScanner {
+
+    private static final String TAG = "BatchImageScanner";
+
+    /** Bytes per pixel of the decoded bitmap (ARGB_8888) */
+    private static final int BYTES_PER_PIXEL = 4;
+    /** Ratio of the heap used for decoded bitmaps */
+    private static final int HEAP_BUDGET_DIVISOR = 4;
+
+    /**
+     * Listener of the batch progress (called on the worker threads)
+     */
+    public interface Listener {
+        /**
+         * Called when an image is processed
+         *
+         * @param index     index of the image in the batch
+         * @param uri       image URI
+         * @param result    detection result, or null if failed
+         * @param error     error message if failed, otherwise null
+         * @param completed number of processed images
+         */
+        void onImage(int index, String uri, ImageScanner.Result result, String error, int completed);
+
+        /**
+         * Called once when all images are processed or the batch is cancelled
+         *
+         * @param completed number of processed images
+         * @param cancelled true if cancelled
+         * @param duration  elapsed time (ms)
+         */
+        void onFinished(int completed, boolean cancelled, long duration);
+    }
+
+    /**
+     * Detector of the images used by a worker (not used by other workers at the same time)
+     */
+    interface Worker {
+        /**
+         * Detect barcodes in an image
+         *
+         * @param uri       image URI
+         * @param maxPixels max pixels of the decoded bitmap
+         * @return result, or null if the image cannot be decoded
+         */
+        ImageScanner.Result scan(String uri, int maxPixels)
+                throws IOException, ExecutionException, InterruptedException;
+
+        /**
+         * Release the detector
+         */
+        void close();
+    }
+
+    /**
+     * Factory of the workers
+     */
+    interface WorkerFactory {
+        Worker create();
+    }
+
+    private final String[] uris;
+    private final WorkerFactory workerFactory;
+    private final int parallelism;
+    private final Listener listener;
+    private final Semaphore memoryBudget;
+    private final int pixelsPerImage;
+    /** Workers not processing an image (guarded by this) */
+    private final ArrayDeque<Worker> idleWorkers = new ArrayDeque<>();
+    private ExecutorService executor;
+    private volatile boolean cancelled = false;
+    /** Guarded by this */
+    private boolean finished = false;
+    /** Number of processed images (guarded by this) */
+    private int completed = 0;
+    private long startTime;
+
+    /**
+     * Constructor
+     *
+     * @param resolver    content resolver
+     * @param uris        image URIs
+     * @param formats     formats to detect (Barcode.FORMAT_XXXX)
+     * @param maxPixels   max pixels of each decoded bitmap
+     * @param parallelism number of workers (0: number of cores)
+     * @param budgetBytes memory budget of the decoded bitmaps (0: quarter of the max heap)
+     * @param listener    listener of the progress
+     */
+    public BatchImageScanner(ContentResolver resolver, String[] uris, int[] formats, int maxPixels,
+                             int parallelism, long budgetBytes, Listener listener) {
+        this(uris, ImageScanner.limitMaxPixels(maxPixels), parallelism, budgetBytes, listener,
+                () -> new DetectorWorker(resolver, formats));
+    }
+
+    /**
+     * Constructor with the workers
+     *
+     * @param uris          image URIs
+     * @param maxPixels     max pixels of each decoded bitmap (already limited)
+     * @param parallelism   number of workers (0: number of cores)
+     * @param budgetBytes   memory budget of the decoded bitmaps (0: quarter of the max heap)
+     * @param listener      listener of the progress
+     * @param workerFactory factory of the workers
+     */
+    BatchImageScanner(String[] uris, int maxPixels, int parallelism, long budgetBytes, Listener listener,
+                      WorkerFactory workerFactory) {
+        this.uris = uris;
+        this.workerFactory = workerFactory;
+        int cores = Math.max(1, Runtime.getRuntime().availableProcessors());
+        this.parallelism = parallelism > 0 ? Math.min(parallelism, cores * 2) : cores;
+        this.listener = listener;
+
+        if (budgetBytes <= 0) {
+            budgetBytes = Runtime.getRuntime().maxMemory() / HEAP_BUDGET_DIVISOR;
+        }
+        // 予算は画素数で管理する (1枚分の予算は必ず確保できるようにする)
+        long budgetPixels = Math.min(Integer.MAX_VALUE, budgetBytes / BYTES_PER_PIXEL);
+        this.pixelsPerImage = (int) Math.min(maxPixels, budgetPixels);
+        this.memoryBudget = new Semaphore((int) Math.max(budgetPixels, pixelsPerImage));
+    }
+
+    /**
+     * @return number of workers
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return max pixels of each decoded bitmap (covered by the reservation of the budget)
+     */
+    int getPixelsPerImage() {
+        return pixelsPerImage;
+    }
+
+    /**
+     * Start processing the images
+     */
+    public synchronized void start() {
+        startTime = System.nanoTime();
+        if (uris.length == 0) {
+            finish(false);
+            return;
+        }
+        executor = Executors.newFixedThreadPool(parallelism);
+        for (int i = 0; i < uris.length; i ++) {
+            final int index = i;
+            executor.execute(() -> process(index));
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Cancel the remaining images
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        if (executor != null) {
+            executor.shutdownNow();
+            // 実行待ちのタスクは破棄されるので、ここで完了を通知する (以降の結果は通知しない)
+            if (!finished) {
+                finish(true);
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Decode and detect an image (worker thread)
+     */
+    private void process(int index) {
+        if (cancelled) {
+            return;
+        }
+        String uri = uris[index];
+        ImageScanner.Result result = null;
+        String error = null;
+        boolean acquired = false;
+        Worker worker = null;
+        try {
+            memoryBudget.acquire(pixelsPerImage);
+            acquired = true;
+            if (cancelled) {
+                return;
+            }
+            worker = acquireWorker();
+            // 予約した画素数より大きくデコードしない
+            result = worker.scan(uri, pixelsPerImage);
+            if (result == null) {
+                error = ImageScanner.IMAGE_LOAD_ERROR;
+            }
+        } catch (IOException | SecurityException e) {
+            Log.d(TAG, "Failed to load image: " + uri);
+            error = ImageScanner.IMAGE_LOAD_ERROR;
+        } catch (ExecutionException e) {
+            error = ImageScanner.DETECTION_ERROR;
+        } catch (InterruptedException e) {
+            // cancelled
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            if (worker != null) {
+                releaseWorker(worker);
+            }
+            if (acquired) {
+                memoryBudget.release(pixelsPerImage);
+            }
+        }
+        report(index, uri, result, error);
+    }
+
+    /**
+     * Report the result of an image (worker thread)
+     */
+    private synchronized void report(int index, String uri, ImageScanner.Result result, String error) {
+        if (finished) {
+            // キャンセル済み
+            return;
+        }
+        completed ++;
+        listener.onImage(index, uri, result, error, completed);
+        if (completed == uris.length) {
+            finish(false);
+        }
+    }
+
+    /**
+     * Report the completion and close the idle workers (holding the lock)
+     */
+    private void finish(boolean cancelled) {
+        finished = true;
+        for (Worker worker : idleWorkers) {
+            worker.close();
+        }
+        idleWorkers.clear();
+        listener.onFinished(completed, cancelled, (System.nanoTime() - startTime) / 1_000_000);
+    }
+
+    /**
+     * Get a worker not used by other threads
+     */
+    private synchronized Worker acquireWorker() {
+        Worker worker = idleWorkers.pollFirst();
+        return worker != null ? worker : workerFactory.create();
+    }
+
+    /**
+     * Return a worker (closed if the batch is already finished)
+     */
+    private synchronized void releaseWorker(Worker worker) {
+        if (finished) {
+            worker.close();
+        } else {
+            idleWorkers.addFirst(worker);
+        }
+    }
+
+    /**
+     * Worker detecting by its own MLKit client
+     */
+    private static final class DetectorWorker implements Worker {
+        private final ContentResolver resolver;
+        private final int[] formats;
+        private final BarcodeScanner detector;
+
+        DetectorWorker(ContentResolver resolver, int[] formats) {
+            this.resolver = resolver;
+            this.formats = formats;
+            this.detector = ScannerWarmup.createDetector(formats);
+        }
+
+        @Override
+        public ImageScanner.Result scan(String uri, int maxPixels)
+                throws IOException, ExecutionException, InterruptedException {
+            return ImageScanner.scan(detector, formats, resolver, ImageScanner.parseUri(uri), maxPixels, null);
+        }
+
+        @Override
+        public void close() {
+            detector.close();
+        }
+    }
+}
@@ -38,7 +38,6 @@ import androidx.annotation.RequiresApi;
 import androidx.camera.core.ExperimentalGetImage;
 import androidx.camera.core.ImageProxy;
 import androidx.exifinterface.media.ExifInterface;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -51,21 +50,31 @@ public class BitmapUtils {
   @Nullable
   public static Bitmap getBitmap(ByteBuffer data, FrameMetadata metadata) {
     data.rewind();
-    byte[] imageInBuffer = new byte[data.limit()];
-    data.get(imageInBuffer, 0, imageInBuffer.length);
+    // Use the backing array directly if possible, otherwise copy it into a pooled buffer.
+    byte[] imageInBuffer;
+    byte[] pooledBuffer = null;
+    if (data.hasArray() && data.arrayOffset() == 0) {
+      imageInBuffer = data.array();
+    } else {
+      pooledBuffer = FrameBufferPool.acquire(data.limit());
+      data.get(pooledBuffer, 0, pooledBuffer.length);
+      imageInBuffer = pooledBuffer;
+    }
+    FrameBufferPool.ReusableOutputStream stream = FrameBufferPool.acquireStream();
     try {
       YuvImage image =
           new YuvImage(
               imageInBuffer, ImageFormat.NV21, metadata.getWidth(), metadata.getHeight(), null);
-      ByteArrayOutputStream stream = new ByteArrayOutputStream();
       image.compressToJpeg(new Rect(0, 0, metadata.getWidth(), metadata.getHeight()), 80, stream);
 
-      Bitmap bmp = BitmapFactory.decodeByteArray(stream.toByteArray(), 0, stream.size());
+      Bitmap bmp = BitmapFactory.decodeByteArray(stream.getBuffer(), 0, stream.size());
 
-      stream.close();
       return rotateBitmap(bmp, metadata.getRotation(), false, false);
     } catch (Exception e) {
       Log.e("VisionProcessorBase", "Error: " + e.getMessage());
+    } finally {
+      FrameBufferPool.releaseStream(stream);
+      FrameBufferPool.release(pooledBuffer);
     }
     return null;
   }
@@ -83,7 +92,9 @@ public class BitmapUtils {
 
     ByteBuffer nv21Buffer =
         yuv420ThreePlanesToNV21(image.getImage().getPlanes(), image.getWidth(), image.getHeight());
-    return getBitmap(nv21Buffer, frameMetadata);
+    Bitmap bitmap = getBitmap(nv21Buffer, frameMetadata);
+    FrameBufferPool.release(nv21Buffer.array());
+    return bitmap;
   }
 
   /** Rotates a bitmap if it is converted from a bytebuffer. */
@@ -153,6 +164,142 @@ public class BitmapUtils {
     return rotateBitmap(decodedBitmap, rotationDegrees, flipX, flipY);
   }
 
+  /**
+   * Decodes an image no larger than {@code maxPixels} from a content URI.
+   *
+   * <p>Only the bounds are decoded first, and the image is then decoded with the largest power of
+   * two {@code inSampleSize} that keeps it within {@code maxPixels}. The EXIF rotation is not
+   * applied to the pixels but returned in {@link SampledBitmap#getRotationDegrees()}, so no full
+   * size rotated copy is made. Mirrored orientations are applied to the (already sampled) bitmap.
+   */
+  @Nullable
+  public static SampledBitmap getSampledBitmapFromContentUri(
+      ContentResolver contentResolver, Uri imageUri, int maxPixels) throws IOException {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    try (InputStream inputStream = contentResolver.openInputStream(imageUri)) {
+      if (inputStream == null) {
+        return null;
+      }
+      BitmapFactory.decodeStream(inputStream, null, options);
+    }
+    int width = options.outWidth;
+    int height = options.outHeight;
+    if (width <= 0 || height <= 0) {
+      return null;
+    }
+    int sampleSize = getSampleSize(width, height, maxPixels);
+
+    options = new BitmapFactory.Options();
+    options.inSampleSize = sampleSize;
+    Bitmap bitmap;
+    try (InputStream inputStream = contentResolver.openInputStream(imageUri)) {
+      if (inputStream == null) {
+        return null;
+      }
+      bitmap = BitmapFactory.decodeStream(inputStream, null, options);
+    }
+    if (bitmap == null) {
+      return null;
+    }
+
+    int rotationDegrees = 0;
+    boolean transposed = false;
+    switch (getExifOrientationTag(contentResolver, imageUri)) {
+      case ExifInterface.ORIENTATION_ROTATE_90:
+        rotationDegrees = 90;
+        break;
+      case ExifInterface.ORIENTATION_ROTATE_180:
+        rotationDegrees = 180;
+        break;
+      case ExifInterface.ORIENTATION_ROTATE_270:
+        rotationDegrees = 270;
+        break;
+      case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+        bitmap = rotateBitmap(bitmap, 0, true, false);
+        break;
+      case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+        bitmap = rotateBitmap(bitmap, 0, false, true);
+        break;
+      case ExifInterface.ORIENTATION_TRANSPOSE:
+        bitmap = rotateBitmap(bitmap, 90, true, false);
+        transposed = true;
+        break;
+      case ExifInterface.ORIENTATION_TRANSVERSE:
+        bitmap = rotateBitmap(bitmap, -90, true, false);
+        transposed = true;
+        break;
+      default:
+        // No transformations necessary in this case.
+    }
+    // The upright size is swapped if the image is rotated by 90 or 270 degrees.
+    boolean swapped = transposed || rotationDegrees % 180 != 0;
+    return new SampledBitmap(
+        bitmap, rotationDegrees, sampleSize, swapped ? height : width, swapped ? width : height);
+  }
+
+  /**
+   * Returns the smallest power of two sample size which keeps the image within maxPixels.
+   *
+   * <p>Decoders round the sampled size up, so the size is estimated by rounding up as well.
+   */
+  static int getSampleSize(int width, int height, int maxPixels) {
+    int sampleSize = 1;
+    if (maxPixels <= 0) {
+      return sampleSize;
+    }
+    while (getSampledPixels(width, height, sampleSize) > maxPixels) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+
+  /** Returns the number of pixels of an image decoded with the sample size. */
+  static long getSampledPixels(int width, int height, int sampleSize) {
+    return (long) ((width + sampleSize - 1) / sampleSize) * ((height + sampleSize - 1) / sampleSize);
+  }
+
+  /** Bitmap decoded with inSampleSize, and the rotation to be applied by the detector. */
+  public static final class SampledBitmap {
+    private final Bitmap bitmap;
+    private final int rotationDegrees;
+    private final int sampleSize;
+    private final int uprightWidth;
+    private final int uprightHeight;
+
+    SampledBitmap(
+        Bitmap bitmap, int rotationDegrees, int sampleSize, int uprightWidth, int uprightHeight) {
+      this.bitmap = bitmap;
+      this.rotationDegrees = rotationDegrees;
+      this.sampleSize = sampleSize;
+      this.uprightWidth = uprightWidth;
+      this.uprightHeight = uprightHeight;
+    }
+
+    public Bitmap getBitmap() {
+      return bitmap;
+    }
+
+    /** Clockwise rotation to make the bitmap upright (0, 90, 180 or 270). */
+    public int getRotationDegrees() {
+      return rotationDegrees;
+    }
+
+    public int getSampleSize() {
+      return sampleSize;
+    }
+
+    /** Width of the full size image in upright orientation. */
+    public int getUprightWidth() {
+      return uprightWidth;
+    }
+
+    /** Height of the full size image in upright orientation. */
+    public int getUprightHeight() {
+      return uprightHeight;
+    }
+  }
+
   private static int getExifOrientationTag(ContentResolver resolver, Uri imageUri) {
     // We only support parsing EXIF orientation tag from local file on the device.
     // See also:
@@ -193,11 +340,13 @@ public class BitmapUtils {
    * NV21 format. This happens if the planes share the same buffer, the V buffer is one position
    * before the U buffer and the planes have a pixelStride of 2. If this is case, we can just copy
    * them to the NV21 array.
+   *
+   * <p>The backing array of the returned buffer is drawn from {@link FrameBufferPool}.
    */
   private static ByteBuffer yuv420ThreePlanesToNV21(
       Plane[] yuv420888planes, int width, int height) {
     int imageSize = width * height;
-    byte[] out = new byte[imageSize + 2 * (imageSize / 4)];
+    byte[] out = FrameBufferPool.acquire(imageSize + 2 * (imageSize / 4));
 
     if (areUVPlanesNV21(yuv420888planes, width, height)) {
       // Copy the Y values.
@@ -210,7 +359,7 @@ public class BitmapUtils {
       // Copy the first U value and the remaining VU values from the U buffer.
       uBuffer.get(out, imageSize + 1, 2 * imageSize / 4 - 1);
     } else {
-      // Fallback to copying the UV values one by one, which is slower but also works.
+      // Fallback to unpacking the planes row by row, which is slower but also works.
       // Unpack Y.
       unpackPlane(yuv420888planes[0], width, height, out, 0, 1);
       // Unpack U.
@@ -222,12 +371,142 @@ public class BitmapUtils {
     return ByteBuffer.wrap(out);
   }
 
+  /**
+   * Crops a region of a YUV_420_888 image directly into an NV21 byte array.
+   *
+   * <p>The crop rectangle is given in sensor coordinates (before rotation) and is aligned to even
+   * coordinates so that it matches the 2x2 subsampling of the U and V planes. Unlike {@link
+   * #getBitmap(ImageProxy)}, no JPEG encoding, decoding or rotation takes place: the result can be
+   * handed to the detector together with the rotation degrees of the frame.
+   *
+   * <p>The returned array is drawn from {@link FrameBufferPool} and should be released to it once
+   * the detector is done with it.
+   *
+   * @return NV21 data of size {@code width * height * 3 / 2} of the aligned crop rectangle, or null
+   *     if the planes do not have a layout this method can handle
+   */
+  @Nullable
+  public static byte[] yuv420ThreePlanesToNV21(Plane[] yuv420888planes, int width, int height,
+      Rect crop) {
+    if (yuv420888planes.length < 3) {
+      return null;
+    }
+    Plane yPlane = yuv420888planes[0];
+    Plane uPlane = yuv420888planes[1];
+    Plane vPlane = yuv420888planes[2];
+    int yPixelStride = yPlane.getPixelStride();
+    int uvPixelStride = uPlane.getPixelStride();
+    int uvRowStride = uPlane.getRowStride();
+    if (yPixelStride < 1 || uvPixelStride < 1 || uvPixelStride != vPlane.getPixelStride()
+        || uvRowStride != vPlane.getRowStride()) {
+      return null;
+    }
+
+    Rect aligned = alignCropRect(crop);
+    int cropWidth = aligned.width();
+    int cropHeight = aligned.height();
+    if (cropWidth <= 0 || cropHeight <= 0 || aligned.left < 0 || aligned.top < 0
+        || aligned.right > width || aligned.bottom > height) {
+      return null;
+    }
+
+    ByteBuffer yBuffer = yPlane.getBuffer();
+    ByteBuffer uBuffer = uPlane.getBuffer();
+    ByteBuffer vBuffer = vPlane.getBuffer();
+    int yRowStride = yPlane.getRowStride();
+    int uvLeft = aligned.left / 2;
+    int uvTop = aligned.top / 2;
+    int uvWidth = cropWidth / 2;
+    int uvHeight = cropHeight / 2;
+    // Make sure that the last pixel of the crop rectangle is inside every plane.
+    int lastYIndex = (aligned.bottom - 1) * yRowStride + (aligned.right - 1) * yPixelStride;
+    int lastUVIndex = (uvTop + uvHeight - 1) * uvRowStride + (uvLeft + uvWidth - 1) * uvPixelStride;
+    if (lastYIndex >= yBuffer.limit() || lastUVIndex >= uBuffer.limit()
+        || lastUVIndex >= vBuffer.limit()) {
+      return null;
+    }
+
+    int ySize = cropWidth * cropHeight;
+    byte[] out = FrameBufferPool.acquire(ySize + 2 * uvWidth * uvHeight);
+
+    // Unpack Y.
+    unpackPlane(yBuffer, yRowStride, yPixelStride, aligned.left, aligned.top, cropWidth, cropHeight,
+        out, 0, 1);
+    // Unpack V and U, interleaved.
+    unpackPlane(vBuffer, uvRowStride, uvPixelStride, uvLeft, uvTop, uvWidth, uvHeight, out, ySize,
+        2);
+    unpackPlane(uBuffer, uvRowStride, uvPixelStride, uvLeft, uvTop, uvWidth, uvHeight, out,
+        ySize + 1, 2);
+
+    return out;
+  }
+
+  /**
+   * Crops a region of the Y plane of a YUV_420_888 image into a byte array.
+   *
+   * <p>Same as {@link #yuv420ThreePlanesToNV21(Plane[], int, int, Rect)} without the U and V planes,
+   * for detectors which only read the luma. The crop rectangle is aligned the same way, so that
+   * both methods produce frames of the same size.
+   *
+   * <p>The returned array is drawn from {@link FrameBufferPool} and should be released to it once
+   * the detector is done with it.
+   *
+   * @return luma data of size {@code width * height} of the aligned crop rectangle, or null if the
+   *     plane does not have a layout this method can handle
+   */
+  @Nullable
+  public static byte[] yuv420ToLuma(Plane[] yuv420888planes, int width, int height, Rect crop) {
+    if (yuv420888planes.length < 1) {
+      return null;
+    }
+    Plane yPlane = yuv420888planes[0];
+    int yPixelStride = yPlane.getPixelStride();
+    if (yPixelStride < 1) {
+      return null;
+    }
+
+    Rect aligned = alignCropRect(crop);
+    int cropWidth = aligned.width();
+    int cropHeight = aligned.height();
+    if (cropWidth <= 0 || cropHeight <= 0 || aligned.left < 0 || aligned.top < 0
+        || aligned.right > width || aligned.bottom > height) {
+      return null;
+    }
+
+    ByteBuffer yBuffer = yPlane.getBuffer();
+    int yRowStride = yPlane.getRowStride();
+    int lastYIndex = (aligned.bottom - 1) * yRowStride + (aligned.right - 1) * yPixelStride;
+    if (lastYIndex >= yBuffer.limit()) {
+      return null;
+    }
+
+    byte[] out = FrameBufferPool.acquire(cropWidth * cropHeight);
+    unpackPlane(yBuffer, yRowStride, yPixelStride, aligned.left, aligned.top, cropWidth, cropHeight,
+        out, 0, 1);
+    return out;
+  }
+
+  /** Aligns a crop rectangle to even coordinates, shrinking it if necessary. */
+  public static Rect alignCropRect(Rect crop) {
+    int left = (crop.left + 1) & ~1;
+    int top = (crop.top + 1) & ~1;
+    int right = crop.right & ~1;
+    int bottom = crop.bottom & ~1;
+    return new Rect(left, top, Math.max(left, right), Math.max(top, bottom));
+  }
+
   /** Checks if the UV plane buffers of a YUV_420_888 image are in the NV21 format. */
   private static boolean areUVPlanesNV21(Plane[] planes, int width, int height) {
-    int imageSize = width * height;
+    return areUVPlanesNV21(planes[1].getBuffer(), planes[2].getBuffer(), width, height);
+  }
 
-    ByteBuffer uBuffer = planes[1].getBuffer();
-    ByteBuffer vBuffer = planes[2].getBuffer();
+  /**
+   * Checks if the U and V plane buffers are in the NV21 format.
+   *
+   * <p>Works on plain buffers so that it can be exercised without an {@link Image}.
+   */
+  static boolean areUVPlanesNV21(ByteBuffer uBuffer, ByteBuffer vBuffer, int width, int height) {
+    int imageSize = width * height;
 
     // Backup buffer properties.
     int vBufferPosition = vBuffer.position();
@@ -269,17 +548,51 @@ public class BitmapUtils {
     int scaleFactor = height / numRow;
     int numCol = width / scaleFactor;
 
-    // Extract the data in the output buffer.
+    unpackPlane(buffer, plane.getRowStride(), plane.getPixelStride(), 0, 0, numCol, numRow, out,
+        offset, pixelStride);
+  }
+
+  /**
+   * Unpack a sub-rectangle of an image plane into a byte array.
+   *
+   * <p>The pixels of the rectangle starting at ('left', 'top') of the plane are copied in 'out',
+   * starting at 'offset' and every pixel will be spaced by 'outPixelStride'. Rows are read with bulk
+   * copies: directly into 'out' when both pixel strides are 1, otherwise through a scratch row
+   * buffer drawn from {@link FrameBufferPool} which is then spread into 'out'. The position of the
+   * buffer is left unchanged.
+   */
+  static void unpackPlane(ByteBuffer buffer, int rowStride, int planePixelStride, int left,
+      int top, int numCol, int numRow, byte[] out, int offset, int outPixelStride) {
+    if (numCol <= 0 || numRow <= 0) {
+      return;
+    }
+    int bufferPosition = buffer.position();
+    // Number of bytes spanned by one row of the rectangle in the plane.
+    int rowLength = (numCol - 1) * planePixelStride + 1;
+    int rowStart = top * rowStride + left * planePixelStride;
     int outputPos = offset;
-    int rowStart = 0;
-    for (int row = 0; row < numRow; row++) {
-      int inputPos = rowStart;
-      for (int col = 0; col < numCol; col++) {
-        out[outputPos] = buffer.get(inputPos);
-        outputPos += pixelStride;
-        inputPos += plane.getPixelStride();
+
+    if (planePixelStride == 1 && outPixelStride == 1) {
+      for (int row = 0; row < numRow; row++) {
+        buffer.position(rowStart);
+        buffer.get(out, outputPos, numCol);
+        outputPos += numCol;
+        rowStart += rowStride;
       }
-      rowStart += plane.getRowStride();
+    } else {
+      byte[] rowBuffer = FrameBufferPool.acquire(rowLength);
+      for (int row = 0; row < numRow; row++) {
+        buffer.position(rowStart);
+        buffer.get(rowBuffer, 0, rowLength);
+        for (int inputPos = 0; inputPos < rowLength; inputPos += planePixelStride) {
+          out[outputPos] = rowBuffer[inputPos];
+          outputPos += outPixelStride;
+        }
+        rowStart += rowStride;
+      }
+      FrameBufferPool.release(rowBuffer);
     }
+
+    buffer.position(bufferPosition);
   }
 }
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import android.graphics.Rect;
+
+/**
+ * Code located in a frame, whether it is decoded or not.
+ *
+ * Engines locate codes (finder patterns, MLKit boxes) before and even without decoding them,
+ * which is enough to estimate the pixel density of a code too far to be decoded.
+ */
+public final class CodeCandidate {
+
+    private final int format;
+    private final Rect boundingBox;
+    private final float moduleSize;
+
+    /**
+     * Constructor
+     *
+     * @param format      Barcode.FORMAT_XXXX (FORMAT_UNKNOWN if not known)
+     * @param boundingBox box of the code in full frame coordinates (upright)
+     * @param moduleSize  measured pixels per module (0 if not measured)
+     */
+    public CodeCandidate(int format, Rect boundingBox, float moduleSize) {
+        this.format = format;
+        this.boundingBox = boundingBox;
+        this.moduleSize = moduleSize;
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    public Rect getBoundingBox() {
+        return boundingBox;
+    }
+
+    /**
+     * Get the pixel density of the code
+     *
+     * The measured module size if any, otherwise the long side of the box divided by
+     * the typical number of modules of the format.
+     *
+     * @return pixels per module
+     */
+    public double getPixelsPerModule() {
+        if (moduleSize > 0) {
+            return moduleSize;
+        }
+        return (double) Math.max(boundingBox.width(), boundingBox.height())
+                / AnalysisResolution.getRequiredModules(new int[] {format});
+    }
+}
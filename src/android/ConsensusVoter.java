@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * Multi-frame confirmation of detected codes.
+ *
+ * Keeps a vote table of the codes read in the last N frames, and confirms a code
+ * when it gets K agreeing reads within the window, or (optionally) when its
+ * check digit is valid.
+ */
+public class ConsensusVoter {
+
+    private final int requiredVotes;
+    private final int windowFrames;
+    private final boolean acceptChecksum;
+    /** Key of the code read in each frame of the window (null: nothing read) */
+    private final ArrayDeque<String> window = new ArrayDeque<>();
+    private final HashMap<String, Integer> votes = new HashMap<>();
+    private int readFrames = 0;
+
+    /**
+     * Constructor
+     *
+     * @param requiredVotes  K: agreeing reads to confirm a code (1 or less confirms the first read)
+     * @param windowFrames   N: number of consecutive frames to count the votes in
+     * @param acceptChecksum confirm a code immediately when its check digit is valid
+     */
+    public ConsensusVoter(int requiredVotes, int windowFrames, boolean acceptChecksum) {
+        this.requiredVotes = Math.max(1, requiredVotes);
+        this.windowFrames = Math.max(this.requiredVotes, windowFrames);
+        this.acceptChecksum = acceptChecksum;
+    }
+
+    /**
+     * @return true if a code needs more than one read or a checksum to be confirmed
+     */
+    public boolean isEnabled() {
+        return requiredVotes > 1 || acceptChecksum;
+    }
+
+    /**
+     * Vote the code read in a frame (analysis thread)
+     *
+     * @param code code read in the frame, or null if nothing is read
+     * @return confirmation if the code is confirmed, otherwise null
+     */
+    public Confirmation vote(DetectedCode code) {
+        String key = code != null ? code.getKey() : null;
+        window.addLast(key == null ? "" : key);
+        if (key != null) {
+            votes.put(key, getVotes(key) + 1);
+            readFrames ++;
+        }
+        if (window.size() > windowFrames) {
+            String expired = window.removeFirst();
+            if (!expired.isEmpty()) {
+                int count = getVotes(expired) - 1;
+                if (count > 0) {
+                    votes.put(expired, count);
+                } else {
+                    votes.remove(expired);
+                }
+                readFrames --;
+            }
+        }
+        if (code == null) {
+            return null;
+        }
+
+        int count = getVotes(key);
+        if (count >= requiredVotes
+                || (acceptChecksum && BarcodeChecksum.isValid(code.getFormat(), code.getRawValue()))) {
+            return new Confirmation(code, count, (float) count / Math.max(1, readFrames));
+        }
+        return null;
+    }
+
+    /**
+     * Clear the vote table
+     */
+    public void reset() {
+        window.clear();
+        votes.clear();
+        readFrames = 0;
+    }
+
+    private int getVotes(String key) {
+        Integer count = votes.get(key);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Confirmed code with its votes
+     */
+    public static final class Confirmation {
+        private final DetectedCode code;
+        private final int votes;
+        private final float confidence;
+
+        Confirmation(DetectedCode code, int votes, float confidence) {
+            this.code = code;
+            this.votes = votes;
+            this.confidence = confidence;
+        }
+
+        public DetectedCode getCode() {
+            return code;
+        }
+
+        /**
+         * @return number of reads of the code in the window
+         */
+        public int getVotes() {
+            return votes;
+        }
+
+        /**
+         * @return ratio of the reads agreeing with the code among all reads in the window (0 - 1)
+         */
+        public float getConfidence() {
+            return confidence;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import android.graphics.Rect;
+import android.view.View;
+
+import java.util.Objects;
+
+/**
+ * Geometry of the detection area in camera image coordinates.
+ *
+ * The view sizes are captured on the UI thread by OnLayoutChangeListener, and the
+ * crop region is recomputed only when the layout, the rotation, the analysis
+ * resolution or the viewport crop changes. The analyzer reads the result as an
+ * immutable snapshot without touching any views.
+ *
+ * The part of the camera image visible on the preview is the viewport crop rectangle
+ * of the frame (ImageProxy.getCropRect()), narrowed to the aspect ratio of the preview
+ * as the preview is scaled by FILL_CENTER. The detection area is mapped into it by its
+ * position on the preview, so the crop matches the detection area on the screen for any
+ * rotation and aspect ratio.
+ */
+public class CropGeometry implements View.OnLayoutChangeListener {
+
+    private final View previewView;
+    private final View detectionArea;
+    private final int[] previewLocation = new int[2];
+    private final int[] areaLocation = new int[2];
+    private volatile Layout layout;
+    private volatile Snapshot snapshot;
+
+    /**
+     * Constructor
+     *
+     * @param previewView   camera preview view
+     * @param detectionArea detection area view on the preview
+     */
+    public CropGeometry(View previewView, View detectionArea) {
+        this.previewView = previewView;
+        this.detectionArea = detectionArea;
+        previewView.addOnLayoutChangeListener(this);
+        detectionArea.addOnLayoutChangeListener(this);
+        updateLayout();
+    }
+
+    /**
+     * ${inheritDoc}
+     */
+    @Override
+    public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                               int oldLeft, int oldTop, int oldRight, int oldBottom) {
+        updateLayout();
+    }
+
+    /**
+     * Stop listening to layout changes
+     */
+    public void release() {
+        previewView.removeOnLayoutChangeListener(this);
+        detectionArea.removeOnLayoutChangeListener(this);
+    }
+
+    /**
+     * Capture view sizes (UI thread)
+     */
+    private void updateLayout() {
+        Layout current = layout;
+        int screenWidth = previewView.getWidth();
+        int screenHeight = previewView.getHeight();
+        int areaWidth = detectionArea.getWidth();
+        int areaHeight = detectionArea.getHeight();
+        // 検出範囲のプレビュー上の位置
+        previewView.getLocationInWindow(previewLocation);
+        detectionArea.getLocationInWindow(areaLocation);
+        int areaLeft = areaLocation[0] - previewLocation[0];
+        int areaTop = areaLocation[1] - previewLocation[1];
+        if (current != null && current.screenWidth == screenWidth && current.screenHeight == screenHeight
+                && current.areaLeft == areaLeft && current.areaTop == areaTop
+                && current.areaWidth == areaWidth && current.areaHeight == areaHeight) {
+            return;
+        }
+        layout = new Layout(screenWidth, screenHeight, areaLeft, areaTop, areaWidth, areaHeight);
+    }
+
+    /**
+     * Get the crop geometry for a camera image (any thread)
+     *
+     * @param imageWidth      camera image width (sensor coordinates)
+     * @param imageHeight     camera image height (sensor coordinates)
+     * @param rotationDegrees rotation of the camera image
+     * @param viewportCrop    viewport crop rectangle of the camera image (sensor coordinates, nullable)
+     * @return snapshot of the crop geometry, or null if the views are not laid out yet
+     */
+    public Snapshot get(int imageWidth, int imageHeight, int rotationDegrees, Rect viewportCrop) {
+        Layout currentLayout = layout;
+        if (currentLayout == null || !currentLayout.isValid()) {
+            return null;
+        }
+        Snapshot current = snapshot;
+        if (current != null && current.layout == currentLayout && current.imageWidth == imageWidth
+                && current.imageHeight == imageHeight && current.rotationDegrees == rotationDegrees
+                && Objects.equals(current.viewportCrop, viewportCrop)) {
+            return current;
+        }
+        current = new Snapshot(currentLayout, imageWidth, imageHeight, rotationDegrees,
+                viewportCrop != null ? new Rect(viewportCrop) : null);
+        snapshot = current;
+        return current;
+    }
+
+    /**
+     * Compute the crop geometry for view sizes
+     *
+     * @param screenWidth     preview view width
+     * @param screenHeight    preview view height
+     * @param areaLeft        x of the detection area on the preview
+     * @param areaTop         y of the detection area on the preview
+     * @param areaWidth       detection area width
+     * @param areaHeight      detection area height
+     * @param imageWidth      camera image width (sensor coordinates)
+     * @param imageHeight     camera image height (sensor coordinates)
+     * @param rotationDegrees rotation of the camera image
+     * @param viewportCrop    viewport crop rectangle of the camera image (sensor coordinates, nullable)
+     * @return snapshot of the crop geometry
+     */
+    static Snapshot getSnapshot(int screenWidth, int screenHeight, int areaLeft, int areaTop, int areaWidth,
+                                int areaHeight, int imageWidth, int imageHeight, int rotationDegrees,
+                                Rect viewportCrop) {
+        return new Snapshot(new Layout(screenWidth, screenHeight, areaLeft, areaTop, areaWidth, areaHeight),
+                imageWidth, imageHeight, rotationDegrees, viewportCrop);
+    }
+
+    /**
+     * Rotate a rectangle in sensor (unrotated) coordinates to upright (rotated) image coordinates
+     *
+     * @param rect            rectangle in the unrotated image
+     * @param imageWidth      unrotated image width
+     * @param imageHeight     unrotated image height
+     * @param rotationDegrees clockwise rotation to make the image upright
+     * @return rectangle in the upright image
+     */
+    static Rect rotateRect(Rect rect, int imageWidth, int imageHeight, int rotationDegrees) {
+        switch ((rotationDegrees % 360 + 360) % 360) {
+            case 90:
+                return new Rect(imageHeight - rect.bottom, rect.left, imageHeight - rect.top, rect.right);
+            case 180:
+                return new Rect(imageWidth - rect.right, imageHeight - rect.bottom,
+                        imageWidth - rect.left, imageHeight - rect.top);
+            case 270:
+                return new Rect(rect.top, imageWidth - rect.right, rect.bottom, imageWidth - rect.left);
+            default:
+                return new Rect(rect);
+        }
+    }
+
+    /**
+     * Get the rectangle shown by FILL_CENTER scaling (centered, same aspect ratio as the view)
+     *
+     * @param rect       image rectangle
+     * @param viewWidth  view width
+     * @param viewHeight view height
+     * @return visible part of the rectangle
+     */
+    static Rect getFillCenterRect(Rect rect, int viewWidth, int viewHeight) {
+        int width = rect.width();
+        int height = rect.height();
+        if ((long) width * viewHeight > (long) height * viewWidth) {
+            // 画像の方が横長 (左右が切れる)
+            width = (int) ((long) height * viewWidth / viewHeight);
+        } else {
+            height = (int) ((long) width * viewHeight / viewWidth);
+        }
+        int left = rect.left + (rect.width() - width) / 2;
+        int top = rect.top + (rect.height() - height) / 2;
+        return new Rect(left, top, left + width, top + height);
+    }
+
+    /**
+     * View sizes captured on layout
+     */
+    private static final class Layout {
+        final int screenWidth;
+        final int screenHeight;
+        final int areaLeft;
+        final int areaTop;
+        final int areaWidth;
+        final int areaHeight;
+
+        Layout(int screenWidth, int screenHeight, int areaLeft, int areaTop, int areaWidth, int areaHeight) {
+            this.screenWidth = screenWidth;
+            this.screenHeight = screenHeight;
+            this.areaLeft = areaLeft;
+            this.areaTop = areaTop;
+            this.areaWidth = areaWidth;
+            this.areaHeight = areaHeight;
+        }
+
+        boolean isValid() {
+            return screenWidth > 0 && screenHeight > 0 && areaWidth > 0 && areaHeight > 0;
+        }
+    }
+
+    /**
+     * Immutable crop geometry for a camera image size and rotation
+     */
+    public static final class Snapshot {
+        private final Layout layout;
+        private final int imageWidth;
+        private final int imageHeight;
+        private final int rotationDegrees;
+        private final Rect viewportCrop;
+        private final int trimWidth;
+        private final int trimHeight;
+        private final Rect sensorCropRect;
+        private final Rect uprightCropRect;
+        private final Rect trimRect;
+
+        private Snapshot(Layout layout, int imageWidth, int imageHeight, int rotationDegrees, Rect viewportCrop) {
+            this.layout = layout;
+            this.imageWidth = imageWidth;
+            this.imageHeight = imageHeight;
+            this.rotationDegrees = rotationDegrees;
+            this.viewportCrop = viewportCrop;
+
+            // プレビューに表示されている範囲 (回転後の座標)
+            Rect imageRect = new Rect(0, 0, imageWidth, imageHeight);
+            Rect visible = viewportCrop != null && imageRect.contains(viewportCrop) && !viewportCrop.isEmpty()
+                    ? viewportCrop : imageRect;
+            boolean portrait = rotationDegrees % 180 != 0;
+            int uprightWidth = portrait ? imageHeight : imageWidth;
+            int uprightHeight = portrait ? imageWidth : imageHeight;
+            Rect uprightVisible = getFillCenterRect(rotateRect(visible, imageWidth, imageHeight, rotationDegrees),
+                    layout.screenWidth, layout.screenHeight);
+
+            // 検出範囲のプレビュー上の位置を画像の座標に変換
+            float scale = (float) uprightVisible.width() / layout.screenWidth;
+            int left = uprightVisible.left + Math.round(layout.areaLeft * scale);
+            int top = uprightVisible.top + Math.round(layout.areaTop * scale);
+            trimRect = new Rect(left, top, left + Math.round(layout.areaWidth * scale),
+                    top + Math.round(layout.areaHeight * scale));
+            if (!trimRect.intersect(0, 0, uprightWidth, uprightHeight)) {
+                // 検出範囲がプレビュー外
+                trimRect.set(0, 0, uprightWidth, uprightHeight);
+            }
+            trimWidth = trimRect.width();
+            trimHeight = trimRect.height();
+            sensorCropRect = BitmapUtils.alignCropRect(
+                    rotateRect(trimRect, uprightWidth, uprightHeight, 360 - rotationDegrees));
+            uprightCropRect = rotateRect(sensorCropRect, imageWidth, imageHeight, rotationDegrees);
+        }
+
+        public int getImageWidth() {
+            return imageWidth;
+        }
+
+        public int getImageHeight() {
+            return imageHeight;
+        }
+
+        public int getRotationDegrees() {
+            return rotationDegrees;
+        }
+
+        /**
+         * @return width of the detection area in the rotated (upright) image
+         */
+        public int getTrimWidth() {
+            return trimWidth;
+        }
+
+        /**
+         * @return height of the detection area in the rotated (upright) image
+         */
+        public int getTrimHeight() {
+            return trimHeight;
+        }
+
+        /**
+         * @return detection area in sensor coordinates, aligned to even coordinates (shared, do not modify)
+         */
+        public Rect getSensorCropRect() {
+            return sensorCropRect;
+        }
+
+        /**
+         * @return sensor crop rectangle in the rotated (upright) image (shared, do not modify)
+         */
+        public Rect getUprightCropRect() {
+            return uprightCropRect;
+        }
+
+        /**
+         * @return detection area in the rotated (upright) image, for the bitmap conversion (shared, do not modify)
+         */
+        public Rect getTrimRect() {
+            return trimRect;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.util.Base64;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Detected barcode with its geometry in full camera frame coordinates (upright)
+ */
+public class DetectedCode {
+
+    private final int format;
+    private final String text;
+    private final String rawValue;
+    private final byte[] rawBytes;
+    private final int valueType;
+    private final Rect boundingBox;
+    private final Point[] cornerPoints;
+    private final Point[] resultPoints;
+
+    public DetectedCode(int format, String text, String rawValue, byte[] rawBytes, int valueType,
+                        Rect boundingBox, Point[] cornerPoints) {
+        this(format, text, rawValue, rawBytes, valueType, boundingBox, cornerPoints, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param resultPoints points found by the detector which are not the corners of the code
+     *                     (finder patterns, or both ends of a 1D code), or null
+     */
+    public DetectedCode(int format, String text, String rawValue, byte[] rawBytes, int valueType,
+                        Rect boundingBox, Point[] cornerPoints, Point[] resultPoints) {
+        this.format = format;
+        this.text = text;
+        this.rawValue = rawValue;
+        this.rawBytes = rawBytes;
+        this.valueType = valueType;
+        this.boundingBox = boundingBox;
+        this.cornerPoints = cornerPoints;
+        this.resultPoints = resultPoints;
+    }
+
+    /**
+     * Create from MLKit barcode
+     *
+     * @param barcode barcode detected in a cropped image
+     * @param offsetX x of the cropped image in the full frame
+     * @param offsetY y of the cropped image in the full frame
+     * @return detected code, or null if the barcode has no display value
+     */
+    public static DetectedCode fromBarcode(Barcode barcode, int offsetX, int offsetY) {
+        return fromBarcode(barcode, offsetX, offsetY, 1);
+    }
+
+    /**
+     * Create from MLKit barcode detected in a scaled image
+     *
+     * Coordinates are mapped as (x * scale + offsetX, y * scale + offsetY).
+     *
+     * @param barcode barcode detected in a cropped (and scaled) image
+     * @param offsetX x of the cropped image in the full image
+     * @param offsetY y of the cropped image in the full image
+     * @param scale   scale from the detected image to the full image
+     * @return detected code, or null if the barcode has no display value
+     */
+    public static DetectedCode fromBarcode(Barcode barcode, int offsetX, int offsetY, float scale) {
+        if (barcode.getDisplayValue() == null) {
+            return null;
+        }
+        Rect boundingBox = barcode.getBoundingBox();
+        if (boundingBox != null) {
+            boundingBox = new Rect(
+                    Math.round(boundingBox.left * scale) + offsetX,
+                    Math.round(boundingBox.top * scale) + offsetY,
+                    Math.round(boundingBox.right * scale) + offsetX,
+                    Math.round(boundingBox.bottom * scale) + offsetY);
+        }
+        Point[] cornerPoints = barcode.getCornerPoints();
+        if (cornerPoints != null) {
+            Point[] points = new Point[cornerPoints.length];
+            for (int i = 0; i < cornerPoints.length; i ++) {
+                points[i] = new Point(Math.round(cornerPoints[i].x * scale) + offsetX,
+                        Math.round(cornerPoints[i].y * scale) + offsetY);
+            }
+            cornerPoints = points;
+        }
+        return new DetectedCode(barcode.getFormat(), barcode.getDisplayValue(), barcode.getRawValue(),
+                barcode.getRawBytes(), barcode.getValueType(), boundingBox, cornerPoints);
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    public String getFormatName() {
+        return BarcodeFormats.toName(format);
+    }
+
+    /**
+     * @return display value
+     */
+    public String getText() {
+        return text;
+    }
+
+    public String getRawValue() {
+        return rawValue;
+    }
+
+    public byte[] getRawBytes() {
+        return rawBytes;
+    }
+
+    public int getValueType() {
+        return valueType;
+    }
+
+    public Rect getBoundingBox() {
+        return boundingBox;
+    }
+
+    public Point[] getCornerPoints() {
+        return cornerPoints;
+    }
+
+    /**
+     * @return points which are not the corners (finder patterns, ends of a 1D code), or null
+     */
+    public Point[] getResultPoints() {
+        return resultPoints;
+    }
+
+    /**
+     * @return key to identify the code (format and raw value)
+     */
+    public String getKey() {
+        return DetectionCache.getKey(format, rawValue != null ? rawValue : text);
+    }
+
+    /**
+     * Convert to JSON
+     *
+     * @return {text, format, rawValue, rawBytes, valueType, boundingBox, cornerPoints, resultPoints}
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("text", text);
+            json.put("format", getFormatName());
+            json.put("rawValue", rawValue);
+            if (rawBytes != null) {
+                json.put("rawBytes", Base64.encodeToString(rawBytes, Base64.NO_WRAP));
+            }
+            json.put("valueType", getValueTypeName(valueType));
+            if (boundingBox != null) {
+                JSONObject box = new JSONObject();
+                box.put("x", boundingBox.left);
+                box.put("y", boundingBox.top);
+                box.put("width", boundingBox.width());
+                box.put("height", boundingBox.height());
+                json.put("boundingBox", box);
+            }
+            if (cornerPoints != null) {
+                json.put("cornerPoints", toJSON(cornerPoints));
+            }
+            if (resultPoints != null) {
+                json.put("resultPoints", toJSON(resultPoints));
+            }
+        } catch (JSONException e) {
+            // never happens (all values are finite)
+        }
+        return json;
+    }
+
+    private static JSONArray toJSON(Point[] points) throws JSONException {
+        JSONArray array = new JSONArray();
+        for (Point point : points) {
+            JSONObject p = new JSONObject();
+            p.put("x", point.x);
+            p.put("y", point.y);
+            array.put(p);
+        }
+        return array;
+    }
+
+    /**
+     * 定数 Barcode.TYPE_XXXX から文字列に変換
+     * @param valueType Barcode.TYPE_XXXX
+     * @return value type name
+     */
+    private static String getValueTypeName(int valueType) {
+        switch (valueType) {
+            case Barcode.TYPE_CONTACT_INFO:
+                return "CONTACT_INFO";
+            case Barcode.TYPE_EMAIL:
+                return "EMAIL";
+            case Barcode.TYPE_ISBN:
+                return "ISBN";
+            case Barcode.TYPE_PHONE:
+                return "PHONE";
+            case Barcode.TYPE_PRODUCT:
+                return "PRODUCT";
+            case Barcode.TYPE_SMS:
+                return "SMS";
+            case Barcode.TYPE_TEXT:
+                return "TEXT";
+            case Barcode.TYPE_URL:
+                return "URL";
+            case Barcode.TYPE_WIFI:
+                return "WIFI";
+            case Barcode.TYPE_GEO:
+                return "GEO";
+            case Barcode.TYPE_CALENDAR_EVENT:
+                return "CALENDAR_EVENT";
+            case Barcode.TYPE_DRIVER_LICENSE:
+                return "DRIVER_LICENSE";
+            default:
+                return "UNKNOWN";
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of recently detected codes to suppress duplicate detections.
+ *
+ * A code is a duplicate while it has been seen within the time window. Each sighting
+ * extends the window, so a code staying in the detection area is reported only once.
+ * Expired entries are evicted on access, and the least recently seen entry is evicted
+ * when the capacity is exceeded.
+ */
+public class DetectionCache {
+
+    private final long window;
+    private final LinkedHashMap<String, Long> entries;
+
+    /**
+     * Constructor
+     *
+     * @param window   time window in milliseconds (0 or less disables the cache)
+     * @param capacity max number of codes to remember
+     */
+    public DetectionCache(long window, final int capacity) {
+        this.window = window;
+        this.entries = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > Math.max(1, capacity);
+            }
+        };
+    }
+
+    /**
+     * Get cache key of a code
+     *
+     * @param format   barcode format
+     * @param rawValue raw value of the code
+     * @return key
+     */
+    public static String getKey(int format, String rawValue) {
+        return format + ":" + rawValue;
+    }
+
+    /**
+     * @return true if duplicates are suppressed
+     */
+    public boolean isEnabled() {
+        return window > 0;
+    }
+
+    /**
+     * Record a sighting of a code
+     *
+     * @param key code key (see {@link #getKey(int, String)})
+     * @param now current time in milliseconds (monotonic)
+     * @return true if the code is new (not seen within the window)
+     */
+    public synchronized boolean add(String key, long now) {
+        if (!isEnabled()) {
+            return true;
+        }
+        evictExpired(now);
+        Long lastSeen = entries.put(key, now);
+        return lastSeen == null;
+    }
+
+    /**
+     * Forget all codes
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private void evictExpired(long now) {
+        // アクセス順なので古いものから順に並んでいる
+        Iterator<Long> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next() < window) {
+                break;
+            }
+            iterator.remove();
+        }
+    }
+}
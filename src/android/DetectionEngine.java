@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import java.util.List;
+
+/**
+ * Barcode detection engine called by the analyzer.
+ *
+ * Engines receive a frame of the detection area (NV21 whose first width x height bytes
+ * are the luma plane, or a bitmap) and report the detected codes in full frame coordinates.
+ * The callbacks follow the MLKit task listeners: either onSuccess or onFailure is called,
+ * and then onComplete is called once the engine no longer uses the frame data.
+ * {@link RaceEngine} may call onComplete before the result, when only its slower engine is running.
+ */
+public interface DetectionEngine {
+
+    String ENGINE_MLKIT = "mlkit";
+    String ENGINE_ZXING = "zxing";
+    String ENGINE_RACE = "race";
+
+    /**
+     * Callback of a detection (called on the callback executor)
+     */
+    interface Callback {
+        /**
+         * Called before onSuccess with the codes located in the frame, decoded or not
+         * (nothing by default)
+         *
+         * @param candidates located codes in full frame coordinates (empty if nothing is located)
+         */
+        default void onCandidates(List<CodeCandidate> candidates) {
+        }
+
+        /**
+         * @param codes detected codes in full frame coordinates (empty if nothing is detected)
+         */
+        void onSuccess(List<DetectedCode> codes);
+
+        /**
+         * @param e error
+         */
+        void onFailure(Exception e);
+
+        /**
+         * Called when the frame data can be released (after onSuccess or onFailure except for RaceEngine)
+         */
+        void onComplete();
+    }
+
+    /**
+     * Detect barcodes in a frame (asynchronous)
+     *
+     * @param frame    frame of the detection area
+     * @param callback callback
+     */
+    void detect(DetectionFrame frame, Callback callback);
+
+    /**
+     * Release the engine
+     */
+    void close();
+}
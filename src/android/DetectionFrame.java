@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+/**
+ * Frame of the detection area passed to a {@link DetectionEngine}
+ *
+ * Either an NV21 buffer in sensor orientation with its rotation, or an upright bitmap.
+ * Frames for engines reading only the luma (ZXing) may carry the luma plane alone.
+ */
+public final class DetectionFrame {
+
+    /** NV21 buffer, or luma plane only */
+    private final byte[] buffer;
+    private final boolean lumaOnly;
+    private final Bitmap bitmap;
+    private final int width;
+    private final int height;
+    private final int rotationDegrees;
+    private final Rect frameCrop;
+
+    private DetectionFrame(byte[] buffer, boolean lumaOnly, Bitmap bitmap, int width, int height,
+                           int rotationDegrees, Rect frameCrop) {
+        this.buffer = buffer;
+        this.lumaOnly = lumaOnly;
+        this.bitmap = bitmap;
+        this.width = width;
+        this.height = height;
+        this.rotationDegrees = rotationDegrees;
+        this.frameCrop = frameCrop;
+    }
+
+    /**
+     * Create from NV21 buffer
+     *
+     * @param nv21            NV21 buffer (the first width x height bytes are the luma plane)
+     * @param width           width of the buffer (sensor orientation)
+     * @param height          height of the buffer (sensor orientation)
+     * @param rotationDegrees clockwise rotation to make the buffer upright
+     * @param frameCrop       area of the buffer in the full frame (upright)
+     * @return frame
+     */
+    public static DetectionFrame fromNV21(byte[] nv21, int width, int height, int rotationDegrees, Rect frameCrop) {
+        return new DetectionFrame(nv21, false, null, width, height, rotationDegrees, frameCrop);
+    }
+
+    /**
+     * Create from the luma plane only (for engines which do not read the chroma)
+     *
+     * @param luma            luma plane (width x height bytes)
+     * @param width           width of the buffer (sensor orientation)
+     * @param height          height of the buffer (sensor orientation)
+     * @param rotationDegrees clockwise rotation to make the buffer upright
+     * @param frameCrop       area of the buffer in the full frame (upright)
+     * @return frame
+     */
+    public static DetectionFrame fromLuma(byte[] luma, int width, int height, int rotationDegrees, Rect frameCrop) {
+        return new DetectionFrame(luma, true, null, width, height, rotationDegrees, frameCrop);
+    }
+
+    /**
+     * Create from upright bitmap
+     *
+     * @param bitmap    bitmap of the detection area
+     * @param frameCrop area of the bitmap in the full frame (upright)
+     * @return frame
+     */
+    public static DetectionFrame fromBitmap(Bitmap bitmap, Rect frameCrop) {
+        return new DetectionFrame(null, false, bitmap, bitmap.getWidth(), bitmap.getHeight(), 0, frameCrop);
+    }
+
+    /**
+     * Copy the frame so that it can be used after the original buffer is released
+     *
+     * @return frame on a copy of the buffer drawn from FrameBufferPool (returned by the caller),
+     *         or this frame if it is a bitmap (bitmaps are not reused by the analyzer)
+     */
+    public DetectionFrame copy() {
+        if (buffer == null) {
+            return this;
+        }
+        byte[] copied = FrameBufferPool.acquire(buffer.length);
+        System.arraycopy(buffer, 0, copied, 0, buffer.length);
+        return new DetectionFrame(copied, lumaOnly, null, width, height, rotationDegrees, frameCrop);
+    }
+
+    /**
+     * @return NV21 buffer, or null if the frame is a bitmap or the luma plane only
+     */
+    public byte[] getNV21() {
+        return lumaOnly ? null : buffer;
+    }
+
+    /**
+     * @return buffer starting with the luma plane (NV21 or luma only), or null if the frame is a bitmap
+     */
+    public byte[] getLuma() {
+        return buffer;
+    }
+
+    /**
+     * @return bitmap, or null if the frame is an NV21 buffer
+     */
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    /**
+     * @return area of the frame in the full frame (upright)
+     */
+    public Rect getFrameCrop() {
+        return frameCrop;
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import android.annotation.SuppressLint;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CaptureRequest;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+
+import androidx.camera.camera2.interop.Camera2CameraControl;
+import androidx.camera.camera2.interop.Camera2CameraInfo;
+import androidx.camera.camera2.interop.CaptureRequestOptions;
+import androidx.camera.core.Camera;
+import androidx.camera.core.FocusMeteringAction;
+import androidx.camera.core.FocusMeteringResult;
+import androidx.camera.core.MeteringPoint;
+import androidx.camera.core.MeteringPointFactory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Focus and exposure metering on the detection area.
+ *
+ * By default the camera meters the whole scene, and on glossy labels autofocus hunts on
+ * the background. The metering region is set to the detection area, and re-triggered
+ * periodically and when the sharpness of the analyzed frames (measured by
+ * {@link FrameQualityGate}) drops well below its recent peak.
+ * Optionally the focus is pinned at a fixed distance for a known working range.
+ * The periodic trigger is paused while codes are detected, so that the focus is not
+ * moved off a code being read, and resumes once nothing has been detected for the interval.
+ *
+ * start / stop are called on the main thread, onSharpness on the analysis thread.
+ */
+public class FocusController {
+
+    private static final String TAG = "FocusController";
+
+    /** Sharpness below this ratio of the recent peak is regarded as a drop */
+    private static final double DROP_RATIO = 0.5;
+    /** Decay of the peak sharpness per frame */
+    private static final double PEAK_DECAY = 0.98;
+    /** Number of consecutive dropped frames to re-trigger */
+    private static final int DROP_FRAMES = 5;
+    /** Min interval between triggers by the sharpness (ms) */
+    private static final long MIN_TRIGGER_INTERVAL = 1000;
+
+    private final boolean enabled;
+    private final long interval;
+    private final int distance;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable periodicRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // 検出が続いている間は合わせ直さず、検出が途絶えてから間隔をあけて再開する
+            long idle = SystemClock.elapsedRealtime() - lastDetectionTime;
+            if (idle >= interval) {
+                trigger();
+                handler.postDelayed(this, interval);
+            } else {
+                handler.postDelayed(this, interval - idle);
+            }
+        }
+    };
+
+    private Camera camera;
+    private MeteringPoint meteringPoint;
+    private volatile boolean pinned = false;
+    /** Time of the last detection (SystemClock.elapsedRealtime) */
+    private volatile long lastDetectionTime = 0;
+
+    /** Peak sharpness (analysis thread) */
+    private double peakScore = 0;
+    private int droppedFrames = 0;
+    private volatile long lastTriggerTime = 0;
+    private volatile int triggers = 0;
+    private volatile int sharpnessTriggers = 0;
+    private volatile int focused = 0;
+
+    /**
+     * Constructor
+     *
+     * @param enabled  true to meter on the detection area
+     * @param interval interval to re-trigger the metering (ms, 0: only on sharpness drop)
+     * @param distance distance to pin the focus (cm, 0: autofocus)
+     */
+    public FocusController(boolean enabled, int interval, int distance) {
+        this.enabled = enabled;
+        this.interval = Math.max(0, interval);
+        this.distance = Math.max(0, distance);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start metering on the detection area (main thread, after layout)
+     *
+     * @param camera        bound camera
+     * @param factory       metering point factory of the preview view
+     * @param previewView   preview view
+     * @param detectionArea detection area view on the preview
+     */
+    public void start(Camera camera, MeteringPointFactory factory, View previewView, View detectionArea) {
+        if (!enabled || camera == null || previewView.getWidth() == 0 || previewView.getHeight() == 0) {
+            return;
+        }
+        this.camera = camera;
+
+        // 検出範囲の中心と大きさ (プレビューに対する比率) で計測点を作成する
+        int[] previewLocation = new int[2];
+        int[] areaLocation = new int[2];
+        previewView.getLocationInWindow(previewLocation);
+        detectionArea.getLocationInWindow(areaLocation);
+        float x = areaLocation[0] - previewLocation[0] + detectionArea.getWidth() / 2f;
+        float y = areaLocation[1] - previewLocation[1] + detectionArea.getHeight() / 2f;
+        float size = Math.max((float) detectionArea.getWidth() / previewView.getWidth(),
+                (float) detectionArea.getHeight() / previewView.getHeight());
+        meteringPoint = factory.createPoint(x, y, Math.max(0.05f, Math.min(1f, size)));
+
+        if (distance > 0) {
+            pinned = pinFocus(distance);
+        }
+        handler.removeCallbacks(periodicRunnable);
+        if (interval > 0) {
+            lastDetectionTime = 0;
+            periodicRunnable.run();
+        } else {
+            trigger();
+        }
+    }
+
+    /**
+     * Stop metering and restore the camera defaults (main thread)
+     *
+     * @param ownsCamera false if the camera is already used by another scan (not restored)
+     */
+    @SuppressLint("UnsafeOptInUsageError")
+    public void stop(boolean ownsCamera) {
+        handler.removeCallbacksAndMessages(null);
+        if (camera == null || !ownsCamera) {
+            camera = null;
+            return;
+        }
+        // セッションでカメラが再利用されるので元に戻しておく
+        camera.getCameraControl().cancelFocusAndMetering();
+        if (pinned) {
+            Camera2CameraControl.from(camera.getCameraControl()).clearCaptureRequestOptions();
+            pinned = false;
+        }
+        camera = null;
+    }
+
+    /**
+     * Notify that a code is detected, and pause the periodic trigger (analysis thread)
+     */
+    public void onDetected() {
+        lastDetectionTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Notify the sharpness of an analyzed frame (analysis thread)
+     *
+     * @param score sharpness score (FrameQualityGate)
+     */
+    public void onSharpness(double score) {
+        if (!enabled || pinned || score <= 0) {
+            return;
+        }
+        peakScore = Math.max(score, peakScore * PEAK_DECAY);
+        if (score < peakScore * DROP_RATIO) {
+            droppedFrames ++;
+        } else {
+            droppedFrames = 0;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (droppedFrames >= DROP_FRAMES && now - lastTriggerTime >= MIN_TRIGGER_INTERVAL) {
+            // ピントが外れた (対象が変わった) ので計測し直す
+            droppedFrames = 0;
+            peakScore = score;
+            lastTriggerTime = now;
+            sharpnessTriggers ++;
+            handler.post(this::trigger);
+        }
+    }
+
+    /**
+     * Start focus and metering on the detection area (main thread)
+     */
+    private void trigger() {
+        if (camera == null || meteringPoint == null) {
+            return;
+        }
+        int flags = pinned ? FocusMeteringAction.FLAG_AE
+                : FocusMeteringAction.FLAG_AF | FocusMeteringAction.FLAG_AE;
+        // 次のトリガーまで検出範囲での計測を維持する
+        FocusMeteringAction action = new FocusMeteringAction.Builder(meteringPoint, flags)
+                .disableAutoCancel()
+                .build();
+        lastTriggerTime = SystemClock.elapsedRealtime();
+        triggers ++;
+        ListenableFuture<FocusMeteringResult> future = camera.getCameraControl().startFocusAndMetering(action);
+        future.addListener(() -> {
+            try {
+                if (future.get().isFocusSuccessful()) {
+                    focused ++;
+                }
+            } catch (ExecutionException e) {
+                // 次のトリガーで取り消された場合など
+                Log.d(TAG, "Focus and metering not completed: " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, handler::post);
+    }
+
+    /**
+     * Pin the focus at a distance (manual focus)
+     *
+     * @param distance distance in cm
+     * @return true if pinned, false if the camera does not support manual focus
+     */
+    @SuppressLint("UnsafeOptInUsageError")
+    private boolean pinFocus(int distance) {
+        Camera2CameraInfo info = Camera2CameraInfo.from(camera.getCameraInfo());
+        Float minFocusDistance = info.getCameraCharacteristic(CameraCharacteristics.LENS_INFO_MINIMUM_FOCUS_DISTANCE);
+        int[] capabilities = info.getCameraCharacteristic(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES);
+        boolean manualSensor = false;
+        if (capabilities != null) {
+            for (int capability : capabilities) {
+                if (capability == CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_MANUAL_SENSOR) {
+                    manualSensor = true;
+                }
+            }
+        }
+        if (minFocusDistance == null || minFocusDistance <= 0 || !manualSensor) {
+            Log.d(TAG, "Manual focus is not supported");
+            return false;
+        }
+        // 焦点距離はディオプター (1/m) で指定する (最短撮影距離より近くはできない)
+        float diopters = Math.min(minFocusDistance, 100f / distance);
+        CaptureRequestOptions options = new CaptureRequestOptions.Builder()
+                .setCaptureRequestOption(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_OFF)
+                .setCaptureRequestOption(CaptureRequest.LENS_FOCUS_DISTANCE, diopters)
+                .build();
+        Camera2CameraControl.from(camera.getCameraControl()).setCaptureRequestOptions(options);
+        return true;
+    }
+
+    /**
+     * Convert to JSON
+     *
+     * @return {enabled, triggers, sharpnessTriggers, focused, pinned}
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("enabled", enabled);
+            json.put("triggers", triggers);
+            json.put("sharpnessTriggers", sharpnessTriggers);
+            json.put("focused", focused);
+            json.put("pinned", pinned);
+        } catch (JSONException e) {
+            // never happens (all values are finite)
+        }
+        return json;
+    }
+}
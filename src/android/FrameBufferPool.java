@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pool of frame buffers reused by the image conversion.
+ *
+ * Buffers are keyed by their exact size, so as long as the analysis resolution
+ * does not change, every frame is converted into a buffer of a previous frame
+ * and no garbage is produced.
+ */
+public class FrameBufferPool {
+
+    /** Number of buffers kept for each size */
+    private static final int MAX_BUFFERS_PER_SIZE = 4;
+    /** Number of output streams kept */
+    private static final int MAX_STREAMS = 2;
+
+    private static final Map<Integer, ArrayDeque<byte[]>> buffers = new HashMap<>();
+    private static final ArrayDeque<ReusableOutputStream> streams = new ArrayDeque<>();
+    private static long allocationCount = 0;
+
+    /**
+     * Get a buffer of specified size.
+     *
+     * @param size buffer size
+     * @return pooled buffer, or newly allocated buffer if the pool is empty
+     */
+    public static synchronized byte[] acquire(int size) {
+        ArrayDeque<byte[]> queue = buffers.get(size);
+        if (queue != null && !queue.isEmpty()) {
+            return queue.pollFirst();
+        }
+        allocationCount ++;
+        return new byte[size];
+    }
+
+    /**
+     * Return a buffer to the pool.
+     *
+     * @param buffer buffer acquired by {@link #acquire(int)} (null is ignored)
+     */
+    public static synchronized void release(byte[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+        ArrayDeque<byte[]> queue = buffers.get(buffer.length);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            buffers.put(buffer.length, queue);
+        }
+        if (queue.size() < MAX_BUFFERS_PER_SIZE) {
+            queue.addFirst(buffer);
+        }
+    }
+
+    /**
+     * Get an empty output stream whose internal buffer is reused.
+     *
+     * @return output stream
+     */
+    public static synchronized ReusableOutputStream acquireStream() {
+        ReusableOutputStream stream = streams.pollFirst();
+        if (stream == null) {
+            allocationCount ++;
+            stream = new ReusableOutputStream();
+        }
+        stream.reset();
+        return stream;
+    }
+
+    /**
+     * Return an output stream to the pool.
+     *
+     * @param stream output stream acquired by {@link #acquireStream()} (null is ignored)
+     */
+    public static synchronized void releaseStream(ReusableOutputStream stream) {
+        if (stream != null && streams.size() < MAX_STREAMS) {
+            streams.addFirst(stream);
+        }
+    }
+
+    /**
+     * Release all pooled buffers.
+     */
+    public static synchronized void clear() {
+        buffers.clear();
+        streams.clear();
+    }
+
+    /**
+     * Get the number of buffers allocated because the pool was empty.
+     *
+     * In steady state this value does not increase.
+     *
+     * @return allocation count
+     */
+    public static synchronized long getAllocationCount() {
+        return allocationCount;
+    }
+
+    /**
+     * ByteArrayOutputStream which exposes its internal buffer to avoid copying by toByteArray().
+     */
+    public static class ReusableOutputStream extends ByteArrayOutputStream {
+        ReusableOutputStream() {
+            super(64 * 1024);
+        }
+
+        /**
+         * Get the internal buffer. Only first size() bytes are valid.
+         *
+         * @return internal buffer
+         */
+        public byte[] getBuffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import android.graphics.Rect;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Detector of unchanged frames.
+ *
+ * A tiny fingerprint (16x16 grid of average luma) of the detection area is compared
+ * with the fingerprint of the last frame which was analyzed and returned nothing.
+ * While the camera points at the same empty scene, conversion and detection are skipped,
+ * except for a periodic forced refresh.
+ */
+public class FrameChangeDetector {
+
+    /** Number of cells per axis */
+    static final int GRID_SIZE = 16;
+    /** Max number of sampled points per cell and axis */
+    private static final int CELL_SAMPLES = 4;
+
+    private final boolean enabled;
+    private final int threshold;
+    private final long refreshInterval;
+
+    /** Fingerprint of the last analyzed empty frame (null if none) */
+    private int[] reference;
+    private long lastAnalyzedTime = 0;
+    private volatile long framesUnchanged = 0;
+    private volatile double lastDifference = 0;
+
+    /**
+     * Constructor
+     *
+     * @param enabled         true to skip unchanged frames
+     * @param threshold       mean luma difference per cell (0 - 255) below which the frame is unchanged
+     * @param refreshInterval interval to analyze a frame even if unchanged (ms)
+     */
+    public FrameChangeDetector(boolean enabled, int threshold, int refreshInterval) {
+        this.enabled = enabled;
+        this.threshold = Math.max(0, threshold);
+        this.refreshInterval = Math.max(0, refreshInterval);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Check if a frame should be analyzed (analysis thread)
+     *
+     * @param fingerprint fingerprint of the frame
+     * @param now         current time (SystemClock.elapsedRealtime())
+     * @return true to analyze, false if the frame is unchanged from the last empty frame
+     */
+    public boolean shouldAnalyze(int[] fingerprint, long now) {
+        if (!enabled || reference == null) {
+            return true;
+        }
+        lastDifference = getDifference(reference, fingerprint);
+        // 変化がなくても一定間隔で強制的に検出する
+        if (lastDifference >= threshold || now - lastAnalyzedTime >= refreshInterval) {
+            return true;
+        }
+        framesUnchanged ++;
+        return false;
+    }
+
+    /**
+     * Record the detection result of an analyzed frame (analysis thread)
+     *
+     * @param fingerprint fingerprint of the analyzed frame
+     * @param empty       true if nothing was detected
+     * @param now         current time (SystemClock.elapsedRealtime())
+     */
+    public void onAnalyzed(int[] fingerprint, boolean empty, long now) {
+        lastAnalyzedTime = now;
+        // 検出された場合は次のフレームも必ず解析する
+        reference = empty ? fingerprint : null;
+    }
+
+    /**
+     * Compute the fingerprint of the luma plane
+     *
+     * @param plane       luma plane buffer
+     * @param rowStride   row stride of the plane
+     * @param pixelStride pixel stride of the plane
+     * @param crop        area to compute
+     * @return average luma of GRID_SIZE x GRID_SIZE cells (row major)
+     */
+    static int[] computeFingerprint(ByteBuffer plane, int rowStride, int pixelStride, Rect crop) {
+        int[] fingerprint = new int[GRID_SIZE * GRID_SIZE];
+        int limit = plane.limit();
+        for (int cellY = 0; cellY < GRID_SIZE; cellY ++) {
+            int top = crop.top + crop.height() * cellY / GRID_SIZE;
+            int bottom = crop.top + crop.height() * (cellY + 1) / GRID_SIZE;
+            int stepY = Math.max(1, (bottom - top) / CELL_SAMPLES);
+            for (int cellX = 0; cellX < GRID_SIZE; cellX ++) {
+                int left = crop.left + crop.width() * cellX / GRID_SIZE;
+                int right = crop.left + crop.width() * (cellX + 1) / GRID_SIZE;
+                int stepX = Math.max(1, (right - left) / CELL_SAMPLES);
+                int sum = 0;
+                int count = 0;
+                for (int y = top; y < bottom; y += stepY) {
+                    for (int x = left; x < right; x += stepX) {
+                        int index = y * rowStride + x * pixelStride;
+                        if (index < limit) {
+                            sum += plane.get(index) & 0xff;
+                            count ++;
+                        }
+                    }
+                }
+                fingerprint[cellY * GRID_SIZE + cellX] = count > 0 ? sum / count : 0;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Mean absolute difference of two fingerprints
+     *
+     * The difference of the overall brightness is removed, so auto exposure adjustments
+     * are not regarded as a change.
+     *
+     * @return mean difference per cell (0 - 255)
+     */
+    static double getDifference(int[] a, int[] b) {
+        long sumA = 0;
+        long sumB = 0;
+        for (int i = 0; i < a.length; i ++) {
+            sumA += a[i];
+            sumB += b[i];
+        }
+        double offset = (double) (sumB - sumA) / a.length;
+        double difference = 0;
+        for (int i = 0; i < a.length; i ++) {
+            difference += Math.abs(b[i] - a[i] - offset);
+        }
+        return difference / a.length;
+    }
+
+    /**
+     * Convert to JSON
+     *
+     * @return {enabled, framesUnchanged, lastDifference}
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("enabled", enabled);
+            json.put("framesUnchanged", framesUnchanged);
+            json.put("lastDifference", lastDifference);
+        } catch (JSONException e) {
+            // never happens (all values are finite)
+        }
+        return json;
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import android.graphics.Rect;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sharpness gate of the analyzed frames.
+ *
+ * Frames blurred by hand motion or autofocus hunting never decode, so a cheap focus
+ * measure (variance of Laplacian on a subsampled grid of the luma plane) is computed
+ * inside the detection area before any conversion, and the frame is skipped when the
+ * score falls below a ratio of the recent peak score.
+ * The peak decays over time, so the threshold follows scene and lighting changes.
+ */
+public class FrameQualityGate {
+
+    /** Max number of sampled points per axis */
+    private static final int MAX_SAMPLES = 64;
+    /** Decay of the peak score per evaluated frame */
+    private static final double PEAK_DECAY = 0.95;
+    /** Max number of consecutive rejected frames (the next one is always analyzed) */
+    private static final int MAX_CONSECUTIVE_REJECTS = 10;
+
+    private final boolean enabled;
+    private final double thresholdRatio;
+    private final double minScore;
+
+    /** Score distribution (recorded as integer) */
+    private final LatencyHistogram scores = new LatencyHistogram();
+    private double peakScore = 0;
+    private volatile double lastScore = 0;
+    private volatile double threshold = 0;
+    private volatile long framesEvaluated = 0;
+    private volatile long framesRejected = 0;
+    private int consecutiveRejects = 0;
+
+    /**
+     * Constructor
+     *
+     * @param enabled          true to skip blurred frames (false to record the scores only)
+     * @param thresholdPercent threshold in percent of the recent peak score
+     * @param minScore         frames below this score are always skipped (0: no absolute threshold)
+     */
+    public FrameQualityGate(boolean enabled, int thresholdPercent, int minScore) {
+        this.enabled = enabled;
+        this.thresholdRatio = Math.max(0, Math.min(100, thresholdPercent)) / 100.0;
+        this.minScore = Math.max(0, minScore);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Evaluate the sharpness of a frame (analysis thread)
+     *
+     * @param plane       luma plane buffer
+     * @param rowStride   row stride of the plane
+     * @param pixelStride pixel stride of the plane
+     * @param crop        detection area in the plane
+     * @return true to analyze the frame, false to skip
+     */
+    public boolean accept(ByteBuffer plane, int rowStride, int pixelStride, Rect crop) {
+        double score = measureSharpness(plane, rowStride, pixelStride, crop);
+        lastScore = score;
+        framesEvaluated ++;
+        scores.record(Math.round(score));
+
+        peakScore = Math.max(score, peakScore * PEAK_DECAY);
+        double currentThreshold = Math.max(minScore, peakScore * thresholdRatio);
+        threshold = currentThreshold;
+        if (!enabled) {
+            // 無効時も閾値調整のためにスコアだけ記録する
+            return true;
+        }
+        // 閾値未満でも連続して捨て続けないよう一定間隔で検出に回す
+        if (score >= currentThreshold || consecutiveRejects >= MAX_CONSECUTIVE_REJECTS) {
+            consecutiveRejects = 0;
+            return true;
+        }
+        consecutiveRejects ++;
+        framesRejected ++;
+        return false;
+    }
+
+    /**
+     * @return sharpness score of the last evaluated frame
+     */
+    public double getLastScore() {
+        return lastScore;
+    }
+
+    /**
+     * Measure the sharpness of the luma plane
+     *
+     * Variance of the 4-neighbor Laplacian sampled on a grid of at most MAX_SAMPLES x MAX_SAMPLES
+     * points. The neighbors are adjacent pixels, so the score responds to fine detail
+     * (bar edges) regardless of the sampling step.
+     *
+     * @param plane       luma plane buffer
+     * @param rowStride   row stride of the plane
+     * @param pixelStride pixel stride of the plane
+     * @param crop        area to measure
+     * @return variance of Laplacian (0 if the area is too small)
+     */
+    static double measureSharpness(ByteBuffer plane, int rowStride, int pixelStride, Rect crop) {
+        int left = crop.left + 1;
+        int top = crop.top + 1;
+        int width = crop.width() - 2;
+        int height = crop.height() - 2;
+        if (width <= 0 || height <= 0) {
+            return 0;
+        }
+        int stepX = Math.max(1, width / MAX_SAMPLES);
+        int stepY = Math.max(1, height / MAX_SAMPLES);
+        int limit = plane.limit();
+        long count = 0;
+        long sum = 0;
+        long sumSquares = 0;
+        for (int y = top; y < top + height; y += stepY) {
+            int rowOffset = y * rowStride;
+            for (int x = left; x < left + width; x += stepX) {
+                int index = rowOffset + x * pixelStride;
+                if (index + rowStride >= limit) {
+                    break;
+                }
+                int center = plane.get(index) & 0xff;
+                int laplacian = 4 * center
+                        - (plane.get(index - pixelStride) & 0xff)
+                        - (plane.get(index + pixelStride) & 0xff)
+                        - (plane.get(index - rowStride) & 0xff)
+                        - (plane.get(index + rowStride) & 0xff);
+                sum += laplacian;
+                sumSquares += (long) laplacian * laplacian;
+                count ++;
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        double mean = (double) sum / count;
+        return Math.max(0, (double) sumSquares / count - mean * mean);
+    }
+
+    /**
+     * Convert to JSON
+     *
+     * @return {enabled, framesEvaluated, framesRejected, threshold, lastScore, score{mean, p10, p50, p90}}
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("enabled", enabled);
+            json.put("framesEvaluated", framesEvaluated);
+            json.put("framesRejected", framesRejected);
+            json.put("threshold", threshold);
+            json.put("lastScore", lastScore);
+            JSONObject score = new JSONObject();
+            score.put("mean", scores.getMean());
+            score.put("p10", scores.getPercentile(10));
+            score.put("p50", scores.getPercentile(50));
+            score.put("p90", scores.getPercentile(90));
+            json.put("score", score);
+        } catch (JSONException e) {
+            // never happens (all values are finite)
+        }
+        return json;
+    }
+}
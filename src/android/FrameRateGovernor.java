@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * Governor of the analysis frame rate.
+ *
+ * Chooses a target analysis rate from the power profile, the recent detection latency
+ * (balanced and saver profiles only) and the CPU usage of the process. The rate is lowered while nothing is in view and
+ * ramped back up to the max rate as soon as a code is detected.
+ * Frames arriving faster than the target rate are skipped before any conversion.
+ */
+public class FrameRateGovernor {
+
+    public static final String PROFILE_PERFORMANCE = "performance";
+    public static final String PROFILE_BALANCED = "balanced";
+    public static final String PROFILE_SAVER = "saver";
+
+    /** Period to keep the max rate after a code is detected (ms) */
+    private static final long CANDIDATE_HOLD_TIME = 2000;
+    /** Interval to sample the CPU usage (ms) */
+    private static final long CPU_SAMPLE_INTERVAL = 500;
+    /** CPU usage (ratio of all cores) above which the rate is halved */
+    private static final double CPU_BUSY_THRESHOLD = 0.8;
+    /** Smoothing factor of the detection latency */
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    private final float maxFps;
+    private final float idleFps;
+    /** Limit the rate to the detection latency (not in the performance profile) */
+    private final boolean latencyLimited;
+    private final int cpuCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private long lastAnalyzedTimestamp = 0;
+    private volatile long lastCandidateTime = 0;
+    private volatile double detectionLatency = 0;
+    private double cpuUsage = 0;
+    private long lastCpuSampleTime = 0;
+    private long lastCpuTime = 0;
+
+    /**
+     * Constructor
+     *
+     * @param profile power profile (PROFILE_XXXX)
+     * @param maxFps  max analysis rate (0 to use the default of the profile)
+     */
+    public FrameRateGovernor(String profile, float maxFps) {
+        float defaultMaxFps;
+        float defaultIdleFps;
+        latencyLimited = PROFILE_SAVER.equals(profile) || PROFILE_BALANCED.equals(profile);
+        if (PROFILE_SAVER.equals(profile)) {
+            defaultMaxFps = 10;
+            defaultIdleFps = 2;
+        } else if (PROFILE_BALANCED.equals(profile)) {
+            defaultMaxFps = 15;
+            defaultIdleFps = 5;
+        } else {
+            // performance: no limit
+            defaultMaxFps = 0;
+            defaultIdleFps = 0;
+        }
+        this.maxFps = maxFps > 0 ? maxFps : defaultMaxFps;
+        this.idleFps = defaultIdleFps > 0 ? Math.min(defaultIdleFps, this.maxFps) : this.maxFps;
+    }
+
+    /**
+     * Decide whether a frame should be analyzed (analysis thread)
+     *
+     * @param timestamp sensor timestamp of the frame (ns)
+     * @return true to analyze, false to skip
+     */
+    public boolean shouldAnalyze(long timestamp) {
+        float targetFps = getTargetFps();
+        if (targetFps > 0 && lastAnalyzedTimestamp > 0) {
+            long interval = timestamp - lastAnalyzedTimestamp;
+            // 1割のゆらぎは許容する
+            if (interval >= 0 && interval < 900_000_000L / targetFps) {
+                return false;
+            }
+        }
+        lastAnalyzedTimestamp = timestamp;
+        return true;
+    }
+
+    /**
+     * Get the current target analysis rate
+     *
+     * @return frames per second (0: no limit)
+     */
+    public float getTargetFps() {
+        long now = SystemClock.elapsedRealtime();
+        sampleCpuUsage(now);
+        return getTargetFps(now, cpuUsage);
+    }
+
+    /**
+     * Get the target analysis rate at the time
+     *
+     * @param now      SystemClock.elapsedRealtime()
+     * @param cpuUsage CPU usage (ratio of all cores)
+     * @return frames per second (0: no limit)
+     */
+    float getTargetFps(long now, double cpuUsage) {
+        boolean hasCandidate = lastCandidateTime > 0 && now - lastCandidateTime < CANDIDATE_HOLD_TIME;
+        float fps = hasCandidate ? maxFps : idleFps;
+        if (hasCandidate) {
+            // 検出中は最大レートで解析する
+            return fps;
+        }
+        if (latencyLimited && detectionLatency > 0) {
+            // 検出処理が追いつかないレートは無駄になる
+            float latencyFps = (float) (1000.0 / detectionLatency);
+            fps = fps > 0 ? Math.min(fps, latencyFps) : latencyFps;
+        }
+        if (cpuUsage > CPU_BUSY_THRESHOLD && fps > 0) {
+            fps = Math.max(1, fps / 2);
+        }
+        return fps;
+    }
+
+    /**
+     * Record the latency of a detection
+     *
+     * @param latencyMillis
+     */
+    public void onDetectionLatency(double latencyMillis) {
+        double current = detectionLatency;
+        detectionLatency = current == 0
+                ? latencyMillis
+                : current + (latencyMillis - current) * LATENCY_SMOOTHING;
+    }
+
+    /**
+     * Notify that a code candidate is in view (ramp up to the max rate)
+     */
+    public void onCandidate() {
+        onCandidate(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Notify that a code candidate is in view at the time
+     *
+     * @param now SystemClock.elapsedRealtime()
+     */
+    void onCandidate(long now) {
+        lastCandidateTime = now;
+    }
+
+    private void sampleCpuUsage(long now) {
+        if (now - lastCpuSampleTime < CPU_SAMPLE_INTERVAL) {
+            return;
+        }
+        long cpuTime = Process.getElapsedCpuTime();
+        if (lastCpuSampleTime > 0) {
+            cpuUsage = (double) (cpuTime - lastCpuTime) / ((now - lastCpuSampleTime) * cpuCount);
+        }
+        lastCpuTime = cpuTime;
+        lastCpuSampleTime = now;
+    }
+}
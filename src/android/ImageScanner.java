@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.mlkit.vision.common.InputImage;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Barcode detection on still images (photos and documents).
+ *
+ * The image is decoded no larger than the max pixels, and the EXIF rotation is passed
+ * to the detector instead of rotating the pixels. Detected coordinates are mapped back
+ * to the full size upright image.
+ *
+ * Detection blocks the calling thread, so it must not be called on the main thread.
+ */
+public class ImageScanner {
+
+    public static final String IMAGE_LOAD_ERROR = "failed to load image";
+    public static final String DETECTION_ERROR = "detection failed";
+
+    /** Default max pixels of the decoded bitmap (16MB in ARGB_8888) */
+    public static final int DEFAULT_MAX_PIXELS = 4_000_000;
+    /** Upper limit of the max pixels whatever the option says (64MB in ARGB_8888) */
+    public static final int MAX_PIXELS_LIMIT = 16_000_000;
+
+    /**
+     * Limit the max pixels option
+     *
+     * @param maxPixels max pixels option (0 or less: no preference)
+     * @return max pixels within MAX_PIXELS_LIMIT
+     */
+    public static int limitMaxPixels(int maxPixels) {
+        return maxPixels > 0 ? Math.min(maxPixels, MAX_PIXELS_LIMIT) : MAX_PIXELS_LIMIT;
+    }
+
+    /**
+     * Parse an image URI (content://, file:// or file path)
+     *
+     * @param value URI string
+     * @return uri
+     */
+    public static Uri parseUri(String value) {
+        Uri uri = Uri.parse(value);
+        if (uri.getScheme() == null) {
+            return Uri.fromFile(new File(value));
+        }
+        return uri;
+    }
+
+    /**
+     * Detect barcodes in an image
+     *
+     * @param resolver  content resolver
+     * @param uri       image URI
+     * @param formats   formats to detect (Barcode.FORMAT_XXXX)
+     * @param maxPixels max pixels of the decoded bitmap
+     * @return result, or null if the image cannot be decoded
+     * @throws IOException          if the image cannot be read
+     * @throws ExecutionException   if the detection fails
+     * @throws InterruptedException if interrupted while detecting
+     */
+    public static Result scan(ContentResolver resolver, Uri uri, int[] formats, int maxPixels)
+            throws IOException, ExecutionException, InterruptedException {
+        return scan(resolver, uri, formats, maxPixels, null);
+    }
+
+    /**
+     * Detect barcodes in an image, optionally by tiles
+     *
+     * @param resolver  content resolver
+     * @param uri       image URI
+     * @param formats   formats to detect (Barcode.FORMAT_XXXX)
+     * @param maxPixels max pixels of the decoded bitmap (limited to MAX_PIXELS_LIMIT)
+     * @param tiling    tiling options (null: detect the whole image at once)
+     * @return result, or null if the image cannot be decoded
+     * @throws IOException          if the image cannot be read
+     * @throws ExecutionException   if the detection fails
+     * @throws InterruptedException if interrupted while detecting
+     */
+    public static Result scan(ContentResolver resolver, Uri uri, int[] formats, int maxPixels,
+                              TiledDetector.Options tiling)
+            throws IOException, ExecutionException, InterruptedException {
+        BarcodeScanner detector = ScannerWarmup.acquireDetector(formats);
+        try {
+            return scan(detector, formats, resolver, uri, maxPixels, tiling);
+        } finally {
+            ScannerWarmup.releaseDetector(detector);
+        }
+    }
+
+    /**
+     * Detect barcodes in an image with a detector
+     *
+     * @param detector  detector (not used by other threads during the detection)
+     * @param formats   formats of the detector (Barcode.FORMAT_XXXX)
+     * @param resolver  content resolver
+     * @param uri       image URI
+     * @param maxPixels max pixels of the decoded bitmap (limited to MAX_PIXELS_LIMIT)
+     * @param tiling    tiling options (null: detect the whole image at once)
+     * @return result, or null if the image cannot be decoded
+     * @throws IOException          if the image cannot be read
+     * @throws ExecutionException   if the detection fails
+     * @throws InterruptedException if interrupted while detecting
+     */
+    public static Result scan(BarcodeScanner detector, int[] formats, ContentResolver resolver, Uri uri,
+                              int maxPixels, TiledDetector.Options tiling)
+            throws IOException, ExecutionException, InterruptedException {
+        BitmapUtils.SampledBitmap sampled = BitmapUtils.getSampledBitmapFromContentUri(resolver, uri,
+                limitMaxPixels(maxPixels));
+        if (sampled == null) {
+            return null;
+        }
+        try {
+            if (tiling != null) {
+                List<DetectedCode> codes = TiledDetector.detect(detector, formats, sampled.getBitmap(),
+                        sampled.getRotationDegrees(), sampled.getSampleSize(), tiling);
+                return new Result(codes, sampled.getUprightWidth(), sampled.getUprightHeight(), sampled.getSampleSize());
+            }
+            InputImage image = InputImage.fromBitmap(sampled.getBitmap(), sampled.getRotationDegrees());
+            List<Barcode> barcodes = Tasks.await(detector.process(image));
+            List<DetectedCode> codes = new ArrayList<>();
+            for (Barcode barcode : barcodes) {
+                DetectedCode code = DetectedCode.fromBarcode(barcode, 0, 0, sampled.getSampleSize());
+                if (code != null) {
+                    codes.add(code);
+                }
+            }
+            return new Result(codes, sampled.getUprightWidth(), sampled.getUprightHeight(), sampled.getSampleSize());
+        } finally {
+            sampled.getBitmap().recycle();
+        }
+    }
+
+    /**
+     * Detection result of an image
+     */
+    public static final class Result {
+        private final List<DetectedCode> codes;
+        private final int width;
+        private final int height;
+        private final int sampleSize;
+
+        Result(List<DetectedCode> codes, int width, int height, int sampleSize) {
+            this.codes = codes;
+            this.width = width;
+            this.height = height;
+            this.sampleSize = sampleSize;
+        }
+
+        public List<DetectedCode> getCodes() {
+            return codes;
+        }
+
+        /**
+         * Convert to JSON
+         *
+         * @return {barcodes, width, height, sampleSize}
+         */
+        public JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            try {
+                JSONArray barcodes = new JSONArray();
+                for (DetectedCode code : codes) {
+                    barcodes.put(code.toJSON());
+                }
+                json.put("barcodes", barcodes);
+                json.put("width", width);
+                json.put("height", height);
+                json.put("sampleSize", sampleSize);
+            } catch (JSONException e) {
+                // never happens (all values are finite)
+            }
+            return json;
+        }
+    }
+}
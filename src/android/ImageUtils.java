@@ -10,7 +10,6 @@ import android.graphics.Rect;
 import android.graphics.YuvImage;
 import android.media.Image;
 
-import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 
 /**
@@ -19,27 +18,18 @@ import java.nio.ByteBuffer;
 public class ImageUtils {
 
     /**
-     * Trim image to specified size.
+     * Trim image to specified rectangle.
      *
      * @param image
-     * @param maxWidth
-     * @param maxHeight
+     * @param rect rectangle in the image
      * @return trimmed image
      */
-    public static Bitmap trim(Bitmap image, int maxWidth, int maxHeight) {
-        if (maxHeight > 0 && maxWidth > 0) {
-            int width = image.getWidth();
-            int height = image.getHeight();
-
-            int startX = (width - maxWidth) / 2;
-            int startY = (height - maxHeight) / 2;
-
-            Bitmap result = Bitmap.createBitmap(image, startX, startY, maxWidth, maxHeight, null, true);
-
-            return result;
-        } else {
+    public static Bitmap trim(Bitmap image, Rect rect) {
+        Rect clipped = new Rect(rect);
+        if (!clipped.intersect(0, 0, image.getWidth(), image.getHeight())) {
             return image;
         }
+        return Bitmap.createBitmap(image, clipped.left, clipped.top, clipped.width(), clipped.height(), null, true);
     }
 
     /**
@@ -49,36 +39,28 @@ public class ImageUtils {
      * @return Converted Bitmap
      */
     public static Bitmap imageToBitmap(Image image) {
-        byte[] data = imageToByteArray(image);
-        return BitmapFactory.decodeByteArray(data, 0, data.length);
-    }
-
-    /**
-     * Convert Image to JPEG byte array
-     *
-     * @param image
-     * @return
-     */
-    private static byte[] imageToByteArray(Image image) {
-        byte[] data = null;
+        Bitmap bitmap = null;
         if (image.getFormat() == ImageFormat.JPEG) {
-            Image.Plane[] planes = image.getPlanes();
-            ByteBuffer buffer = planes[0].getBuffer();
-            data = new byte[buffer.capacity()];
+            ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+            byte[] data = FrameBufferPool.acquire(buffer.capacity());
             buffer.get(data);
-            return data;
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
+            FrameBufferPool.release(data);
         } else if (image.getFormat() == ImageFormat.YUV_420_888) {
-            data = NV21toJPEG(YUV_420_888toNV21(image),
-                    image.getWidth(), image.getHeight());
+            byte[] nv21 = YUV_420_888toNV21(image);
+            FrameBufferPool.ReusableOutputStream out = NV21toJPEG(nv21, image.getWidth(), image.getHeight());
+            bitmap = BitmapFactory.decodeByteArray(out.getBuffer(), 0, out.size());
+            FrameBufferPool.releaseStream(out);
+            FrameBufferPool.release(nv21);
         }
-        return data;
+        return bitmap;
     }
 
     /**
      * Convert YUV420_888 Image to NV21 byte array
      *
      * @param image
-     * @return
+     * @return NV21 byte array (drawn from FrameBufferPool)
      */
     private static byte[] YUV_420_888toNV21(Image image) {
         byte[] nv21;
@@ -88,7 +70,7 @@ public class ImageUtils {
         int ySize = yBuffer.remaining();
         int uSize = uBuffer.remaining();
         int vSize = vBuffer.remaining();
-        nv21 = new byte[ySize + uSize + vSize];
+        nv21 = FrameBufferPool.acquire(ySize + uSize + vSize);
         yBuffer.get(nv21, 0, ySize);
         vBuffer.get(nv21, ySize, vSize);
         uBuffer.get(nv21, ySize + vSize, uSize);
@@ -101,12 +83,12 @@ public class ImageUtils {
      * @param nv21
      * @param width
      * @param height
-     * @return
+     * @return JPEG data stream (drawn from FrameBufferPool)
      */
-    private static byte[] NV21toJPEG(byte[] nv21, int width, int height) {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private static FrameBufferPool.ReusableOutputStream NV21toJPEG(byte[] nv21, int width, int height) {
+        FrameBufferPool.ReusableOutputStream out = FrameBufferPool.acquireStream();
         YuvImage yuv = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
         yuv.compressToJpeg(new Rect(0, 0, width, height), 100, out);
-        return out.toByteArray();
+        return out;
     }
 }
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Low-overhead latency histogram.
+ *
+ * Values are recorded in microseconds into log-linear buckets (4 buckets per power of two),
+ * so percentiles are accurate to about 12% without storing individual samples.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = SUB_BUCKETS * MAX_EXPONENT;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long count = 0;
+    private long sum = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+
+    /**
+     * Record a duration
+     *
+     * @param nanos duration in nanoseconds (negative values are ignored)
+     */
+    public void recordNanos(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        record(nanos / 1000);
+    }
+
+    /**
+     * Record a duration
+     *
+     * @param micros duration in microseconds
+     */
+    public synchronized void record(long micros) {
+        counts[getBucketIndex(micros)] ++;
+        count ++;
+        sum += micros;
+        min = Math.min(min, micros);
+        max = Math.max(max, micros);
+    }
+
+    /**
+     * Clear all recorded values
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i ++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @return mean in microseconds (0 if empty)
+     */
+    public synchronized long getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * Get approximate percentile
+     *
+     * @param percentile 0 - 100
+     * @return value in microseconds (0 if empty)
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long accumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i ++) {
+            accumulated += counts[i];
+            if (accumulated >= target) {
+                if (i == BUCKET_COUNT - 1) {
+                    // 最後のバケットには上限がない
+                    return max;
+                }
+                // バケットの中央値を返す (ただし記録された範囲内に収める)
+                long value = (getBucketLowerBound(i) + getBucketLowerBound(i + 1) - 1) / 2;
+                return Math.max(min, Math.min(max, value));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Convert to JSON (milliseconds)
+     *
+     * @return {count, mean, min, max, p50, p90, p99}
+     */
+    public synchronized JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("count", count);
+            json.put("mean", toMillis(getMean()));
+            json.put("min", toMillis(count == 0 ? 0 : min));
+            json.put("max", toMillis(max));
+            json.put("p50", toMillis(getPercentile(50)));
+            json.put("p90", toMillis(getPercentile(90)));
+            json.put("p99", toMillis(getPercentile(99)));
+        } catch (JSONException e) {
+            // never happens (all values are finite)
+        }
+        return json;
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static int getBucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(0, value);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int mantissa = (int) (value >> (exponent - 2));
+        return SUB_BUCKETS * (exponent - 1) + (mantissa - SUB_BUCKETS);
+    }
+
+    private static long getBucketLowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + 1;
+        long mantissa = index % SUB_BUCKETS + SUB_BUCKETS;
+        return mantissa << (exponent - 2);
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import android.graphics.Rect;
+
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.mlkit.vision.common.InputImage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Detection engine by MLKit barcode scanning
+ */
+public class MlKitEngine implements DetectionEngine {
+
+    private final BarcodeScanner scanner;
+    private final Executor executor;
+
+    /**
+     * Constructor
+     *
+     * @param formats  formats to detect (Barcode.FORMAT_XXXX)
+     * @param executor executor to call the callbacks
+     */
+    public MlKitEngine(int[] formats, Executor executor) {
+        this.executor = executor;
+        // 事前準備で読み込み済みの検出器があれば再利用する
+        scanner = ScannerWarmup.acquireDetector(formats);
+    }
+
+    /**
+     * ${inheritDoc}
+     */
+    @Override
+    public void detect(DetectionFrame frame, Callback callback) {
+        InputImage inputImage;
+        if (frame.getNV21() != null) {
+            inputImage = InputImage.fromByteArray(frame.getNV21(), frame.getWidth(), frame.getHeight(),
+                    frame.getRotationDegrees(), InputImage.IMAGE_FORMAT_NV21);
+        } else {
+            inputImage = InputImage.fromBitmap(frame.getBitmap(), 0);
+        }
+        final int offsetX = frame.getFrameCrop().left;
+        final int offsetY = frame.getFrameCrop().top;
+        scanner.process(inputImage)
+                .addOnSuccessListener(executor, barcodes -> {
+                    List<DetectedCode> codes = new ArrayList<>();
+                    List<CodeCandidate> candidates = new ArrayList<>();
+                    for (Barcode barcode : barcodes) {
+                        DetectedCode code = DetectedCode.fromBarcode(barcode, offsetX, offsetY);
+                        if (code != null) {
+                            codes.add(code);
+                        }
+                        // 値を読み取れなかったコードも位置が分かれば候補とする
+                        Rect box = barcode.getBoundingBox();
+                        if (box != null) {
+                            box = new Rect(box);
+                            box.offset(offsetX, offsetY);
+                            candidates.add(new CodeCandidate(barcode.getFormat(), box, 0));
+                        }
+                    }
+                    callback.onCandidates(candidates);
+                    callback.onSuccess(codes);
+                })
+                .addOnFailureListener(executor, callback::onFailure)
+                .addOnCompleteListener(executor, task -> callback.onComplete());
+    }
+
+    /**
+     * ${inheritDoc}
+     */
+    @Override
+    public void close() {
+        ScannerWarmup.releaseDetector(scanner);
+    }
+}
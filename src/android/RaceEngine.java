@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Detection engine running two engines on the same frame and taking the first valid result.
+ *
+ * The result is reported as soon as one engine detects a code, and an empty result is
+ * reported only when both engines detect nothing. The second engine works on a copy of the
+ * frame, so the frame is released (onComplete) as soon as the first engine is completed,
+ * possibly before the second engine reports. While the second engine is still busy with a
+ * previous frame, the frame is detected by the first engine only.
+ *
+ * As a consequence, the result of a frame may be reported after the result of a newer frame,
+ * so callers must discard results older than the last one they handled.
+ */
+public class RaceEngine implements DetectionEngine {
+
+    private final DetectionEngine first;
+    private final DetectionEngine second;
+    private final AtomicBoolean secondBusy = new AtomicBoolean(false);
+
+    /**
+     * Constructor
+     *
+     * @param first  engine
+     * @param second engine (both engines must call the callbacks on the same executor)
+     */
+    public RaceEngine(DetectionEngine first, DetectionEngine second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * ${inheritDoc}
+     */
+    @Override
+    public void detect(DetectionFrame frame, Callback callback) {
+        if (!secondBusy.compareAndSet(false, true)) {
+            // 前のフレームの検出が終わるまで待たず、新しいフレームは片方だけで検出する
+            first.detect(frame, callback);
+            return;
+        }
+        // 遅い方を待たずにフレームを解放できるように、2つ目のエンジンにはコピーを渡す
+        final DetectionFrame copy = frame.copy();
+        final boolean shared = copy == frame;
+        Race race = new Race(callback);
+        Callback firstCallback = race.newEntry(true, null);
+        Callback secondCallback = race.newEntry(shared, () -> {
+            if (!shared) {
+                FrameBufferPool.release(copy.getLuma());
+            }
+            secondBusy.set(false);
+        });
+        first.detect(frame, firstCallback);
+        second.detect(copy, secondCallback);
+    }
+
+    /**
+     * ${inheritDoc}
+     */
+    @Override
+    public void close() {
+        first.close();
+        second.close();
+    }
+
+    /**
+     * State of a race on a frame (callbacks are called on a single executor)
+     */
+    private static final class Race {
+        private final Callback callback;
+        /** Number of engines not completed */
+        private int pending = 0;
+        /** Number of engines using the original frame */
+        private int frameUsers = 0;
+        private int failures = 0;
+        private boolean reported = false;
+        private Exception error;
+
+        Race(Callback callback) {
+            this.callback = callback;
+        }
+
+        /**
+         * Create the callback of an engine
+         *
+         * @param usesFrame true if the engine uses the original frame
+         * @param release   called when the engine is completed (nullable)
+         * @return callback
+         */
+        Callback newEntry(boolean usesFrame, Runnable release) {
+            pending ++;
+            if (usesFrame) {
+                frameUsers ++;
+            }
+            return new Callback() {
+                @Override
+                public void onCandidates(List<CodeCandidate> candidates) {
+                    callback.onCandidates(candidates);
+                }
+
+                @Override
+                public void onSuccess(List<DetectedCode> codes) {
+                    if (!reported && !codes.isEmpty()) {
+                        reported = true;
+                        callback.onSuccess(codes);
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    failures ++;
+                    error = e;
+                }
+
+                @Override
+                public void onComplete() {
+                    if (-- pending == 0 && !reported) {
+                        reported = true;
+                        // 片方でも検出を完了していれば失敗ではなく検出なしとする
+                        if (failures == 2) {
+                            callback.onFailure(error);
+                        } else {
+                            callback.onSuccess(Collections.emptyList());
+                        }
+                    }
+                    if (release != null) {
+                        release.run();
+                    }
+                    if (usesFrame && -- frameUsers == 0) {
+                        callback.onComplete();
+                    }
+                }
+            };
+        }
+    }
+}
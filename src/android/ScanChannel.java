@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import org.json.JSONObject;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Channel between the plugin and the running scanner activity.
+ *
+ * The scanner activity is started by startActivityForResult(), which can only return
+ * a single result. In continuous mode, detections are streamed to the plugin through
+ * this channel, and the plugin asks the activity to stop through it.
+ */
+public class ScanChannel {
+
+    /**
+     * Listener of detections in continuous mode
+     */
+    public interface Listener {
+        /**
+         * Called on the main thread for each accepted detection
+         *
+         * @param data detected code ({text, format, ...})
+         */
+        void onDetected(JSONObject data);
+    }
+
+    private static Listener listener;
+    private static WeakReference<BarcodeScannerActivity> activityRef;
+
+    /**
+     * Set listener of detections
+     *
+     * @param listener listener (null to remove)
+     */
+    public static synchronized void setListener(Listener listener) {
+        ScanChannel.listener = listener;
+    }
+
+    /**
+     * Notify a detection to the listener
+     *
+     * @param data detected code ({text, format, ...})
+     */
+    public static void publish(JSONObject data) {
+        Listener current;
+        synchronized (ScanChannel.class) {
+            current = listener;
+        }
+        if (current != null) {
+            current.onDetected(data);
+        }
+    }
+
+    /**
+     * Register the running scanner activity
+     *
+     * @param activity
+     */
+    static synchronized void attach(BarcodeScannerActivity activity) {
+        activityRef = new WeakReference<>(activity);
+    }
+
+    /**
+     * Unregister the scanner activity
+     *
+     * @param activity
+     */
+    static synchronized void detach(BarcodeScannerActivity activity) {
+        if (activityRef != null && activityRef.get() == activity) {
+            activityRef = null;
+        }
+    }
+
+    /**
+     * Request the running scanner activity to stop
+     *
+     * @return true if a scanner activity is running
+     */
+    public static boolean requestStop() {
+        BarcodeScannerActivity activity;
+        synchronized (ScanChannel.class) {
+            activity = activityRef != null ? activityRef.get() : null;
+        }
+        if (activity == null) {
+            return false;
+        }
+        activity.requestStop();
+        return true;
+    }
+}
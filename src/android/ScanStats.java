@@ -0,0 +1,298 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import android.os.SystemClock;
+import android.util.Size;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Performance statistics of a scan session.
+ *
+ * Per-stage latencies are recorded in histograms, and dropped frames are estimated
+ * from gaps between sensor timestamps of the frames delivered to the analyzer
+ * (ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST discards frames silently).
+ */
+public class ScanStats {
+
+    /** Latest stats (shared with the plugin for getStats action) */
+    private static volatile ScanStats latest;
+
+    public final LatencyHistogram convert = new LatencyHistogram();
+    public final LatencyHistogram crop = new LatencyHistogram();
+    public final LatencyHistogram detect = new LatencyHistogram();
+    public final LatencyHistogram ui = new LatencyHistogram();
+    /** Sharpness measurement of the frame quality gate */
+    public final LatencyHistogram gate = new LatencyHistogram();
+    /** Luma fingerprint of the frame change detector */
+    public final LatencyHistogram fingerprint = new LatencyHistogram();
+    /** Sensor timestamp to detection result */
+    public final LatencyHistogram latency = new LatencyHistogram();
+
+    private final long startTime = SystemClock.elapsedRealtime();
+    /** Time when the scan was requested */
+    private final long requestTime;
+    /** true if the scanner was prepared before the scan */
+    private final boolean prepared;
+    private volatile long firstFrameTime = 0;
+    private volatile long firstDetectionTime = 0;
+    /** null: no session, true: camera of the session reused, false: first scan of the session */
+    private volatile Boolean sessionReused;
+    private volatile String engine;
+    private volatile long framesAnalyzed = 0;
+    private volatile long framesSkipped = 0;
+    private volatile long framesDropped = 0;
+    private long lastFrameTimestamp = 0;
+    private long frameInterval = 0;
+    private volatile FrameQualityGate qualityGate;
+    private volatile FocusController focusController;
+    private volatile ZoomController zoomController;
+    private volatile FrameChangeDetector changeDetector;
+    private volatile String resolutionMode;
+    private volatile Size requestedResolution;
+    private volatile int frameWidth = 0;
+    private volatile int frameHeight = 0;
+
+    /**
+     * Get the stats of the latest scan session
+     *
+     * @return stats, or null if no scan has been started
+     */
+    public static ScanStats getLatest() {
+        return latest;
+    }
+
+    /**
+     * Start a new stats session which can be retrieved by {@link #getLatest()}
+     *
+     * @param requestTime time when the scan was requested (SystemClock.elapsedRealtime())
+     * @param prepared    true if the scanner was prepared before the scan
+     * @return new stats
+     */
+    public static ScanStats start(long requestTime, boolean prepared) {
+        ScanStats stats = new ScanStats(requestTime, prepared);
+        latest = stats;
+        return stats;
+    }
+
+    private ScanStats(long requestTime, boolean prepared) {
+        this.requestTime = Math.min(requestTime, startTime);
+        this.prepared = prepared;
+    }
+
+    /**
+     * Record a frame delivered to the analyzer (analysis thread)
+     *
+     * @param timestamp sensor timestamp of the frame (ImageInfo.getTimestamp())
+     */
+    public void onFrameReceived(long timestamp) {
+        if (firstFrameTime == 0) {
+            firstFrameTime = SystemClock.elapsedRealtime();
+        }
+        if (lastFrameTimestamp > 0 && timestamp > lastFrameTimestamp) {
+            long interval = timestamp - lastFrameTimestamp;
+            // カメラのフレーム間隔は受け取ったフレーム間隔の最小値とみなす
+            if (frameInterval == 0 || interval < frameInterval) {
+                frameInterval = interval;
+            }
+            long skipped = (interval + frameInterval / 2) / frameInterval - 1;
+            if (skipped > 0) {
+                framesDropped += skipped;
+            }
+        }
+        lastFrameTimestamp = timestamp;
+    }
+
+    /**
+     * Record the size of a frame delivered to the analyzer (analysis thread)
+     *
+     * @param width  frame width (sensor coordinates)
+     * @param height frame height (sensor coordinates)
+     */
+    public void onFrameSize(int width, int height) {
+        frameWidth = width;
+        frameHeight = height;
+    }
+
+    /**
+     * Record that the scan runs in a scanner session
+     *
+     * @param reused true if the camera bound to the session is reused
+     */
+    public void setSessionReused(boolean reused) {
+        sessionReused = reused;
+    }
+
+    /**
+     * Set the detection engine
+     *
+     * @param engine DetectionEngine.ENGINE_XXXX
+     */
+    public void setEngine(String engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Set the requested analysis resolution
+     *
+     * @param mode      resolution option ("auto", "WIDTHxHEIGHT" or null)
+     * @param requested requested size (null: camera default)
+     */
+    public void setResolution(String mode, Size requested) {
+        resolutionMode = mode;
+        requestedResolution = requested;
+    }
+
+    /**
+     * Record a frame passed to the detection (analysis thread)
+     */
+    public void onFrameAnalyzed() {
+        framesAnalyzed ++;
+    }
+
+    /**
+     * Record a frame skipped by the analyzer before conversion (analysis thread)
+     */
+    public void onFrameSkipped() {
+        framesSkipped ++;
+    }
+
+    /**
+     * Record the latency from the sensor timestamp to the detection result
+     *
+     * The timestamp base of the sensor is either realtime or monotonic depending on the device,
+     * so values which do not look like a latency are ignored.
+     *
+     * @param timestamp sensor timestamp of the frame
+     */
+    public void onResult(long timestamp) {
+        if (firstDetectionTime == 0) {
+            firstDetectionTime = SystemClock.elapsedRealtime();
+        }
+        long now = SystemClock.elapsedRealtimeNanos();
+        long elapsed = now - timestamp;
+        if (elapsed < 0 || elapsed > 10_000_000_000L) {
+            elapsed = System.nanoTime() - timestamp;
+        }
+        if (elapsed >= 0 && elapsed <= 10_000_000_000L) {
+            latency.recordNanos(elapsed);
+        }
+    }
+
+    /**
+     * Set the frame quality gate to report its statistics
+     *
+     * @param qualityGate
+     */
+    public void setQualityGate(FrameQualityGate qualityGate) {
+        this.qualityGate = qualityGate;
+    }
+
+    /**
+     * Set the focus controller to report its statistics
+     *
+     * @param focusController
+     */
+    public void setFocusController(FocusController focusController) {
+        this.focusController = focusController;
+    }
+
+    /**
+     * Set the zoom controller to report its statistics
+     *
+     * @param zoomController
+     */
+    public void setZoomController(ZoomController zoomController) {
+        this.zoomController = zoomController;
+    }
+
+    /**
+     * Set the frame change detector to report its statistics
+     *
+     * @param changeDetector
+     */
+    public void setChangeDetector(FrameChangeDetector changeDetector) {
+        this.changeDetector = changeDetector;
+    }
+
+    public long getFramesAnalyzed() {
+        return framesAnalyzed;
+    }
+
+    public long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    /**
+     * Convert to JSON
+     *
+     * @return stats object (durations in milliseconds)
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        try {
+            long duration = SystemClock.elapsedRealtime() - startTime;
+            json.put("duration", duration);
+            json.put("framesAnalyzed", framesAnalyzed);
+            json.put("framesSkipped", framesSkipped);
+            json.put("framesDropped", framesDropped);
+            json.put("analyzedFps", duration > 0 ? framesAnalyzed * 1000.0 / duration : 0);
+            json.put("prepared", prepared);
+            if (engine != null) {
+                json.put("engine", engine);
+            }
+            if (sessionReused != null) {
+                json.put("sessionReused", sessionReused);
+            }
+            if (firstFrameTime > 0) {
+                json.put("timeToFirstFrame", firstFrameTime - requestTime);
+            }
+            if (firstDetectionTime > 0) {
+                json.put("timeToFirstDetection", firstDetectionTime - requestTime);
+            }
+            json.put("convert", convert.toJSON());
+            json.put("crop", crop.toJSON());
+            json.put("detect", detect.toJSON());
+            json.put("ui", ui.toJSON());
+            json.put("latency", latency.toJSON());
+            JSONObject resolution = new JSONObject();
+            resolution.put("mode", resolutionMode != null ? resolutionMode : "default");
+            Size requested = requestedResolution;
+            if (requested != null) {
+                resolution.put("requested", requested.getWidth() + "x" + requested.getHeight());
+            }
+            if (frameWidth > 0) {
+                resolution.put("analysis", frameWidth + "x" + frameHeight);
+            }
+            json.put("resolution", resolution);
+            json.put("gate", gate.toJSON());
+            FrameQualityGate currentGate = qualityGate;
+            if (currentGate != null) {
+                json.put("quality", currentGate.toJSON());
+            }
+            FocusController currentFocus = focusController;
+            if (currentFocus != null) {
+                json.put("focus", currentFocus.toJSON());
+            }
+            ZoomController currentZoom = zoomController;
+            if (currentZoom != null) {
+                json.put("zoom", currentZoom.toJSON());
+            }
+            json.put("fingerprint", fingerprint.toJSON());
+            FrameChangeDetector currentDetector = changeDetector;
+            if (currentDetector != null) {
+                json.put("change", currentDetector.toJSON());
+            }
+        } catch (JSONException e) {
+            // never happens (all values are finite)
+        }
+        return json;
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.Camera;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.Preview;
+import androidx.camera.core.UseCaseGroup;
+import androidx.camera.core.ViewPort;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+
+/**
+ * Scanner session shared by consecutive scans.
+ *
+ * While a session is open, the camera use cases are bound to the lifecycle of the session
+ * instead of the scanner activity, so the camera stays open and the detector stays loaded
+ * between scans. The scanner activity only attaches the preview surface and the analyzer,
+ * and analysis is paused (analyzer cleared) when the activity is closed.
+ * The activity which attached last owns the session: a previous activity destroyed late
+ * (after the next scan has attached) must not pause the analysis nor reset the camera.
+ * The session is closed by closeSession, an idle timeout or a memory pressure.
+ *
+ * All methods must be called on the main thread.
+ */
+public class ScannerSession implements LifecycleOwner, ComponentCallbacks2 {
+
+    private static final String TAG = "ScannerSession";
+
+    private static ScannerSession current;
+
+    private final Context context;
+    private final LifecycleRegistry lifecycle = new LifecycleRegistry(this);
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final long idleTimeout;
+    private final BarcodeScanner detector;
+    private final Runnable idleRunnable = () -> {
+        Log.d(TAG, "Idle timeout");
+        close();
+    };
+
+    private ProcessCameraProvider cameraProvider;
+    private Preview preview;
+    private ImageAnalysis imageAnalysis;
+    private Camera camera;
+    /** Token of the attached activity, or null if not attached */
+    private Object owner;
+
+    /**
+     * Open a new session (the current session is closed)
+     *
+     * @param context
+     * @param formats     formats to keep the detector loaded (Barcode.FORMAT_XXXX)
+     * @param idleTimeout time to close the session after the last scan (ms, 0: never)
+     * @return session
+     */
+    public static ScannerSession open(Context context, int[] formats, long idleTimeout) {
+        if (current != null) {
+            current.close();
+        }
+        current = new ScannerSession(context.getApplicationContext(), formats, idleTimeout);
+        return current;
+    }
+
+    /**
+     * @return current session, or null if not open
+     */
+    public static ScannerSession getCurrent() {
+        return current;
+    }
+
+    private ScannerSession(Context context, int[] formats, long idleTimeout) {
+        this.context = context;
+        this.idleTimeout = Math.max(0, idleTimeout);
+        // セッション中は検出器をキャッシュに保持しておく
+        detector = ScannerWarmup.acquireDetector(formats);
+        lifecycle.setCurrentState(Lifecycle.State.RESUMED);
+        context.registerComponentCallbacks(this);
+        startIdleTimer();
+    }
+
+    /**
+     * ${inheritDoc}
+     */
+    @NonNull
+    @Override
+    public Lifecycle getLifecycle() {
+        return lifecycle;
+    }
+
+    /**
+     * @return true if the camera use cases are bound to the session
+     */
+    public boolean isBound() {
+        return preview != null && imageAnalysis != null;
+    }
+
+    /**
+     * Bind the camera use cases to the session (first scan of the session)
+     *
+     * @param cameraProvider
+     * @param cameraSelector
+     * @param preview
+     * @param imageAnalysis
+     * @param viewPort       viewport of the preview (nullable)
+     * @return bound camera
+     */
+    public Camera bind(ProcessCameraProvider cameraProvider, CameraSelector cameraSelector,
+                     Preview preview, ImageAnalysis imageAnalysis, ViewPort viewPort) {
+        this.cameraProvider = cameraProvider;
+        this.preview = preview;
+        this.imageAnalysis = imageAnalysis;
+        if (viewPort != null) {
+            UseCaseGroup useCaseGroup = new UseCaseGroup.Builder()
+                    .setViewPort(viewPort)
+                    .addUseCase(preview)
+                    .addUseCase(imageAnalysis)
+                    .build();
+            camera = cameraProvider.bindToLifecycle(this, cameraSelector, useCaseGroup);
+        } else {
+            camera = cameraProvider.bindToLifecycle(this, cameraSelector, imageAnalysis, preview);
+        }
+        return camera;
+    }
+
+    public Preview getPreview() {
+        return preview;
+    }
+
+    public ImageAnalysis getImageAnalysis() {
+        return imageAnalysis;
+    }
+
+    public Camera getCamera() {
+        return camera;
+    }
+
+    /**
+     * Notify that a scanner activity uses the session (the previous activity loses the ownership)
+     *
+     * @return owner token passed to {@link #detach(Object)}
+     */
+    public Object attach() {
+        owner = new Object();
+        handler.removeCallbacks(idleRunnable);
+        return owner;
+    }
+
+    /**
+     * @param token token returned by {@link #attach()}
+     * @return true if the caller is the last attached activity and has not detached yet
+     */
+    public boolean isOwner(Object token) {
+        return token != null && token == owner;
+    }
+
+    /**
+     * Notify that the scanner activity is closed, and pause the analysis
+     *
+     * Nothing is done if another activity has attached since.
+     *
+     * @param token token returned by {@link #attach()}
+     */
+    public void detach(Object token) {
+        if (!isOwner(token)) {
+            Log.d(TAG, "Detached by a previous owner");
+            return;
+        }
+        owner = null;
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            return;
+        }
+        if (imageAnalysis != null) {
+            imageAnalysis.clearAnalyzer();
+        }
+        if (preview != null) {
+            preview.setSurfaceProvider(null);
+        }
+        startIdleTimer();
+    }
+
+    /**
+     * Close the session and release the camera and the detector
+     */
+    public void close() {
+        if (current == this) {
+            current = null;
+        }
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            return;
+        }
+        handler.removeCallbacks(idleRunnable);
+        context.unregisterComponentCallbacks(this);
+        if (cameraProvider != null && isBound()) {
+            cameraProvider.unbind(preview, imageAnalysis);
+        }
+        preview = null;
+        imageAnalysis = null;
+        camera = null;
+        lifecycle.setCurrentState(Lifecycle.State.DESTROYED);
+        ScannerWarmup.releaseDetector(detector);
+    }
+
+    private void startIdleTimer() {
+        handler.removeCallbacks(idleRunnable);
+        if (idleTimeout > 0) {
+            handler.postDelayed(idleRunnable, idleTimeout);
+        }
+    }
+
+    /**
+     * ${inheritDoc}
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        // スキャン中でなければメモリ不足時にカメラと検出器を解放する
+        if (owner == null && level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            Log.d(TAG, "Closed by memory pressure");
+            close();
+            ScannerWarmup.trim();
+        }
+    }
+
+    /**
+     * ${inheritDoc}
+     */
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+
+    /**
+     * ${inheritDoc}
+     */
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+}
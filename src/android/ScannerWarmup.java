@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.core.content.ContextCompat;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
+import com.google.mlkit.vision.barcode.BarcodeScanning;
+import com.google.mlkit.vision.common.InputImage;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Warm-up of the resources used by the scanner screen.
+ *
+ * Time to the first result is dominated by cold start: CameraX initialization,
+ * MLKit model loading and resource lookups. These are done ahead of time by
+ * {@link #prepare(Context, int[], Listener)}, and the scanner activity picks up the
+ * cached detectors and resource ids.
+ */
+public class ScannerWarmup {
+
+    private static final String TAG = "ScannerWarmup";
+
+    /** Size of the dummy image to load the detection model */
+    private static final int DUMMY_IMAGE_SIZE = 64;
+
+    /**
+     * Listener of the warm-up completion
+     */
+    public interface Listener {
+        /**
+         * Called on the main thread when the warm-up is completed
+         *
+         * @param duration time spent for the warm-up (ms)
+         */
+        void onPrepared(long duration);
+    }
+
+    private static final Map<String, CachedDetector> detectors = new HashMap<>();
+    private static ResourceIds resourceIds;
+    private static volatile boolean prepared = false;
+
+    /**
+     * Prepare the camera provider, the detector and the resource ids
+     *
+     * @param context
+     * @param formats  formats to detect (Barcode.FORMAT_XXXX)
+     * @param listener listener of the completion (nullable)
+     */
+    public static void prepare(Context context, int[] formats, Listener listener) {
+        final Context appContext = context.getApplicationContext();
+        final long startTime = SystemClock.elapsedRealtime();
+        getResourceIds(appContext);
+
+        // CameraX の初期化 (プロセス内で共有される)
+        ListenableFuture<ProcessCameraProvider> providerFuture = ProcessCameraProvider.getInstance(appContext);
+
+        // ダミー画像で検出を一度実行してモデルを読み込む
+        final BarcodeScanner detector = acquireDetector(formats);
+        byte[] dummy = new byte[DUMMY_IMAGE_SIZE * DUMMY_IMAGE_SIZE * 3 / 2];
+        InputImage image = InputImage.fromByteArray(dummy, DUMMY_IMAGE_SIZE, DUMMY_IMAGE_SIZE, 0,
+                InputImage.IMAGE_FORMAT_NV21);
+        detector.process(image).addOnCompleteListener(ContextCompat.getMainExecutor(appContext), task -> {
+            releaseDetector(detector);
+            providerFuture.addListener(() -> {
+                prepared = true;
+                long duration = SystemClock.elapsedRealtime() - startTime;
+                Log.d(TAG, "Prepared in " + duration + "ms");
+                if (listener != null) {
+                    listener.onPrepared(duration);
+                }
+            }, ContextCompat.getMainExecutor(appContext));
+        });
+    }
+
+    /**
+     * @return true if the warm-up has been completed
+     */
+    public static boolean isPrepared() {
+        return prepared;
+    }
+
+    /**
+     * Get a cached detector for the formats (or create a new one)
+     *
+     * The detector must be returned by {@link #releaseDetector(BarcodeScanner)} instead of closing it.
+     *
+     * @param formats formats to detect (Barcode.FORMAT_XXXX)
+     * @return detector
+     */
+    public static synchronized BarcodeScanner acquireDetector(int[] formats) {
+        String key = getKey(formats);
+        CachedDetector cached = detectors.get(key);
+        if (cached == null) {
+            cached = new CachedDetector(createDetector(formats));
+            detectors.put(key, cached);
+        }
+        cached.users ++;
+        return cached.detector;
+    }
+
+    /**
+     * Create a detector which is not shared (the caller closes it)
+     *
+     * A detector processes its images serially, so each thread detecting in parallel needs its own.
+     *
+     * @param formats formats to detect (Barcode.FORMAT_XXXX)
+     * @return detector
+     */
+    public static BarcodeScanner createDetector(int[] formats) {
+        // 検出対象のフォーマットを限定するほど高速になる
+        BarcodeScannerOptions options = new BarcodeScannerOptions.Builder()
+                .setBarcodeFormats(formats[0], Arrays.copyOfRange(formats, 1, formats.length))
+                .build();
+        return BarcodeScanning.getClient(options);
+    }
+
+    /**
+     * Return a detector acquired by {@link #acquireDetector(int[])}
+     *
+     * @param detector
+     */
+    public static synchronized void releaseDetector(BarcodeScanner detector) {
+        for (CachedDetector cached : detectors.values()) {
+            if (cached.detector == detector) {
+                cached.users = Math.max(0, cached.users - 1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Close the cached detectors which are not in use
+     */
+    public static synchronized void trim() {
+        Iterator<CachedDetector> iterator = detectors.values().iterator();
+        while (iterator.hasNext()) {
+            CachedDetector cached = iterator.next();
+            if (cached.users == 0) {
+                cached.detector.close();
+                iterator.remove();
+            }
+        }
+        if (detectors.isEmpty()) {
+            prepared = false;
+        }
+    }
+
+    /**
+     * Get the resource ids of the scanner screen (cached)
+     *
+     * @param context
+     * @return resource ids
+     */
+    public static synchronized ResourceIds getResourceIds(Context context) {
+        if (resourceIds == null) {
+            resourceIds = new ResourceIds(context.getResources(), context.getPackageName());
+        }
+        return resourceIds;
+    }
+
+    private static String getKey(int[] formats) {
+        int[] sorted = formats.clone();
+        Arrays.sort(sorted);
+        return Arrays.toString(sorted);
+    }
+
+    /**
+     * Cached detector with the number of users
+     */
+    private static final class CachedDetector {
+        final BarcodeScanner detector;
+        int users = 0;
+
+        CachedDetector(BarcodeScanner detector) {
+            this.detector = detector;
+        }
+    }
+
+    /**
+     * Resource ids of the scanner screen
+     */
+    public static final class ResourceIds {
+        public final int layout;
+        public final int previewView;
+        public final int detectedText;
+        public final int detectionArea;
+        public final int timeoutPrompt;
+        public final int debugPreview;
+
+        ResourceIds(Resources res, String packageName) {
+            layout = res.getIdentifier("activity_barcode_scanner", "layout", packageName);
+            previewView = res.getIdentifier("preview_view", "id", packageName);
+            detectedText = res.getIdentifier("detected_text", "id", packageName);
+            detectionArea = res.getIdentifier("detection_area", "id", packageName);
+            timeoutPrompt = res.getIdentifier("timeout_prompt", "id", packageName);
+            debugPreview = res.getIdentifier("debug_preview", "id", packageName);
+        }
+    }
+}
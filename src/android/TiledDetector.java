@@ -0,0 +1,445 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.mlkit.vision.common.InputImage;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Tiled and multi-scale detection for large or dense still images.
+ *
+ * MLKit misses small codes when a large image is passed at once, so the image is split
+ * into overlapping tiles at one or more scales, and the tiles are detected in parallel.
+ * A detector client processes its images serially, so each worker uses its own client
+ * ({@link Worker}) and takes the next tile only after detecting the previous one: a worker
+ * holds at most one tile bitmap, cut (and scaled) from the image, and no scaled copy of
+ * the image is made.
+ * Coordinates are mapped back to the full image, and duplicates detected in overlapping
+ * tiles (or at several scales) are merged by their boxes.
+ */
+public class TiledDetector {
+
+    /** Min IoU of two boxes of the same code to be merged */
+    private static final float MERGE_IOU = 0.3f;
+    /** Min ratio of the intersection to the smaller box (a code cut by the tile border) */
+    private static final float MERGE_CONTAINED = 0.7f;
+    /** Max number of workers by default (each worker holds a client and a tile bitmap) */
+    private static final int DEFAULT_MAX_PARALLELISM = 4;
+
+    /**
+     * Tiling options
+     */
+    public static final class Options {
+        /** Tile size in pixels of the (scaled) image */
+        public int tileSize = 1024;
+        /** Overlap between adjacent tiles (should be larger than the codes) */
+        public int overlap = 128;
+        /** Scales of the image to detect (1: decoded size) */
+        public float[] scales = {1.0f};
+        /** Number of tiles detected at once */
+        public int parallelism = Math.max(1,
+                Math.min(DEFAULT_MAX_PARALLELISM, Runtime.getRuntime().availableProcessors()));
+
+        /**
+         * Parse options
+         *
+         * @param json {enable, tileSize, overlap, scales, parallelism} (nullable)
+         * @return options, or null if tiling is not enabled
+         */
+        public static Options fromJSON(JSONObject json) {
+            if (json == null || !json.optBoolean("enable", false)) {
+                return null;
+            }
+            Options options = new Options();
+            options.tileSize = Math.max(64, json.optInt("tileSize", options.tileSize));
+            options.overlap = Math.max(0, Math.min(options.tileSize / 2, json.optInt("overlap", options.overlap)));
+            options.parallelism = Math.max(1, json.optInt("parallelism", options.parallelism));
+            JSONArray scales = json.optJSONArray("scales");
+            if (scales != null && scales.length() > 0) {
+                List<Float> values = new ArrayList<>();
+                for (int i = 0; i < scales.length(); i ++) {
+                    double scale = scales.optDouble(i, 0);
+                    // 拡大しすぎると1タイルに写る範囲が狭くなるので2倍までとする
+                    if (scale > 0 && scale <= 2) {
+                        values.add((float) scale);
+                    }
+                }
+                if (!values.isEmpty()) {
+                    options.scales = new float[values.size()];
+                    for (int i = 0; i < values.size(); i ++) {
+                        options.scales[i] = values.get(i);
+                    }
+                }
+            }
+            return options;
+        }
+    }
+
+    /**
+     * Tile of the image at a scale
+     */
+    static final class Tile {
+        /** Scale of the image */
+        final float scale;
+        /** Tile in the scaled image */
+        final Rect rect;
+        final int scaledWidth;
+        final int scaledHeight;
+        /** Scale from the scaled image to the full image */
+        final float toFull;
+
+        Tile(float scale, Rect rect, int scaledWidth, int scaledHeight, float toFull) {
+            this.scale = scale;
+            this.rect = rect;
+            this.scaledWidth = scaledWidth;
+            this.scaledHeight = scaledHeight;
+            this.toFull = toFull;
+        }
+    }
+
+    /**
+     * Detector of the tiles used by a worker (not used by other workers at the same time)
+     */
+    interface Worker {
+        /**
+         * Detect barcodes in a tile
+         *
+         * @param tile tile
+         * @return codes in the full upright image coordinates
+         */
+        List<DetectedCode> detect(Tile tile) throws ExecutionException, InterruptedException;
+
+        /**
+         * Release the detector
+         */
+        void close();
+    }
+
+    /**
+     * Factory of the workers
+     */
+    interface WorkerFactory {
+        Worker create();
+    }
+
+    /**
+     * Detect barcodes by tiles (blocks the calling thread)
+     *
+     * The calling thread detects tiles with the given detector, and the other workers
+     * with their own clients created for the detection.
+     *
+     * @param detector        detector (not used by other threads during the detection)
+     * @param formats         formats to detect (Barcode.FORMAT_XXXX) by the other workers
+     * @param bitmap          decoded image (not rotated)
+     * @param rotationDegrees clockwise rotation to make the image upright
+     * @param imageScale      scale from the bitmap to the full image (sample size)
+     * @param options         tiling options
+     * @return merged codes in the full upright image coordinates
+     * @throws ExecutionException   if the detection fails
+     * @throws InterruptedException if interrupted
+     */
+    public static List<DetectedCode> detect(BarcodeScanner detector, int[] formats, Bitmap bitmap,
+                                            int rotationDegrees, float imageScale, Options options)
+            throws ExecutionException, InterruptedException {
+        List<Tile> tiles = getScaledTiles(bitmap.getWidth(), bitmap.getHeight(), imageScale, options);
+        return detect(tiles, new DetectorWorker(detector, bitmap, rotationDegrees), () ->
+                new DetectorWorker(ScannerWarmup.createDetector(formats), bitmap, rotationDegrees),
+                options.parallelism);
+    }
+
+    /**
+     * Detect tiles by a pool of workers (blocks the calling thread)
+     *
+     * @param tiles         tiles to detect
+     * @param first         worker of the calling thread (not closed)
+     * @param workerFactory factory of the other workers (closed when they are finished)
+     * @param parallelism   max number of workers including the calling thread
+     * @return merged codes, in the order of the tiles
+     * @throws ExecutionException   if the detection of a tile fails
+     * @throws InterruptedException if interrupted
+     */
+    static List<DetectedCode> detect(List<Tile> tiles, Worker first, WorkerFactory workerFactory,
+                                     int parallelism)
+            throws ExecutionException, InterruptedException {
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReferenceArray<List<DetectedCode>> results = new AtomicReferenceArray<>(tiles.size());
+        int workers = Math.max(1, Math.min(parallelism, tiles.size()));
+        ExecutorService executor = workers > 1 ? Executors.newFixedThreadPool(workers - 1) : null;
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 1; i < workers; i ++) {
+                futures.add(executor.submit(() -> {
+                    Worker worker = workerFactory.create();
+                    try {
+                        detectTiles(worker, tiles, next, results);
+                    } finally {
+                        worker.close();
+                    }
+                    return null;
+                }));
+            }
+            detectTiles(first, tiles, next, results);
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // 検出の失敗はそのまま呼び出し元に伝える
+                    if (e.getCause() instanceof ExecutionException) {
+                        throw (ExecutionException) e.getCause();
+                    }
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+                // タイルは呼び出し元が解放する画像から切り出すので、全ワーカーの終了を待つ
+                awaitTermination(executor);
+            }
+        }
+        List<DetectedCode> codes = new ArrayList<>();
+        for (int i = 0; i < tiles.size(); i ++) {
+            codes.addAll(results.get(i));
+        }
+        return merge(codes);
+    }
+
+    /**
+     * Detect the remaining tiles one by one (worker thread)
+     */
+    private static void detectTiles(Worker worker, List<Tile> tiles, AtomicInteger next,
+                                    AtomicReferenceArray<List<DetectedCode>> results)
+            throws ExecutionException, InterruptedException {
+        try {
+            for (int i = next.getAndIncrement(); i < tiles.size(); i = next.getAndIncrement()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                results.set(i, worker.detect(tiles.get(i)));
+            }
+        } catch (ExecutionException | InterruptedException | RuntimeException e) {
+            // 他のワーカーに残りのタイルを処理させない
+            next.set(tiles.size());
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for the termination of the workers, even if interrupted
+     */
+    private static void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Split an image into overlapping tiles at each scale
+     *
+     * @param width      image width
+     * @param height     image height
+     * @param imageScale scale from the image to the full image (sample size)
+     * @param options    tiling options
+     * @return tiles of all scales
+     */
+    static List<Tile> getScaledTiles(int width, int height, float imageScale, Options options) {
+        List<Tile> tiles = new ArrayList<>();
+        for (float scale : options.scales) {
+            int scaledWidth = Math.max(1, Math.round(width * scale));
+            int scaledHeight = Math.max(1, Math.round(height * scale));
+            for (Rect rect : getTiles(scaledWidth, scaledHeight, options.tileSize, options.overlap)) {
+                tiles.add(new Tile(scale, rect, scaledWidth, scaledHeight, imageScale / scale));
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Worker cutting tiles of a bitmap and detecting them by an MLKit client
+     */
+    private static final class DetectorWorker implements Worker {
+        private final BarcodeScanner detector;
+        private final Bitmap bitmap;
+        private final int rotationDegrees;
+
+        DetectorWorker(BarcodeScanner detector, Bitmap bitmap, int rotationDegrees) {
+            this.detector = detector;
+            this.bitmap = bitmap;
+            this.rotationDegrees = rotationDegrees;
+        }
+
+        @Override
+        public List<DetectedCode> detect(Tile tile) throws ExecutionException, InterruptedException {
+            Rect source = getSourceRect(tile.rect, tile.scale, bitmap.getWidth(), bitmap.getHeight());
+            Bitmap tileBitmap;
+            if (tile.scale == 1.0f) {
+                tileBitmap = Bitmap.createBitmap(bitmap, source.left, source.top, source.width(), source.height());
+            } else {
+                Matrix matrix = new Matrix();
+                matrix.setScale((float) tile.rect.width() / source.width(),
+                        (float) tile.rect.height() / source.height());
+                tileBitmap = Bitmap.createBitmap(bitmap, source.left, source.top, source.width(), source.height(),
+                        matrix, true);
+            }
+            try {
+                InputImage image = InputImage.fromBitmap(tileBitmap, rotationDegrees);
+                List<Barcode> barcodes = Tasks.await(detector.process(image));
+                // タイルの位置を回転後の座標に変換する
+                Rect upright = CropGeometry.rotateRect(tile.rect, tile.scaledWidth, tile.scaledHeight,
+                        rotationDegrees);
+                List<DetectedCode> codes = new ArrayList<>();
+                for (Barcode barcode : barcodes) {
+                    DetectedCode code = DetectedCode.fromBarcode(barcode, Math.round(upright.left * tile.toFull),
+                            Math.round(upright.top * tile.toFull), tile.toFull);
+                    if (code != null) {
+                        codes.add(code);
+                    }
+                }
+                return codes;
+            } finally {
+                if (tileBitmap != bitmap) {
+                    tileBitmap.recycle();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            detector.close();
+        }
+    }
+
+    /**
+     * Get the rectangle of the unscaled image covered by a tile of the scaled image
+     *
+     * @param tile   tile in the scaled image
+     * @param scale  scale of the image
+     * @param width  unscaled image width
+     * @param height unscaled image height
+     * @return rectangle in the unscaled image (at least 1 pixel)
+     */
+    static Rect getSourceRect(Rect tile, float scale, int width, int height) {
+        int left = Math.min(width - 1, (int) Math.floor(tile.left / scale));
+        int top = Math.min(height - 1, (int) Math.floor(tile.top / scale));
+        int right = Math.max(left + 1, Math.min(width, (int) Math.ceil(tile.right / scale)));
+        int bottom = Math.max(top + 1, Math.min(height, (int) Math.ceil(tile.bottom / scale)));
+        return new Rect(left, top, right, bottom);
+    }
+
+    /**
+     * Split an image into overlapping tiles
+     *
+     * @param width    image width
+     * @param height   image height
+     * @param tileSize tile size
+     * @param overlap  overlap between adjacent tiles
+     * @return tiles covering the image
+     */
+    static List<Rect> getTiles(int width, int height, int tileSize, int overlap) {
+        List<Rect> tiles = new ArrayList<>();
+        int step = Math.max(1, tileSize - overlap);
+        for (int top = 0; ; top += step) {
+            // 端のタイルは画像内に収まるように寄せる
+            int tileTop = Math.max(0, Math.min(top, height - tileSize));
+            for (int left = 0; ; left += step) {
+                int tileLeft = Math.max(0, Math.min(left, width - tileSize));
+                tiles.add(new Rect(tileLeft, tileTop, Math.min(width, tileLeft + tileSize),
+                        Math.min(height, tileTop + tileSize)));
+                if (tileLeft + tileSize >= width) {
+                    break;
+                }
+            }
+            if (tileTop + tileSize >= height) {
+                break;
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Merge codes detected more than once (same value and overlapping boxes)
+     *
+     * The code with the larger box is kept, since a code cut by a tile border may be
+     * detected with a partial box.
+     *
+     * @param codes detected codes
+     * @return merged codes
+     */
+    static List<DetectedCode> merge(List<DetectedCode> codes) {
+        List<DetectedCode> merged = new ArrayList<>();
+        for (DetectedCode code : codes) {
+            boolean duplicated = false;
+            for (int i = 0; i < merged.size(); i ++) {
+                DetectedCode other = merged.get(i);
+                if (!other.getKey().equals(code.getKey()) || !isOverlapped(other.getBoundingBox(), code.getBoundingBox())) {
+                    continue;
+                }
+                duplicated = true;
+                if (getArea(code.getBoundingBox()) > getArea(other.getBoundingBox())) {
+                    merged.set(i, code);
+                }
+                break;
+            }
+            if (!duplicated) {
+                merged.add(code);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Check if two boxes are the same code
+     */
+    private static boolean isOverlapped(Rect a, Rect b) {
+        if (a == null || b == null) {
+            // 位置が不明な場合は同じ値なら重複とみなす
+            return true;
+        }
+        Rect intersection = new Rect();
+        if (!intersection.setIntersect(a, b)) {
+            return false;
+        }
+        long intersectionArea = getArea(intersection);
+        long union = getArea(a) + getArea(b) - intersectionArea;
+        long smaller = Math.min(getArea(a), getArea(b));
+        return (union > 0 && (float) intersectionArea / union >= MERGE_IOU)
+                || (smaller > 0 && (float) intersectionArea / smaller >= MERGE_CONTAINED);
+    }
+
+    private static long getArea(Rect rect) {
+        return rect == null ? 0 : (long) rect.width() * rect.height();
+    }
+}
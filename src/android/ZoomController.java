@@ -0,0 +1,271 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.camera.core.Camera;
+import androidx.camera.core.ZoomState;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+
+/**
+ * Automatic zoom to the detected codes.
+ *
+ * Codes read at a distance get only a few pixels per module and need many frames to
+ * decode, or are not decoded at all. The zoom is driven by the codes located by the
+ * engines ({@link CodeCandidate}) whether they are decoded or not: the pixel density of the
+ * code (measured module size, or the long side of its box divided by the typical number of
+ * modules of its format) is compared with the target density, and the zoom ratio is changed
+ * in small steps to reach it. The zoom is limited so that the code stays inside the
+ * detection area, and is reset when no code has been located for a while and when the
+ * scan ends.
+ *
+ * start / stop are called on the main thread, onDetection on the analysis thread.
+ */
+public class ZoomController {
+
+    /** Max zoom change per step */
+    private static final float STEP_RATIO = 1.2f;
+    /** Interval of the zoom steps (ms) */
+    private static final long STEP_INTERVAL = 50;
+    /** Time to ignore the measurements after zooming (frames in the pipeline have the old zoom) */
+    private static final long SETTLE_TIME = 300;
+    /** Min relative change to zoom (avoids oscillation) */
+    private static final float HYSTERESIS = 0.15f;
+    /** Max ratio of the detection area covered by the code after zooming */
+    private static final float MAX_FILL_RATIO = 0.8f;
+    /** Time without detection to reset the zoom (ms) */
+    private static final long RESET_TIMEOUT = 3000;
+
+    private final boolean enabled;
+    private final float targetDensity;
+    private final float maxRatioOption;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable stepRunnable = this::step;
+
+    /** Main thread state */
+    private Camera camera;
+    private float minRatio = 1f;
+    private float maxRatio = 1f;
+    private float initialRatio = 1f;
+    private float currentRatio = 1f;
+    private float targetRatio = 1f;
+    private long settleTime = 0;
+
+    private volatile long lastDetectionTime = 0;
+    private volatile float reportedRatio = 1f;
+    private volatile int steps = 0;
+    private volatile int resets = 0;
+
+    /**
+     * Constructor
+     *
+     * @param enabled       true to zoom automatically
+     * @param targetDensity target pixels per module
+     * @param maxRatio      max zoom ratio (0: max of the camera)
+     */
+    public ZoomController(boolean enabled, int targetDensity, float maxRatio) {
+        this.enabled = enabled;
+        this.targetDensity = Math.max(1, targetDensity);
+        this.maxRatioOption = Math.max(0, maxRatio);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start controlling the zoom of a camera (main thread)
+     *
+     * @param camera bound camera
+     */
+    public void start(Camera camera) {
+        if (!enabled || camera == null) {
+            return;
+        }
+        ZoomState state = camera.getCameraInfo().getZoomState().getValue();
+        if (state == null) {
+            return;
+        }
+        this.camera = camera;
+        minRatio = state.getMinZoomRatio();
+        maxRatio = maxRatioOption > 0 ? Math.min(maxRatioOption, state.getMaxZoomRatio()) : state.getMaxZoomRatio();
+        initialRatio = state.getZoomRatio();
+        currentRatio = initialRatio;
+        targetRatio = initialRatio;
+        reportedRatio = initialRatio;
+        lastDetectionTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Stop and reset the zoom (main thread)
+     *
+     * @param ownsCamera false if the camera is already used by another scan (not reset)
+     */
+    public void stop(boolean ownsCamera) {
+        handler.removeCallbacksAndMessages(null);
+        if (camera == null || !ownsCamera) {
+            camera = null;
+            return;
+        }
+        // セッションでカメラが再利用されるのでズームを元に戻す
+        if (currentRatio != initialRatio) {
+            camera.getCameraControl().setZoomRatio(initialRatio);
+        }
+        camera = null;
+    }
+
+    /**
+     * Notify the codes located in a frame (analysis thread)
+     *
+     * @param candidates    located codes in full frame coordinates (upright)
+     * @param frameWidth    width of the full frame (upright)
+     * @param frameHeight   height of the full frame (upright)
+     * @param detectionArea detection area in the full frame (upright)
+     */
+    public void onCandidates(List<CodeCandidate> candidates, int frameWidth, int frameHeight, Rect detectionArea) {
+        if (!enabled) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        CodeCandidate target = null;
+        double density = 0;
+        for (CodeCandidate candidate : candidates) {
+            Rect box = candidate.getBoundingBox();
+            // 1Dコードの両端の点のみの場合は高さがない
+            if (box == null || (box.width() <= 0 && box.height() <= 0)) {
+                continue;
+            }
+            // 最も画素密度が低いコードに合わせる
+            double codeDensity = candidate.getPixelsPerModule();
+            if (target == null || codeDensity < density) {
+                target = candidate;
+                density = codeDensity;
+            }
+        }
+        if (target == null) {
+            if (now - lastDetectionTime >= RESET_TIMEOUT) {
+                lastDetectionTime = now;
+                handler.post(this::reset);
+            }
+            return;
+        }
+        lastDetectionTime = now;
+        float factor = (float) Math.min(targetDensity / density,
+                getMaxFactor(target.getBoundingBox(), frameWidth / 2f, frameHeight / 2f, detectionArea));
+        handler.post(() -> zoomBy(factor));
+    }
+
+    /**
+     * Get the max zoom factor at which the box stays inside the area
+     *
+     * Zoom is centered on the frame, so a point p moves to c + (p - c) * factor.
+     *
+     * @param box     code box
+     * @param centerX center of the frame
+     * @param centerY center of the frame
+     * @param area    detection area
+     * @return max factor
+     */
+    static float getMaxFactor(Rect box, float centerX, float centerY, Rect area) {
+        float max = Float.MAX_VALUE;
+        float insetX = area.width() * (1 - MAX_FILL_RATIO) / 2;
+        float insetY = area.height() * (1 - MAX_FILL_RATIO) / 2;
+        // 左・上端は中心からの距離 x factor が下限以上、右・下端は上限以下である必要がある
+        max = Math.min(max, getMaxFactor(box.left - centerX, area.left + insetX - centerX));
+        max = Math.min(max, getMaxFactor(centerX - box.right, centerX - (area.right - insetX)));
+        max = Math.min(max, getMaxFactor(box.top - centerY, area.top + insetY - centerY));
+        max = Math.min(max, getMaxFactor(centerY - box.bottom, centerY - (area.bottom - insetY)));
+        return max;
+    }
+
+    /**
+     * Max factor keeping offset * factor &gt;= limit
+     */
+    private static float getMaxFactor(float offset, float limit) {
+        if (offset >= 0) {
+            // 拡大してもこの端は制限に近づかない
+            return Float.MAX_VALUE;
+        }
+        if (limit >= 0) {
+            // 既に範囲外
+            return 1f;
+        }
+        return Math.max(1f, limit / offset);
+    }
+
+    /**
+     * Change the target zoom by a factor (main thread)
+     */
+    private void zoomBy(float factor) {
+        if (camera == null || SystemClock.elapsedRealtime() < settleTime || currentRatio != targetRatio) {
+            return;
+        }
+        float ratio = Math.max(minRatio, Math.min(maxRatio, currentRatio * factor));
+        if (Math.abs(ratio / currentRatio - 1) < HYSTERESIS) {
+            return;
+        }
+        targetRatio = ratio;
+        step();
+    }
+
+    /**
+     * Reset the zoom after losing the codes (main thread)
+     */
+    private void reset() {
+        if (camera == null || targetRatio == initialRatio) {
+            return;
+        }
+        resets ++;
+        targetRatio = initialRatio;
+        handler.removeCallbacks(stepRunnable);
+        step();
+    }
+
+    /**
+     * Move the zoom one step toward the target (main thread)
+     */
+    private void step() {
+        if (camera == null) {
+            return;
+        }
+        if (targetRatio > currentRatio) {
+            currentRatio = Math.min(targetRatio, currentRatio * STEP_RATIO);
+        } else {
+            currentRatio = Math.max(targetRatio, currentRatio / STEP_RATIO);
+        }
+        camera.getCameraControl().setZoomRatio(currentRatio);
+        reportedRatio = currentRatio;
+        steps ++;
+        settleTime = SystemClock.elapsedRealtime() + SETTLE_TIME;
+        if (currentRatio != targetRatio) {
+            handler.postDelayed(stepRunnable, STEP_INTERVAL);
+        }
+    }
+
+    /**
+     * Convert to JSON
+     *
+     * @return {enabled, ratio, steps, resets}
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("enabled", enabled);
+            json.put("ratio", reportedRatio);
+            json.put("steps", steps);
+            json.put("resets", resets);
+        } catch (JSONException e) {
+            // never happens (all values are finite)
+        }
+        return json;
+    }
+}
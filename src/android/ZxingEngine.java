@@ -0,0 +1,485 @@
+/**
+ * Copyright (c) 2022 Asial Corporation. All rights reserved.
+ */
+package io.monaca.plugin.barcodescanner;
+
+import android.graphics.Bitmap;
+import android.graphics.Point;
+import android.graphics.Rect;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.RGBLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import com.google.zxing.qrcode.detector.FinderPattern;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Detection engine by ZXing (on-device, no model loading).
+ *
+ * The luma plane of the frame is decoded as is, without conversion to a bitmap, so the
+ * analyzer passes the luma plane only (no chroma unpacking).
+ * ZXing does not rotate planar sources, so the luma plane is rotated upright into a pooled
+ * buffer when the frame is not upright (1D codes are only found along the rows).
+ * Decoding runs on a dedicated thread since MultiFormatReader is not thread safe.
+ *
+ * When a single code is enough (live frames outside the multiple mode), the frame is decoded
+ * once by the reader set up in advance (decodeWithState) without TRY_HARDER, which scans
+ * every row and rotates the image again on a miss: the next frame gives another chance
+ * anyway. Every code is searched with TRY_HARDER otherwise (still images, multiple mode).
+ *
+ * ZXing reports finder patterns (or both ends of a 1D code) instead of the corners of the
+ * code, so the results have no corner points nor bounding box, but result points.
+ * Finder patterns found while decoding are also reported as a candidate when no code
+ * is decoded, so that the zoom can approach a QR code too far to be decoded.
+ */
+public class ZxingEngine implements DetectionEngine {
+
+    /** Max ratio of the module sizes of the finder patterns of a code */
+    private static final float FINDER_SIZE_TOLERANCE = 1.5f;
+    /** Distance from the center of a finder pattern to the edge of the code (modules) */
+    private static final float FINDER_CENTER_TO_EDGE = 3.5f;
+
+    private final Executor executor;
+    private final int[] formats;
+    private final boolean multiple;
+    private final Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+    private final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+    private final MultiFormatReader reader = new MultiFormatReader();
+    private final GenericMultipleBarcodeReader multipleReader = new GenericMultipleBarcodeReader(reader);
+    /** Points found during a decode (decode thread) */
+    private final List<ResultPoint> foundPoints = new ArrayList<>();
+
+    /**
+     * Constructor (every code, with TRY_HARDER)
+     *
+     * @param formats  formats to detect (Barcode.FORMAT_XXXX)
+     * @param executor executor to call the callbacks
+     */
+    public ZxingEngine(int[] formats, Executor executor) {
+        this(formats, true, true, executor);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param formats   formats to detect (Barcode.FORMAT_XXXX)
+     * @param multiple  true to decode every code in a frame, false to stop at the first one
+     * @param tryHarder true to search the frame exhaustively (still images, multiple mode)
+     * @param executor  executor to call the callbacks
+     */
+    public ZxingEngine(int[] formats, boolean multiple, boolean tryHarder, Executor executor) {
+        this.executor = executor;
+        this.formats = formats;
+        this.multiple = multiple;
+        // 文字コードは指定しない (Shift_JIS の推定が効かなくなるため)
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, toZxingFormats(formats));
+        if (tryHarder) {
+            hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        }
+        hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, (ResultPointCallback) foundPoints::add);
+        // decodeWithState は設定済みのリーダーを使い回す (decodeMultiple はヒントを毎回設定し直す)
+        reader.setHints(hints);
+    }
+
+    /**
+     * ${inheritDoc}
+     */
+    @Override
+    public void detect(DetectionFrame frame, Callback callback) {
+        try {
+            decodeExecutor.execute(() -> {
+                List<DetectedCode> codes = null;
+                List<CodeCandidate> candidates = new ArrayList<>();
+                RuntimeException error = null;
+                try {
+                    codes = decode(frame, candidates);
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+                final List<DetectedCode> result = codes;
+                final RuntimeException failure = error;
+                executor.execute(() -> {
+                    if (failure == null) {
+                        callback.onCandidates(candidates);
+                        callback.onSuccess(result);
+                    } else {
+                        callback.onFailure(failure);
+                    }
+                    callback.onComplete();
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            // closed
+            executor.execute(() -> {
+                callback.onFailure(e);
+                callback.onComplete();
+            });
+        }
+    }
+
+    /**
+     * ${inheritDoc}
+     */
+    @Override
+    public void close() {
+        decodeExecutor.shutdown();
+    }
+
+    /**
+     * Decode a frame (decode thread)
+     *
+     * @param frame      frame
+     * @param candidates list to add the located codes
+     * @return decoded codes
+     */
+    private List<DetectedCode> decode(DetectionFrame frame, List<CodeCandidate> candidates) {
+        byte[] rotated = null;
+        try {
+            LuminanceSource source;
+            if (frame.getLuma() != null) {
+                int rotation = frame.getRotationDegrees();
+                byte[] luma = frame.getLuma();
+                int width = frame.getWidth();
+                int height = frame.getHeight();
+                if (rotation != 0) {
+                    rotated = FrameBufferPool.acquire(width * height);
+                    rotateLuma(luma, width, height, rotation, rotated);
+                    luma = rotated;
+                    if (rotation == 90 || rotation == 270) {
+                        width = frame.getHeight();
+                        height = frame.getWidth();
+                    }
+                }
+                source = new PlanarYUVLuminanceSource(luma, width, height, 0, 0, width, height, false);
+            } else {
+                Bitmap bitmap = frame.getBitmap();
+                int[] pixels = new int[bitmap.getWidth() * bitmap.getHeight()];
+                bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+                source = new RGBLuminanceSource(bitmap.getWidth(), bitmap.getHeight(), pixels);
+            }
+            Rect frameCrop = frame.getFrameCrop();
+            Result[] results;
+            foundPoints.clear();
+            try {
+                BinaryBitmap image = new BinaryBitmap(new HybridBinarizer(source));
+                if (multiple) {
+                    results = multipleReader.decodeMultiple(image, hints);
+                } else {
+                    results = new Result[] {reader.decodeWithState(image)};
+                }
+            } catch (NotFoundException e) {
+                // 読み取れなくてもファインダパターンが見つかっていればコードの位置と大きさが分かる
+                // (何も読み取れない場合は画像全体を一度探索するだけなので座標はそのまま使える)
+                CodeCandidate candidate = getFinderPatternCandidate(foundPoints, frameCrop.left, frameCrop.top);
+                if (candidate != null) {
+                    candidates.add(candidate);
+                }
+                return Collections.emptyList();
+            } finally {
+                reader.reset();
+            }
+            List<DetectedCode> codes = new ArrayList<>();
+            for (Result result : results) {
+                DetectedCode code = toDetectedCode(result, formats, frameCrop.left, frameCrop.top);
+                if (code != null) {
+                    codes.add(code);
+                    CodeCandidate candidate = toCandidate(code.getFormat(), result.getResultPoints(), foundPoints,
+                            frameCrop.left, frameCrop.top);
+                    if (candidate != null) {
+                        candidates.add(candidate);
+                    }
+                }
+            }
+            return codes;
+        } finally {
+            foundPoints.clear();
+            if (rotated != null) {
+                FrameBufferPool.release(rotated);
+            }
+        }
+    }
+
+    /**
+     * Rotate the luma plane clockwise
+     *
+     * @param src      luma plane (width x height, stride = width)
+     * @param width    width of the source
+     * @param height   height of the source
+     * @param rotation 90, 180 or 270
+     * @param dst      rotated luma plane (at least width x height)
+     */
+    static void rotateLuma(byte[] src, int width, int height, int rotation, byte[] dst) {
+        // 回転ごとにループを分けて、画素ごとの分岐と乗算をなくす (読み込みは連続、書き込みは列方向)
+        int size = width * height;
+        int i = 0;
+        switch (rotation) {
+            case 90:
+                for (int y = 0; y < height; y ++) {
+                    for (int x = 0, d = height - 1 - y; x < width; x ++, d += height) {
+                        dst[d] = src[i ++];
+                    }
+                }
+                break;
+            case 180:
+                for (int d = size - 1; i < size; i ++, d --) {
+                    dst[d] = src[i];
+                }
+                break;
+            case 270:
+                for (int y = 0; y < height; y ++) {
+                    for (int x = 0, d = (width - 1) * height + y; x < width; x ++, d -= height) {
+                        dst[d] = src[i ++];
+                    }
+                }
+                break;
+            default:
+                System.arraycopy(src, 0, dst, 0, size);
+                break;
+        }
+    }
+
+    /**
+     * Create detected code from ZXing result
+     *
+     * @param result  result detected in a cropped image
+     * @param formats requested formats (Barcode.FORMAT_XXXX)
+     * @param offsetX x of the cropped image in the full frame
+     * @param offsetY y of the cropped image in the full frame
+     * @return detected code, or null if the format is not requested or not supported
+     */
+    static DetectedCode toDetectedCode(Result result, int[] formats, int offsetX, int offsetY) {
+        int format = toMlKitFormat(result.getBarcodeFormat());
+        if (format == Barcode.FORMAT_UNKNOWN || !isRequested(format, formats) || result.getText() == null) {
+            return null;
+        }
+        Point[] points = null;
+        ResultPoint[] resultPoints = result.getResultPoints();
+        if (resultPoints != null) {
+            // コーナーではない (ファインダパターン・1Dコードの両端) ので結果点として返す
+            List<Point> list = new ArrayList<>();
+            for (ResultPoint resultPoint : resultPoints) {
+                if (resultPoint != null) {
+                    list.add(new Point(Math.round(resultPoint.getX()) + offsetX,
+                            Math.round(resultPoint.getY()) + offsetY));
+                }
+            }
+            if (!list.isEmpty()) {
+                points = list.toArray(new Point[0]);
+            }
+        }
+        return new DetectedCode(format, result.getText(), result.getText(), result.getRawBytes(),
+                getValueType(format, result.getText()), null, null, points);
+    }
+
+    /**
+     * Create a candidate from the points of a code
+     *
+     * The module size is taken from the finder patterns at the result points.
+     *
+     * @param format  Barcode.FORMAT_XXXX
+     * @param points  result points
+     * @param found   points found during the decode (finder patterns carry their module size)
+     * @param offsetX x of the cropped image in the full frame
+     * @param offsetY y of the cropped image in the full frame
+     * @return candidate, or null if there is no point
+     */
+    static CodeCandidate toCandidate(int format, ResultPoint[] points, List<ResultPoint> found,
+                                     int offsetX, int offsetY) {
+        if (points == null) {
+            return null;
+        }
+        Rect box = null;
+        float moduleSize = 0;
+        int patterns = 0;
+        for (ResultPoint point : points) {
+            if (point == null) {
+                continue;
+            }
+            int x = Math.round(point.getX()) + offsetX;
+            int y = Math.round(point.getY()) + offsetY;
+            if (box == null) {
+                box = new Rect(x, y, x, y);
+            } else {
+                box.union(x, y);
+            }
+            float size = getModuleSize(point, found);
+            if (size > 0) {
+                moduleSize += size;
+                patterns ++;
+            }
+        }
+        if (box == null) {
+            return null;
+        }
+        if (patterns > 0) {
+            moduleSize /= patterns;
+            // ファインダパターンの中心からコードの外周まで広げる
+            int outset = Math.round(moduleSize * FINDER_CENTER_TO_EDGE);
+            box.inset(-outset, -outset);
+        }
+        return new CodeCandidate(format, box, moduleSize);
+    }
+
+    /**
+     * Get the module size of the finder pattern at a point
+     *
+     * Results translated by GenericMultipleBarcodeReader lose the finder patterns,
+     * so the module size is looked up in the points found during the decode.
+     *
+     * @return module size, or 0 if the point is not a finder pattern
+     */
+    private static float getModuleSize(ResultPoint point, List<ResultPoint> found) {
+        if (point instanceof FinderPattern) {
+            return ((FinderPattern) point).getEstimatedModuleSize();
+        }
+        for (ResultPoint foundPoint : found) {
+            if (foundPoint instanceof FinderPattern) {
+                float size = ((FinderPattern) foundPoint).getEstimatedModuleSize();
+                if (ResultPoint.distance(point, foundPoint) <= size * 2) {
+                    return size;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Create a candidate from the finder patterns found in a frame where no code is decoded
+     *
+     * Possible finder patterns include noise, so only the patterns of a similar module size
+     * to the median are taken, and at least 3 (the finder patterns of a QR code) are required.
+     *
+     * @param points  points found during the decode
+     * @param offsetX x of the cropped image in the full frame
+     * @param offsetY y of the cropped image in the full frame
+     * @return candidate, or null if not enough finder patterns are found
+     */
+    static CodeCandidate getFinderPatternCandidate(List<ResultPoint> points, int offsetX, int offsetY) {
+        List<FinderPattern> patterns = new ArrayList<>();
+        for (ResultPoint point : points) {
+            if (point instanceof FinderPattern) {
+                patterns.add((FinderPattern) point);
+            }
+        }
+        if (patterns.size() < 3) {
+            return null;
+        }
+        float[] sizes = new float[patterns.size()];
+        for (int i = 0; i < sizes.length; i ++) {
+            sizes[i] = patterns.get(i).getEstimatedModuleSize();
+        }
+        Arrays.sort(sizes);
+        float median = sizes[sizes.length / 2];
+        List<ResultPoint> cluster = new ArrayList<>();
+        for (FinderPattern pattern : patterns) {
+            float size = pattern.getEstimatedModuleSize();
+            if (size * FINDER_SIZE_TOLERANCE >= median && size <= median * FINDER_SIZE_TOLERANCE) {
+                cluster.add(pattern);
+            }
+        }
+        if (cluster.size() < 3) {
+            return null;
+        }
+        return toCandidate(Barcode.FORMAT_QR_CODE, cluster.toArray(new ResultPoint[0]), Collections.emptyList(),
+                offsetX, offsetY);
+    }
+
+    /**
+     * @param format  Barcode.FORMAT_XXXX
+     * @param formats requested formats
+     * @return true if the format is requested
+     */
+    static boolean isRequested(int format, int[] formats) {
+        for (int requested : formats) {
+            if (requested == format || requested == Barcode.FORMAT_ALL_FORMATS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get MLKit value type of the result (only product, URL and text are distinguished)
+     */
+    private static int getValueType(int format, String text) {
+        switch (format) {
+            case Barcode.FORMAT_EAN_8:
+            case Barcode.FORMAT_EAN_13:
+            case Barcode.FORMAT_UPC_A:
+            case Barcode.FORMAT_UPC_E:
+                return Barcode.TYPE_PRODUCT;
+            default:
+                if (text.startsWith("http://") || text.startsWith("https://")) {
+                    return Barcode.TYPE_URL;
+                }
+                return Barcode.TYPE_TEXT;
+        }
+    }
+
+    /**
+     * Convert ZXing format to MLKit format
+     *
+     * @param format ZXing format
+     * @return Barcode.FORMAT_XXXX (FORMAT_UNKNOWN if not supported by MLKit)
+     */
+    static int toMlKitFormat(com.google.zxing.BarcodeFormat format) {
+        switch (format) {
+            case QR_CODE: return Barcode.FORMAT_QR_CODE;
+            case AZTEC: return Barcode.FORMAT_AZTEC;
+            case CODABAR: return Barcode.FORMAT_CODABAR;
+            case CODE_39: return Barcode.FORMAT_CODE_39;
+            case CODE_93: return Barcode.FORMAT_CODE_93;
+            case CODE_128: return Barcode.FORMAT_CODE_128;
+            case DATA_MATRIX: return Barcode.FORMAT_DATA_MATRIX;
+            case EAN_8: return Barcode.FORMAT_EAN_8;
+            case EAN_13: return Barcode.FORMAT_EAN_13;
+            case ITF: return Barcode.FORMAT_ITF;
+            case PDF_417: return Barcode.FORMAT_PDF417;
+            case UPC_A: return Barcode.FORMAT_UPC_A;
+            case UPC_E: return Barcode.FORMAT_UPC_E;
+            default: return Barcode.FORMAT_UNKNOWN;
+        }
+    }
+
+    /**
+     * Convert MLKit formats to ZXing formats
+     *
+     * @param formats Barcode.FORMAT_XXXX
+     * @return ZXing formats (empty if none is supported by ZXing)
+     */
+    static EnumSet<com.google.zxing.BarcodeFormat> toZxingFormats(int[] formats) {
+        EnumSet<com.google.zxing.BarcodeFormat> zxingFormats = EnumSet.noneOf(com.google.zxing.BarcodeFormat.class);
+        for (int format : formats) {
+            if (format == Barcode.FORMAT_ALL_FORMATS) {
+                return EnumSet.allOf(com.google.zxing.BarcodeFormat.class);
+            }
+            for (com.google.zxing.BarcodeFormat zxingFormat : com.google.zxing.BarcodeFormat.values()) {
+                if (toMlKitFormat(zxingFormat) == format) {
+                    zxingFormats.add(zxingFormat);
+                }
+            }
+        }
+        return zxingFormats;
+    }
+}
@@ -0,0 +1,113 @@
+package io.monaca.plugin.barcodescanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a batch of images by the number of workers.
+ *
+ * BitmapFactory and MLKit cannot run on the JVM, so each worker "decodes" an image by copying
+ * its luma into a buffer of the reserved pixels and detects it with ZXing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BatchImageScannerBenchmark {
+
+    private static final int IMAGES = 32;
+    private static final int SIZE = 1000;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    /** Memory budget of the decoded images (MB, 0: quarter of the max heap) */
+    @Param({"0", "16"})
+    public int budgetMegabytes;
+
+    private String[] uris;
+    private byte[] image;
+
+    @Setup
+    public void setUp() {
+        uris = new String[IMAGES];
+        for (int i = 0; i < IMAGES; i ++) {
+            uris[i] = "file:///" + i + ".jpg";
+        }
+        image = SyntheticCodes.render(BarcodeFormat.QR_CODE, "batch", SIZE, SIZE);
+    }
+
+    @Benchmark
+    public int scanBatch() throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(1);
+        int[] completed = new int[1];
+        BatchImageScanner batch = new BatchImageScanner(uris, SIZE * SIZE, parallelism,
+                budgetMegabytes * 1024L * 1024L, new BatchImageScanner.Listener() {
+                    @Override
+                    public void onImage(int index, String uri, ImageScanner.Result result, String error,
+                                        int count) {
+                    }
+
+                    @Override
+                    public void onFinished(int count, boolean cancelled, long duration) {
+                        completed[0] = count;
+                        finished.countDown();
+                    }
+                }, LumaWorker::new);
+        batch.start();
+        finished.await();
+        return completed[0];
+    }
+
+    private final class LumaWorker implements BatchImageScanner.Worker {
+        private final MultiFormatReader reader = new MultiFormatReader();
+        private final Map<DecodeHintType, Object> hints =
+                Collections.singletonMap(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+
+        @Override
+        public ImageScanner.Result scan(String uri, int maxPixels) {
+            // 予約された画素数に収まるように縮小してデコードする代わりに、間引いてコピーする
+            int sampleSize = 1;
+            while ((long) (SIZE / sampleSize) * (SIZE / sampleSize) > maxPixels) {
+                sampleSize *= 2;
+            }
+            int size = SIZE / sampleSize;
+            byte[] luma = new byte[size * size];
+            for (int y = 0; y < size; y ++) {
+                for (int x = 0; x < size; x ++) {
+                    luma[y * size + x] = image[y * sampleSize * SIZE + x * sampleSize];
+                }
+            }
+            PlanarYUVLuminanceSource source =
+                    new PlanarYUVLuminanceSource(luma, size, size, 0, 0, size, size, false);
+            try {
+                reader.decode(new BinaryBitmap(new HybridBinarizer(source)), hints);
+            } catch (NotFoundException e) {
+                // 検出なし
+            }
+            return new ImageScanner.Result(Collections.emptyList(), size, size, sampleSize);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
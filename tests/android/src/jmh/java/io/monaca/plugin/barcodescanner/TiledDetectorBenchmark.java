@@ -0,0 +1,121 @@
+package io.monaca.plugin.barcodescanner;
+
+import android.graphics.Rect;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tiled versus whole-image detection of sheets of small QR codes.
+ *
+ * MLKit cannot run on the JVM, so the tiles are detected by ZXing on crops of the luma.
+ * The number of codes found by each method is printed once per trial, since a faster
+ * method is only useful if it finds the codes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TiledDetectorBenchmark {
+
+    private static final int WIDTH = 2000;
+    private static final int CELL = 120;
+
+    @Param({"4", "16", "64"})
+    public int codes;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private byte[] luma;
+    private int height;
+    private List<TiledDetector.Tile> tiles;
+
+    @Setup
+    public void setUp() throws Exception {
+        luma = SyntheticCodes.sheet(codes, CELL, WIDTH);
+        height = SyntheticCodes.getSheetHeight(codes, CELL, WIDTH);
+        TiledDetector.Options options = new TiledDetector.Options();
+        options.tileSize = 512;
+        options.overlap = 128;
+        tiles = TiledDetector.getScaledTiles(WIDTH, height, 1f, options);
+        System.out.println("codes: " + codes + ", whole image: " + detectWholeImage().size()
+                + ", tiled: " + detectTiles().size() + " (" + tiles.size() + " tiles)");
+    }
+
+    @Benchmark
+    public List<DetectedCode> detectWholeImage() {
+        return decode(new QRCodeMultiReader(), new Rect(0, 0, WIDTH, height));
+    }
+
+    @Benchmark
+    public List<DetectedCode> detectTiles() throws ExecutionException, InterruptedException {
+        return TiledDetector.detect(tiles, new LumaWorker(), LumaWorker::new, parallelism);
+    }
+
+    /**
+     * Detect the codes in an area of the sheet
+     */
+    private List<DetectedCode> decode(QRCodeMultiReader reader, Rect area) {
+        PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(luma, WIDTH, height, area.left, area.top,
+                area.width(), area.height(), false);
+        Map<DecodeHintType, Object> hints = Collections.singletonMap(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        Result[] results;
+        try {
+            results = reader.decodeMultiple(new BinaryBitmap(new HybridBinarizer(source)), hints);
+        } catch (NotFoundException e) {
+            return Collections.emptyList();
+        }
+        List<DetectedCode> detected = new ArrayList<>();
+        for (Result result : results) {
+            Rect box = null;
+            for (ResultPoint point : result.getResultPoints()) {
+                int x = area.left + Math.round(point.getX());
+                int y = area.top + Math.round(point.getY());
+                if (box == null) {
+                    box = new Rect(x, y, x + 1, y + 1);
+                } else {
+                    box.union(x, y);
+                }
+            }
+            detected.add(new DetectedCode(Barcode.FORMAT_QR_CODE, result.getText(), result.getText(), null,
+                    Barcode.TYPE_TEXT, box, null));
+        }
+        return detected;
+    }
+
+    private final class LumaWorker implements TiledDetector.Worker {
+        private final QRCodeMultiReader reader = new QRCodeMultiReader();
+
+        @Override
+        public List<DetectedCode> detect(TiledDetector.Tile tile) {
+            return decode(reader, tile.rect);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package io.monaca.plugin.barcodescanner;
+
+import android.graphics.Rect;
+import android.media.Image.Plane;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the YUV_420_888 to NV21 conversion at common analysis resolutions.
+ *
+ * The JPEG path of ImageUtils (YuvImage) is implemented natively and cannot run on the JVM.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class YuvConversionBenchmark {
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    @Param({"NV21", "PADDED_SEMI_PLANAR", "PADDED_PLANAR"})
+    public SyntheticYuv.Layout layout;
+
+    private Plane[] planes;
+    private int width;
+    private int height;
+    private Rect fullRect;
+    private Rect centerRect;
+    private byte[] out;
+
+    @Setup
+    public void setUp() {
+        String[] size = resolution.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        planes = SyntheticYuv.create(width, height, layout, 0);
+        fullRect = new Rect(0, 0, width, height);
+        centerRect = new Rect(width / 4, height / 4, width * 3 / 4, height * 3 / 4);
+        out = new byte[width * height * 3 / 2];
+    }
+
+    @Benchmark
+    public byte[] convertFullFrame() {
+        byte[] nv21 = BitmapUtils.yuv420ThreePlanesToNV21(planes, width, height, fullRect);
+        FrameBufferPool.release(nv21);
+        return nv21;
+    }
+
+    @Benchmark
+    public byte[] convertCenterCrop() {
+        byte[] nv21 = BitmapUtils.yuv420ThreePlanesToNV21(planes, width, height, centerRect);
+        FrameBufferPool.release(nv21);
+        return nv21;
+    }
+
+    @Benchmark
+    public byte[] convertCenterCropLuma() {
+        byte[] luma = BitmapUtils.yuv420ToLuma(planes, width, height, centerRect);
+        FrameBufferPool.release(luma);
+        return luma;
+    }
+
+    @Benchmark
+    public boolean checkUVPlanesNV21() {
+        return BitmapUtils.areUVPlanesNV21(planes[1].getBuffer(), planes[2].getBuffer(), width, height);
+    }
+
+    @Benchmark
+    public byte[] unpackYPlane() {
+        BitmapUtils.unpackPlane(planes[0].getBuffer(), planes[0].getRowStride(), 1, 0, 0, width, height,
+                out, 0, 1);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] unpackUPlane() {
+        Plane u = planes[1];
+        BitmapUtils.unpackPlane(u.getBuffer(), u.getRowStride(), u.getPixelStride(), 0, 0, width / 2,
+                height / 2, out, width * height + 1, 2);
+        return out;
+    }
+}
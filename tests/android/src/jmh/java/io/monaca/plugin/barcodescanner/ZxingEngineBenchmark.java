@@ -0,0 +1,125 @@
+package io.monaca.plugin.barcodescanner;
+
+import android.graphics.Rect;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.zxing.BarcodeFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decoding time of the ZXing engine on the crops of live frames.
+ *
+ * Frames are sensor-oriented crops of the detection area (rotated by 90 degrees in portrait)
+ * holding a code, or nothing: frames without a code are the common case while aiming.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ZxingEngineBenchmark {
+
+    private static final String EAN = "4901234567894";
+
+    /** Crop of the detection area in the sensor orientation */
+    @Param({"640x360", "960x540", "1280x720"})
+    public String crop;
+
+    @Param({"QR_CODE", "EAN_13", "NONE"})
+    public String code;
+
+    @Param({"0", "90"})
+    public int rotation;
+
+    /** true: every code with TRY_HARDER (multiple mode), false: first code in one pass */
+    @Param({"false", "true"})
+    public boolean multiple;
+
+    private ZxingEngine engine;
+    private DetectionFrame frame;
+
+    @Setup
+    public void setUp() {
+        String[] size = crop.split("x");
+        int width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+        // 正立画像にコードを描いてからセンサーの向きに戻す
+        int uprightWidth = rotation == 90 ? height : width;
+        int uprightHeight = rotation == 90 ? width : height;
+        byte[] upright;
+        if ("QR_CODE".equals(code)) {
+            int side = Math.min(uprightWidth, uprightHeight) / 2;
+            upright = SyntheticCodes.render(BarcodeFormat.QR_CODE, "https://example.com/item/0123456789",
+                    uprightWidth, uprightHeight, centered(uprightWidth, uprightHeight, side, side));
+        } else if ("EAN_13".equals(code)) {
+            int codeWidth = uprightWidth * 2 / 3;
+            upright = SyntheticCodes.render(BarcodeFormat.EAN_13, EAN, uprightWidth, uprightHeight,
+                    centered(uprightWidth, uprightHeight, codeWidth, codeWidth / 3));
+        } else {
+            // コードのない雑多な背景
+            upright = new byte[width * height * 3 / 2];
+            new Random(0).nextBytes(upright);
+        }
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        ZxingEngine.rotateLuma(upright, uprightWidth, uprightHeight, (360 - rotation) % 360, nv21);
+        frame = DetectionFrame.fromNV21(nv21, width, height, rotation, new Rect(0, 0, uprightWidth, uprightHeight));
+        engine = new ZxingEngine(new int[] {Barcode.FORMAT_QR_CODE, Barcode.FORMAT_EAN_13}, multiple, multiple,
+                Runnable::run);
+        int found = decode().size();
+        if (found != ("NONE".equals(code) ? 0 : 1)) {
+            throw new IllegalStateException(found + " codes decoded in " + crop + " " + code);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public List<DetectedCode> decode() {
+        CountDownLatch completed = new CountDownLatch(1);
+        AtomicReference<List<DetectedCode>> result = new AtomicReference<>();
+        engine.detect(frame, new DetectionEngine.Callback() {
+            @Override
+            public void onSuccess(List<DetectedCode> codes) {
+                result.set(codes);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                throw new IllegalStateException(e);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.countDown();
+            }
+        });
+        try {
+            completed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result.get();
+    }
+
+    private static Rect centered(int width, int height, int codeWidth, int codeHeight) {
+        int left = (width - codeWidth) / 2;
+        int top = (height - codeHeight) / 2;
+        return new Rect(left, top, left + codeWidth, top + codeHeight);
+    }
+}
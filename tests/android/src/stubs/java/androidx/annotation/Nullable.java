@@ -0,0 +1,11 @@
+package androidx.annotation;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Compile-time stand-in for the AndroidX annotation (published only on Google Maven).
+ */
+@Retention(RetentionPolicy.CLASS)
+public @interface Nullable {
+}
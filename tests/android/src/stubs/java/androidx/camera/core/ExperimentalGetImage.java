@@ -0,0 +1,11 @@
+package androidx.camera.core;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Compile-time stand-in for the CameraX annotation (published only on Google Maven).
+ */
+@Retention(RetentionPolicy.CLASS)
+public @interface ExperimentalGetImage {
+}
@@ -0,0 +1,8 @@
+package androidx.camera.core;
+
+/**
+ * Compile-time stand-in for the CameraX interface (published only on Google Maven).
+ */
+public interface ImageInfo {
+    int getRotationDegrees();
+}
@@ -0,0 +1,19 @@
+package androidx.camera.core;
+
+import android.media.Image;
+
+/**
+ * Compile-time stand-in for the CameraX interface (published only on Google Maven).
+ */
+public interface ImageProxy extends AutoCloseable {
+    int getWidth();
+
+    int getHeight();
+
+    ImageInfo getImageInfo();
+
+    Image getImage();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,17 @@
+package androidx.camera.lifecycle;
+
+import android.content.Context;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Compile-time stand-in for the CameraX class (published only on Google Maven).
+ */
+public final class ProcessCameraProvider {
+    private ProcessCameraProvider() {
+    }
+
+    public static ListenableFuture<ProcessCameraProvider> getInstance(Context context) {
+        throw new UnsupportedOperationException("CameraX is not available on the JVM");
+    }
+}
@@ -0,0 +1,17 @@
+package androidx.core.content;
+
+import android.content.Context;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Compile-time stand-in for the AndroidX class (published only on Google Maven).
+ */
+public class ContextCompat {
+    protected ContextCompat() {
+    }
+
+    public static Executor getMainExecutor(Context context) {
+        throw new UnsupportedOperationException("The main looper is not available on the JVM");
+    }
+}
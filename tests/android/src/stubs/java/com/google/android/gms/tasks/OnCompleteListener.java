@@ -0,0 +1,8 @@
+package com.google.android.gms.tasks;
+
+/**
+ * Compile-time stand-in for the Play services interface (published only on Google Maven).
+ */
+public interface OnCompleteListener<TResult> {
+    void onComplete(Task<TResult> task);
+}
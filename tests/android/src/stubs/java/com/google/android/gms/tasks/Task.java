@@ -0,0 +1,15 @@
+package com.google.android.gms.tasks;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Compile-time stand-in for the Play services class (published only on Google Maven).
+ */
+public abstract class Task<TResult> {
+    public abstract TResult getResult();
+
+    public Task<TResult> addOnCompleteListener(Executor executor, OnCompleteListener<TResult> listener) {
+        executor.execute(() -> listener.onComplete(this));
+        return this;
+    }
+}
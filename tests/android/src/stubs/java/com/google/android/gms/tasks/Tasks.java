@@ -0,0 +1,16 @@
+package com.google.android.gms.tasks;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Compile-time stand-in for the Play services class (published only on Google Maven).
+ * Only completed tasks are supported.
+ */
+public final class Tasks {
+    private Tasks() {
+    }
+
+    public static <TResult> TResult await(Task<TResult> task) throws ExecutionException, InterruptedException {
+        return task.getResult();
+    }
+}
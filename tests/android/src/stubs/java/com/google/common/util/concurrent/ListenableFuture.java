@@ -0,0 +1,11 @@
+package com.google.common.util.concurrent;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * Compile-time stand-in for the Guava interface.
+ */
+public interface ListenableFuture<V> extends Future<V> {
+    void addListener(Runnable listener, Executor executor);
+}
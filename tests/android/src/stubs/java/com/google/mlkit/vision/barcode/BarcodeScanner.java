@@ -0,0 +1,18 @@
+package com.google.mlkit.vision.barcode;
+
+import com.google.android.gms.tasks.Task;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.mlkit.vision.common.InputImage;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Compile-time stand-in for the MLKit interface (published only on Google Maven).
+ */
+public interface BarcodeScanner extends Closeable {
+    Task<List<Barcode>> process(InputImage image);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,31 @@
+package com.google.mlkit.vision.barcode;
+
+/**
+ * Compile-time stand-in for the MLKit class (published only on Google Maven).
+ */
+public class BarcodeScannerOptions {
+    private final int[] formats;
+
+    private BarcodeScannerOptions(int[] formats) {
+        this.formats = formats;
+    }
+
+    public int[] getFormats() {
+        return formats;
+    }
+
+    public static class Builder {
+        private int[] formats = new int[0];
+
+        public Builder setBarcodeFormats(int format, int... moreFormats) {
+            formats = new int[moreFormats.length + 1];
+            formats[0] = format;
+            System.arraycopy(moreFormats, 0, formats, 1, moreFormats.length);
+            return this;
+        }
+
+        public BarcodeScannerOptions build() {
+            return new BarcodeScannerOptions(formats);
+        }
+    }
+}
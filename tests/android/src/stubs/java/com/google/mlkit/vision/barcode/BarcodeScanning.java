@@ -0,0 +1,13 @@
+package com.google.mlkit.vision.barcode;
+
+/**
+ * Compile-time stand-in for the MLKit class (published only on Google Maven).
+ */
+public class BarcodeScanning {
+    private BarcodeScanning() {
+    }
+
+    public static BarcodeScanner getClient(BarcodeScannerOptions options) {
+        throw new UnsupportedOperationException("MLKit is not available on the JVM");
+    }
+}
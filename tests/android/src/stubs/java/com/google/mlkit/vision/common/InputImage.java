@@ -0,0 +1,34 @@
+package com.google.mlkit.vision.common;
+
+import android.graphics.Bitmap;
+
+/**
+ * Compile-time stand-in for the MLKit class (published only on Google Maven).
+ */
+public class InputImage {
+    public static final int IMAGE_FORMAT_NV21 = 17;
+
+    private final Bitmap bitmap;
+    private final int rotationDegrees;
+
+    private InputImage(Bitmap bitmap, int rotationDegrees) {
+        this.bitmap = bitmap;
+        this.rotationDegrees = rotationDegrees;
+    }
+
+    public static InputImage fromByteArray(byte[] data, int width, int height, int rotationDegrees, int format) {
+        throw new UnsupportedOperationException("Only bitmaps are supported by the stand-in");
+    }
+
+    public static InputImage fromBitmap(Bitmap bitmap, int rotationDegrees) {
+        return new InputImage(bitmap, rotationDegrees);
+    }
+
+    public Bitmap getBitmapInternal() {
+        return bitmap;
+    }
+
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+}
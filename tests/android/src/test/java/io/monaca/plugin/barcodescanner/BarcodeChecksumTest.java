@@ -0,0 +1,50 @@
+package io.monaca.plugin.barcodescanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import org.junit.Test;
+
+public class BarcodeChecksumTest {
+
+    @Test
+    public void validatesGs1CheckDigits() {
+        assertTrue(BarcodeChecksum.isValid(Barcode.FORMAT_EAN_13, "4901234567894"));
+        assertTrue(BarcodeChecksum.isValid(Barcode.FORMAT_EAN_8, "49123456"));
+        assertTrue(BarcodeChecksum.isValid(Barcode.FORMAT_UPC_A, "036000291452"));
+        assertTrue(BarcodeChecksum.isValid(Barcode.FORMAT_ITF, "14901234567891"));
+
+        assertFalse(BarcodeChecksum.isValid(Barcode.FORMAT_EAN_13, "4901234567895"));
+        assertFalse(BarcodeChecksum.isValid(Barcode.FORMAT_EAN_8, "49123457"));
+        assertFalse(BarcodeChecksum.isValid(Barcode.FORMAT_UPC_A, "036000291453"));
+        assertFalse(BarcodeChecksum.isValid(Barcode.FORMAT_ITF, "14901234567892"));
+    }
+
+    @Test
+    public void validatesUpcEByExpandingToUpcA() {
+        // the last of the 6 digits selects where the zeros are inserted
+        assertEquals("042100005264", BarcodeChecksum.expandUpcE("04252614"));
+        assertEquals("012300000454", BarcodeChecksum.expandUpcE("01234534"));
+        assertEquals("012340000059", BarcodeChecksum.expandUpcE("01234549"));
+        assertEquals("012345000058", BarcodeChecksum.expandUpcE("01234558"));
+        assertNull(BarcodeChecksum.expandUpcE("21234558"));
+
+        assertTrue(BarcodeChecksum.isValid(Barcode.FORMAT_UPC_E, "04252614"));
+        assertFalse(BarcodeChecksum.isValid(Barcode.FORMAT_UPC_E, "04252615"));
+    }
+
+    @Test
+    public void rejectsUnsupportedValues() {
+        // wrong length, non digits, ITF other than ITF-14 and formats without check digit
+        assertFalse(BarcodeChecksum.isSupported(Barcode.FORMAT_EAN_13, "490123456789"));
+        assertFalse(BarcodeChecksum.isSupported(Barcode.FORMAT_EAN_13, "490123456789X"));
+        assertFalse(BarcodeChecksum.isSupported(Barcode.FORMAT_ITF, "123457"));
+        assertFalse(BarcodeChecksum.isSupported(Barcode.FORMAT_QR_CODE, "4901234567894"));
+        assertFalse(BarcodeChecksum.isSupported(Barcode.FORMAT_EAN_8, null));
+        assertFalse(BarcodeChecksum.isValid(Barcode.FORMAT_CODE_128, "4901234567894"));
+    }
+}
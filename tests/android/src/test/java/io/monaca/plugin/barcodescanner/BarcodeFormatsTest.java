@@ -0,0 +1,61 @@
+package io.monaca.plugin.barcodescanner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+public class BarcodeFormatsTest {
+
+    @Test
+    public void namesAreCaseInsensitive() {
+        assertEquals(Barcode.FORMAT_QR_CODE, BarcodeFormats.fromName("qr_code"));
+        assertEquals(Barcode.FORMAT_EAN_13, BarcodeFormats.fromName(" EAN_13 "));
+    }
+
+    @Test
+    public void code128AcceptsBothNames() {
+        assertEquals(Barcode.FORMAT_CODE_128, BarcodeFormats.fromName("128"));
+        assertEquals(Barcode.FORMAT_CODE_128, BarcodeFormats.fromName("CODE_128"));
+        assertEquals(Barcode.FORMAT_ITF, BarcodeFormats.fromName("ITF_14"));
+        // the plugin name is kept for the results
+        assertEquals("128", BarcodeFormats.toName(Barcode.FORMAT_CODE_128));
+    }
+
+    @Test
+    public void unknownNames() {
+        assertEquals(Barcode.FORMAT_UNKNOWN, BarcodeFormats.fromName("MAXICODE"));
+        assertEquals(Barcode.FORMAT_UNKNOWN, BarcodeFormats.fromName(null));
+        assertEquals(BarcodeFormats.UNKNOWN, BarcodeFormats.toName(-1));
+    }
+
+    @Test
+    public void conversionDoesNotDependOnLocale() {
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            assertEquals(Barcode.FORMAT_ITF, BarcodeFormats.fromName("itf"));
+            assertEquals(Barcode.FORMAT_PDF417, BarcodeFormats.fromName("pdf417"));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void fromNamesSkipsUnknownAndDuplicates() {
+        assertArrayEquals(new int[] {Barcode.FORMAT_CODE_128, Barcode.FORMAT_QR_CODE},
+                BarcodeFormats.fromNames(new String[] {"128", "FOO", "CODE_128", "QR_CODE"}));
+    }
+
+    @Test
+    public void fromNamesFallsBackToDefaults() {
+        assertSame(BarcodeFormats.DEFAULT_FORMATS, BarcodeFormats.fromNames(null));
+        assertSame(BarcodeFormats.DEFAULT_FORMATS, BarcodeFormats.fromNames(new String[] {"FOO", null}));
+        assertSame(BarcodeFormats.DEFAULT_FORMATS, BarcodeFormats.fromNames(new String[0]));
+    }
+}
@@ -0,0 +1,175 @@
+package io.monaca.plugin.barcodescanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchImageScannerTest {
+
+    private static final int MAX_PIXELS = 4_000_000;
+
+    private static String[] uris(int count) {
+        String[] uris = new String[count];
+        for (int i = 0; i < count; i ++) {
+            uris[i] = "file:///" + i + ".jpg";
+        }
+        return uris;
+    }
+
+    private static ImageScanner.Result emptyResult() {
+        return new ImageScanner.Result(Collections.emptyList(), 100, 100, 1);
+    }
+
+    /** Records the calls of the listener and checks that nothing is reported after onFinished */
+    private static final class Recorder implements BatchImageScanner.Listener {
+        final List<Integer> completedCounts = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger finishedCalls = new AtomicInteger();
+        final CountDownLatch finished = new CountDownLatch(1);
+        volatile boolean reportedAfterFinish = false;
+        volatile boolean cancelled;
+        volatile int completed;
+
+        @Override
+        public void onImage(int index, String uri, ImageScanner.Result result, String error, int completed) {
+            if (finishedCalls.get() > 0) {
+                reportedAfterFinish = true;
+            }
+            completedCounts.add(completed);
+        }
+
+        @Override
+        public void onFinished(int completed, boolean cancelled, long duration) {
+            this.completed = completed;
+            this.cancelled = cancelled;
+            finishedCalls.incrementAndGet();
+            finished.countDown();
+        }
+    }
+
+    @Test
+    public void reportsEveryImageThenFinishesOnce() throws Exception {
+        Recorder recorder = new Recorder();
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger closed = new AtomicInteger();
+        BatchImageScanner batch = new BatchImageScanner(uris(20), MAX_PIXELS, 4, 0, recorder, () -> {
+            created.incrementAndGet();
+            return new BatchImageScanner.Worker() {
+                @Override
+                public ImageScanner.Result scan(String uri, int maxPixels) {
+                    return uri.startsWith("file:///1") ? null : emptyResult();
+                }
+
+                @Override
+                public void close() {
+                    closed.incrementAndGet();
+                }
+            };
+        });
+        batch.start();
+
+        assertTrue(recorder.finished.await(10, TimeUnit.SECONDS));
+        assertFalse(recorder.cancelled);
+        assertEquals(20, recorder.completed);
+        // the progress is counted under the lock, so the counts are reported in order
+        for (int i = 0; i < 20; i ++) {
+            assertEquals(i + 1, (int) recorder.completedCounts.get(i));
+        }
+        assertTrue(created.get() <= 4);
+        // the last worker is closed after it is returned
+        Thread.sleep(100);
+        assertEquals(created.get(), closed.get());
+    }
+
+    @Test
+    public void emptyBatchFinishesImmediately() {
+        Recorder recorder = new Recorder();
+        new BatchImageScanner(new String[0], MAX_PIXELS, 2, 0, recorder, () -> {
+            throw new AssertionError("no worker is needed");
+        }).start();
+
+        assertEquals(1, recorder.finishedCalls.get());
+        assertEquals(0, recorder.completed);
+    }
+
+    @Test
+    public void nothingIsReportedAfterCancel() throws Exception {
+        for (int round = 0; round < 50; round ++) {
+            Recorder recorder = new Recorder();
+            CountDownLatch scanning = new CountDownLatch(1);
+            BatchImageScanner batch = new BatchImageScanner(uris(1000), 1_000_000, 2, 0, recorder,
+                    () -> new BatchImageScanner.Worker() {
+                        @Override
+                        public ImageScanner.Result scan(String uri, int maxPixels) {
+                            scanning.countDown();
+                            // finishes regardless of the interruption, racing with cancel
+                            long end = System.nanoTime() + 200_000;
+                            while (System.nanoTime() < end) {
+                                Thread.onSpinWait();
+                            }
+                            return emptyResult();
+                        }
+
+                        @Override
+                        public void close() {
+                        }
+                    });
+            batch.start();
+            assertTrue(scanning.await(10, TimeUnit.SECONDS));
+            batch.cancel();
+            int reported = recorder.completedCounts.size();
+
+            assertEquals(1, recorder.finishedCalls.get());
+            assertTrue(recorder.cancelled);
+            assertEquals(reported, recorder.completed);
+            // a second cancel does not finish again
+            batch.cancel();
+            Thread.sleep(5);
+            assertEquals(1, recorder.finishedCalls.get());
+            assertEquals(reported, recorder.completedCounts.size());
+            assertFalse(recorder.reportedAfterFinish);
+        }
+    }
+
+    @Test
+    public void decodeLimitIsCoveredByReservation() throws Exception {
+        Recorder recorder = new Recorder();
+        // 1M pixels of budget is smaller than the max pixels
+        long budgetBytes = 4_000_000;
+        AtomicInteger inUse = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<Integer> limits = Collections.synchronizedList(new ArrayList<>());
+        BatchImageScanner batch = new BatchImageScanner(uris(16), 16_000_000, 4, budgetBytes, recorder,
+                () -> new BatchImageScanner.Worker() {
+                    @Override
+                    public ImageScanner.Result scan(String uri, int maxPixels) throws InterruptedException {
+                        limits.add(maxPixels);
+                        int pixels = inUse.addAndGet(maxPixels);
+                        peak.accumulateAndGet(pixels, Math::max);
+                        Thread.sleep(2);
+                        inUse.addAndGet(-maxPixels);
+                        return emptyResult();
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                });
+        batch.start();
+
+        assertTrue(recorder.finished.await(10, TimeUnit.SECONDS));
+        assertEquals(1_000_000, batch.getPixelsPerImage());
+        for (int limit : limits) {
+            assertEquals(1_000_000, limit);
+        }
+        assertTrue(peak.get() <= 1_000_000);
+    }
+}
@@ -0,0 +1,137 @@
+package io.monaca.plugin.barcodescanner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Rect;
+import android.media.Image.Plane;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class BitmapUtilsTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    @Test
+    public void unpackPlaneMatchesReferenceForEveryLayout() {
+        for (SyntheticYuv.Layout layout : SyntheticYuv.Layout.values()) {
+            Plane[] planes = SyntheticYuv.create(WIDTH, HEIGHT, layout, 2);
+            for (int i = 0; i < planes.length; i++) {
+                Plane plane = planes[i];
+                int numRow = i == 0 ? HEIGHT : HEIGHT / 2;
+                int numCol = i == 0 ? WIDTH : WIDTH / 2;
+                int outPixelStride = i == 0 ? 1 : 2;
+                byte[] expected = new byte[WIDTH * HEIGHT + 1];
+                byte[] actual = new byte[WIDTH * HEIGHT + 1];
+                referenceUnpackPlane(plane, numCol, numRow, expected, 1, outPixelStride);
+
+                BitmapUtils.unpackPlane(plane.getBuffer(), plane.getRowStride(), plane.getPixelStride(), 0, 0,
+                        numCol, numRow, actual, 1, outPixelStride);
+
+                assertArrayEquals(layout + " plane " + i, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void unpackPlaneCropsSubRectangle() {
+        Plane plane = SyntheticYuv.create(WIDTH, HEIGHT, SyntheticYuv.Layout.PADDED_SEMI_PLANAR, 3)[1];
+        ByteBuffer buffer = plane.getBuffer();
+        int left = 7;
+        int top = 5;
+        int numCol = 50;
+        int numRow = 30;
+        byte[] out = new byte[numCol * numRow * 2];
+
+        BitmapUtils.unpackPlane(buffer, plane.getRowStride(), 2, left, top, numCol, numRow, out, 1, 2);
+
+        for (int row = 0; row < numRow; row++) {
+            for (int col = 0; col < numCol; col++) {
+                int inputPos = (top + row) * plane.getRowStride() + (left + col) * 2;
+                assertEquals(buffer.get(inputPos), out[1 + (row * numCol + col) * 2]);
+            }
+        }
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void unpackPlaneReadsLastRowWithoutPadding() {
+        Plane plane = SyntheticYuv.create(WIDTH, HEIGHT, SyntheticYuv.Layout.PADDED_PLANAR, 4)[0];
+        ByteBuffer buffer = plane.getBuffer();
+        byte[] out = new byte[WIDTH];
+
+        BitmapUtils.unpackPlane(buffer, plane.getRowStride(), 1, 0, HEIGHT - 1, WIDTH, 1, out, 0, 1);
+
+        assertEquals(buffer.get(buffer.limit() - 1), out[WIDTH - 1]);
+    }
+
+    @Test
+    public void convertsEveryLayoutToNV21() {
+        for (SyntheticYuv.Layout layout : SyntheticYuv.Layout.values()) {
+            Plane[] planes = SyntheticYuv.create(WIDTH, HEIGHT, layout, 5);
+
+            byte[] full = BitmapUtils.yuv420ThreePlanesToNV21(planes, WIDTH, HEIGHT, new Rect(0, 0, WIDTH, HEIGHT));
+            assertArrayEquals(layout.name(), SyntheticYuv.toNV21(planes, 0, 0, WIDTH, HEIGHT), full);
+
+            // odd coordinates are aligned inwards: (12, 8) - (210, 180)
+            byte[] crop = BitmapUtils.yuv420ThreePlanesToNV21(planes, WIDTH, HEIGHT, new Rect(11, 7, 211, 181));
+            assertArrayEquals(layout.name(), SyntheticYuv.toNV21(planes, 12, 8, 198, 172), crop);
+        }
+    }
+
+    @Test
+    public void convertsEveryLayoutToLuma() {
+        for (SyntheticYuv.Layout layout : SyntheticYuv.Layout.values()) {
+            Plane[] planes = SyntheticYuv.create(WIDTH, HEIGHT, layout, 8);
+
+            // same aligned crop as the NV21 conversion, without the chroma
+            byte[] luma = BitmapUtils.yuv420ToLuma(planes, WIDTH, HEIGHT, new Rect(11, 7, 211, 181));
+            byte[] nv21 = SyntheticYuv.toNV21(planes, 12, 8, 198, 172);
+            assertArrayEquals(layout.name(), Arrays.copyOf(nv21, 198 * 172), luma);
+        }
+        Plane[] planes = SyntheticYuv.create(WIDTH, HEIGHT, SyntheticYuv.Layout.PADDED_PLANAR, 9);
+        assertNull(BitmapUtils.yuv420ToLuma(planes, WIDTH, HEIGHT, new Rect(0, 0, WIDTH + 2, HEIGHT)));
+    }
+
+    @Test
+    public void rejectsCropOutsideOfImage() {
+        Plane[] planes = SyntheticYuv.create(WIDTH, HEIGHT, SyntheticYuv.Layout.NV21, 6);
+
+        assertNull(BitmapUtils.yuv420ThreePlanesToNV21(planes, WIDTH, HEIGHT, new Rect(0, 0, WIDTH + 2, HEIGHT)));
+        assertNull(BitmapUtils.yuv420ThreePlanesToNV21(planes, WIDTH, HEIGHT, new Rect(10, 10, 11, 11)));
+    }
+
+    @Test
+    public void detectsNV21Layout() {
+        Plane[] nv21 = SyntheticYuv.create(WIDTH, HEIGHT, SyntheticYuv.Layout.NV21, 7);
+        Plane[] padded = SyntheticYuv.create(WIDTH, HEIGHT, SyntheticYuv.Layout.PADDED_SEMI_PLANAR, 7);
+
+        assertTrue(BitmapUtils.areUVPlanesNV21(nv21[1].getBuffer(), nv21[2].getBuffer(), WIDTH, HEIGHT));
+        assertFalse(BitmapUtils.areUVPlanesNV21(padded[1].getBuffer(), padded[2].getBuffer(), WIDTH, HEIGHT));
+        assertEquals(0, nv21[2].getBuffer().position());
+    }
+
+    /** Per-byte implementation of unpackPlane before the bulk row copies */
+    private static void referenceUnpackPlane(Plane plane, int numCol, int numRow, byte[] out, int offset,
+            int pixelStride) {
+        ByteBuffer buffer = plane.getBuffer();
+        int outputPos = offset;
+        int rowStart = 0;
+        for (int row = 0; row < numRow; row++) {
+            int inputPos = rowStart;
+            for (int col = 0; col < numCol; col++) {
+                out[outputPos] = buffer.get(inputPos);
+                outputPos += pixelStride;
+                inputPos += plane.getPixelStride();
+            }
+            rowStart += plane.getRowStride();
+        }
+    }
+}
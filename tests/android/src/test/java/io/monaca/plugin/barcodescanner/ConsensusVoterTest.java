@@ -0,0 +1,87 @@
+package io.monaca.plugin.barcodescanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import org.junit.Test;
+
+public class ConsensusVoterTest {
+
+    private static DetectedCode code(int format, String value) {
+        return new DetectedCode(format, value, value, null, Barcode.TYPE_TEXT, null, null);
+    }
+
+    @Test
+    public void isEnabledWithVotesOrChecksum() {
+        assertFalse(new ConsensusVoter(1, 2, false).isEnabled());
+        assertTrue(new ConsensusVoter(2, 4, false).isEnabled());
+        assertTrue(new ConsensusVoter(1, 2, true).isEnabled());
+    }
+
+    @Test
+    public void confirmsAfterRequiredVotes() {
+        ConsensusVoter voter = new ConsensusVoter(3, 5, false);
+        DetectedCode code = code(Barcode.FORMAT_QR_CODE, "hello");
+
+        assertNull(voter.vote(code));
+        assertNull(voter.vote(null));
+        assertNull(voter.vote(code(Barcode.FORMAT_QR_CODE, "hellp")));
+        assertNull(voter.vote(code));
+        ConsensusVoter.Confirmation confirmation = voter.vote(code);
+
+        assertNotNull(confirmation);
+        assertSame(code, confirmation.getCode());
+        assertEquals(3, confirmation.getVotes());
+        assertEquals(0.75f, confirmation.getConfidence(), 0.001f);
+    }
+
+    @Test
+    public void expiresVotesOutsideOfWindow() {
+        ConsensusVoter voter = new ConsensusVoter(2, 3, false);
+        DetectedCode code = code(Barcode.FORMAT_QR_CODE, "hello");
+
+        assertNull(voter.vote(code));
+        assertNull(voter.vote(null));
+        assertNull(voter.vote(null));
+        // the first read has left the window of 3 frames
+        assertNull(voter.vote(code));
+        assertNotNull(voter.vote(code));
+    }
+
+    @Test
+    public void sameValueOfOtherFormatIsOtherCandidate() {
+        ConsensusVoter voter = new ConsensusVoter(2, 4, false);
+
+        assertNull(voter.vote(code(Barcode.FORMAT_EAN_13, "4901234567894")));
+        assertNull(voter.vote(code(Barcode.FORMAT_CODE_128, "4901234567894")));
+    }
+
+    @Test
+    public void confirmsValidChecksumImmediately() {
+        ConsensusVoter voter = new ConsensusVoter(3, 6, true);
+
+        assertNull(voter.vote(code(Barcode.FORMAT_EAN_13, "4901234567895")));
+        ConsensusVoter.Confirmation confirmation = voter.vote(code(Barcode.FORMAT_EAN_13, "4901234567894"));
+
+        assertNotNull(confirmation);
+        assertEquals(1, confirmation.getVotes());
+        assertEquals(0.5f, confirmation.getConfidence(), 0.001f);
+    }
+
+    @Test
+    public void resetClearsVotes() {
+        ConsensusVoter voter = new ConsensusVoter(2, 4, false);
+        DetectedCode code = code(Barcode.FORMAT_QR_CODE, "hello");
+
+        voter.vote(code);
+        voter.reset();
+
+        assertNull(voter.vote(code));
+    }
+}
@@ -0,0 +1,83 @@
+package io.monaca.plugin.barcodescanner;
+
+import static org.junit.Assert.assertEquals;
+
+import android.graphics.Rect;
+
+import org.junit.Test;
+
+public class CropGeometryTest {
+
+    @Test
+    public void rotatesRectToUpright() {
+        Rect rect = new Rect(10, 20, 110, 70);
+
+        assertEquals(new Rect(10, 20, 110, 70), CropGeometry.rotateRect(rect, 640, 480, 0));
+        assertEquals(new Rect(410, 10, 460, 110), CropGeometry.rotateRect(rect, 640, 480, 90));
+        assertEquals(new Rect(530, 410, 630, 460), CropGeometry.rotateRect(rect, 640, 480, 180));
+        assertEquals(new Rect(20, 530, 70, 630), CropGeometry.rotateRect(rect, 640, 480, 270));
+    }
+
+    @Test
+    public void rotationIsReversible() {
+        Rect rect = new Rect(10, 20, 110, 70);
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            boolean portrait = rotation % 180 != 0;
+            Rect upright = CropGeometry.rotateRect(rect, 640, 480, rotation);
+
+            assertEquals(rect, CropGeometry.rotateRect(upright, portrait ? 480 : 640, portrait ? 640 : 480,
+                    360 - rotation));
+        }
+    }
+
+    @Test
+    public void fillCenterCropsLongerSide() {
+        // 4:3 image on a 20:9 portrait preview: left and right are cut
+        assertEquals(new Rect(324, 0, 756, 960),
+                CropGeometry.getFillCenterRect(new Rect(0, 0, 1080, 960), 1080, 2400));
+        // 3:4 image on a square preview: top and bottom are cut
+        assertEquals(new Rect(10, 90, 490, 570),
+                CropGeometry.getFillCenterRect(new Rect(10, 10, 490, 650), 500, 500));
+    }
+
+    @Test
+    public void mapsCenteredAreaOfPortraitPreview() {
+        // 640x480 sensor image rotated by 90 = 480x640 upright on a 1080x1440 preview (same aspect ratio)
+        CropGeometry.Snapshot snapshot = CropGeometry.getSnapshot(1080, 1440, 270, 470, 540, 500,
+                640, 480, 90, null);
+
+        // preview points to image pixels: x 4/9
+        assertEquals(new Rect(120, 209, 360, 431), snapshot.getTrimRect());
+        assertEquals(new Rect(210, 120, 430, 360), snapshot.getSensorCropRect());
+        assertEquals(new Rect(120, 210, 360, 430), snapshot.getUprightCropRect());
+    }
+
+    @Test
+    public void mapsAreaIntoViewportCrop() {
+        // viewport crop of the 640x480 image for a 1:1 preview of 1000x1000
+        Rect viewport = new Rect(80, 0, 560, 480);
+        CropGeometry.Snapshot snapshot = CropGeometry.getSnapshot(1000, 1000, 0, 0, 500, 500,
+                640, 480, 0, viewport);
+
+        assertEquals(new Rect(80, 0, 320, 240), snapshot.getTrimRect());
+        assertEquals(240, snapshot.getTrimWidth());
+        assertEquals(240, snapshot.getTrimHeight());
+    }
+
+    @Test
+    public void mapsAreaOfWidePreviewWithoutViewport() {
+        // 4:3 image on a 20:9 portrait preview: the visible part is 288x640 in the middle
+        CropGeometry.Snapshot snapshot = CropGeometry.getSnapshot(1080, 2400, 0, 1200, 1080, 1200,
+                640, 480, 90, null);
+
+        assertEquals(new Rect(96, 320, 384, 640), snapshot.getTrimRect());
+    }
+
+    @Test
+    public void areaOutsideOfPreviewFallsBackToWholeImage() {
+        CropGeometry.Snapshot snapshot = CropGeometry.getSnapshot(1000, 1000, 2000, 2000, 100, 100,
+                640, 480, 0, null);
+
+        assertEquals(new Rect(0, 0, 640, 480), snapshot.getTrimRect());
+    }
+}
@@ -0,0 +1,68 @@
+package io.monaca.plugin.barcodescanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DetectionCacheTest {
+
+    @Test
+    public void suppressesDuplicatesWithinWindow() {
+        DetectionCache cache = new DetectionCache(1000, 10);
+
+        assertTrue(cache.add("a", 0));
+        assertFalse(cache.add("a", 500));
+        assertTrue(cache.add("b", 600));
+    }
+
+    @Test
+    public void sightingExtendsWindow() {
+        DetectionCache cache = new DetectionCache(1000, 10);
+
+        assertTrue(cache.add("a", 0));
+        assertFalse(cache.add("a", 900));
+        // 1800ms after the first sighting, but only 900ms after the last
+        assertFalse(cache.add("a", 1800));
+        assertTrue(cache.add("a", 2800));
+    }
+
+    @Test
+    public void evictsLeastRecentlySeenOverCapacity() {
+        DetectionCache cache = new DetectionCache(10_000, 2);
+
+        cache.add("a", 0);
+        cache.add("b", 1);
+        cache.add("a", 2);
+        cache.add("c", 3);
+
+        assertFalse(cache.add("a", 4));
+        assertTrue(cache.add("b", 5));
+    }
+
+    @Test
+    public void disabledCacheReportsEveryCode() {
+        DetectionCache cache = new DetectionCache(0, 10);
+
+        assertFalse(cache.isEnabled());
+        assertTrue(cache.add("a", 0));
+        assertTrue(cache.add("a", 1));
+    }
+
+    @Test
+    public void clearForgetsCodes() {
+        DetectionCache cache = new DetectionCache(1000, 10);
+        cache.add("a", 0);
+        cache.clear();
+
+        assertTrue(cache.add("a", 1));
+    }
+
+    @Test
+    public void keyIncludesFormat() {
+        assertEquals("256:hello", DetectionCache.getKey(256, "hello"));
+        assertNotEquals(DetectionCache.getKey(1, "123"), DetectionCache.getKey(32, "123"));
+    }
+}
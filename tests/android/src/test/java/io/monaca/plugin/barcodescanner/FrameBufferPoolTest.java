@@ -0,0 +1,77 @@
+package io.monaca.plugin.barcodescanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import android.graphics.Rect;
+import android.media.Image.Plane;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class FrameBufferPoolTest {
+
+    @Before
+    public void setUp() {
+        FrameBufferPool.clear();
+    }
+
+    @Test
+    public void reusesReleasedBufferOfSameSize() {
+        byte[] first = FrameBufferPool.acquire(100);
+        FrameBufferPool.release(first);
+
+        assertSame(first, FrameBufferPool.acquire(100));
+        assertNotSame(first, FrameBufferPool.acquire(100));
+    }
+
+    @Test
+    public void steadyStateConversionDoesNotAllocate() {
+        for (SyntheticYuv.Layout layout : SyntheticYuv.Layout.values()) {
+            Plane[] planes = SyntheticYuv.create(640, 480, layout, 1);
+            Rect crop = new Rect(80, 60, 560, 420);
+
+            // the first frame fills the pool
+            FrameBufferPool.release(BitmapUtils.yuv420ThreePlanesToNV21(planes, 640, 480, crop));
+            long allocations = FrameBufferPool.getAllocationCount();
+
+            for (int i = 0; i < 100; i++) {
+                byte[] nv21 = BitmapUtils.yuv420ThreePlanesToNV21(planes, 640, 480, crop);
+                FrameBufferPool.release(nv21);
+            }
+            assertEquals(layout.name(), allocations, FrameBufferPool.getAllocationCount());
+        }
+    }
+
+    @Test
+    public void steadyStateStreamsDoNotAllocate() {
+        FrameBufferPool.releaseStream(FrameBufferPool.acquireStream());
+        long allocations = FrameBufferPool.getAllocationCount();
+
+        for (int i = 0; i < 100; i++) {
+            FrameBufferPool.ReusableOutputStream stream = FrameBufferPool.acquireStream();
+            stream.write(new byte[16], 0, 16);
+            FrameBufferPool.releaseStream(stream);
+        }
+        assertEquals(allocations, FrameBufferPool.getAllocationCount());
+        assertEquals(0, FrameBufferPool.acquireStream().size());
+    }
+
+    @Test
+    public void keepsLimitedNumberOfBuffers() {
+        byte[][] acquired = new byte[6][];
+        for (int i = 0; i < acquired.length; i++) {
+            acquired[i] = FrameBufferPool.acquire(10);
+        }
+        for (byte[] buffer : acquired) {
+            FrameBufferPool.release(buffer);
+        }
+        long allocations = FrameBufferPool.getAllocationCount();
+        for (int i = 0; i < acquired.length; i++) {
+            FrameBufferPool.acquire(10);
+        }
+        // 4 buffers are kept, the other 2 have to be allocated again
+        assertEquals(allocations + 2, FrameBufferPool.getAllocationCount());
+    }
+}
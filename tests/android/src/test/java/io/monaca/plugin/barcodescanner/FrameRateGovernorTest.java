@@ -0,0 +1,65 @@
+package io.monaca.plugin.barcodescanner;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class FrameRateGovernorTest {
+
+    private static final long NOW = 100_000;
+
+    @Test
+    public void performanceProfileIsNotLimited() {
+        FrameRateGovernor governor = new FrameRateGovernor(FrameRateGovernor.PROFILE_PERFORMANCE, 0);
+        // slow detection does not limit the performance profile
+        governor.onDetectionLatency(200);
+
+        assertEquals(0, governor.getTargetFps(NOW, 0), 0.001f);
+        assertEquals(0, governor.getTargetFps(NOW, 1), 0.001f);
+    }
+
+    @Test
+    public void performanceProfileKeepsMaxFps() {
+        FrameRateGovernor governor = new FrameRateGovernor(FrameRateGovernor.PROFILE_PERFORMANCE, 24);
+        governor.onDetectionLatency(200);
+
+        assertEquals(24, governor.getTargetFps(NOW, 0), 0.001f);
+    }
+
+    @Test
+    public void balancedProfileIsLimitedToDetectionLatency() {
+        FrameRateGovernor governor = new FrameRateGovernor(FrameRateGovernor.PROFILE_BALANCED, 0);
+        assertEquals(5, governor.getTargetFps(NOW, 0), 0.001f);
+
+        governor.onDetectionLatency(500);
+        assertEquals(2, governor.getTargetFps(NOW, 0), 0.001f);
+    }
+
+    @Test
+    public void candidateRampsUpToMaxFps() {
+        FrameRateGovernor governor = new FrameRateGovernor(FrameRateGovernor.PROFILE_SAVER, 0);
+        governor.onDetectionLatency(500);
+        governor.onCandidate(NOW);
+
+        assertEquals(10, governor.getTargetFps(NOW + 1000, 0.9), 0.001f);
+        // back to the idle rate after the hold time
+        assertEquals(2, governor.getTargetFps(NOW + 3000, 0), 0.001f);
+    }
+
+    @Test
+    public void busyCpuHalvesRate() {
+        FrameRateGovernor governor = new FrameRateGovernor(FrameRateGovernor.PROFILE_BALANCED, 0);
+
+        assertEquals(2.5f, governor.getTargetFps(NOW, 0.9), 0.001f);
+    }
+
+    @Test
+    public void latencyIsSmoothed() {
+        FrameRateGovernor governor = new FrameRateGovernor(FrameRateGovernor.PROFILE_BALANCED, 30);
+        governor.onDetectionLatency(300);
+        governor.onDetectionLatency(400);
+
+        // 300 + (400 - 300) * 0.2 = 320ms
+        assertEquals(1000f / 320, governor.getTargetFps(NOW, 0), 0.001f);
+    }
+}
@@ -0,0 +1,47 @@
+package io.monaca.plugin.barcodescanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ImageSamplingTest {
+
+    /** Bytes per pixel of the decoded bitmap (ARGB_8888) */
+    private static final int BYTES_PER_PIXEL = 4;
+    /** ImageScanner.DEFAULT_MAX_PIXELS (ImageScanner depends on the MLKit runtime) */
+    private static final int DEFAULT_MAX_PIXELS = 4_000_000;
+    /** Memory ceiling of a decoded image with the default max pixels */
+    private static final long MEMORY_CEILING = 16L * 1024 * 1024;
+
+    /** Sizes of 50 MP (and larger) camera images in both orientations, including odd sizes */
+    private static final int[][] LARGE_IMAGES = {
+            {8160, 6120}, {6120, 8160}, {8192, 6144}, {8161, 6121}, {12000, 9000}, {20000, 3}
+    };
+
+    @Test
+    public void largeImagesStayUnderMemoryCeiling() {
+        for (int[] size : LARGE_IMAGES) {
+            int sampleSize = BitmapUtils.getSampleSize(size[0], size[1], DEFAULT_MAX_PIXELS);
+            long bytes = BitmapUtils.getSampledPixels(size[0], size[1], sampleSize) * BYTES_PER_PIXEL;
+
+            assertTrue(size[0] + "x" + size[1] + ": " + bytes + " bytes", bytes <= MEMORY_CEILING);
+        }
+    }
+
+    @Test
+    public void sampleSizeIsSmallestPowerOfTwo() {
+        assertEquals(1, BitmapUtils.getSampleSize(2000, 2000, 4_000_000));
+        assertEquals(2, BitmapUtils.getSampleSize(2001, 2000, 4_000_000));
+        assertEquals(4, BitmapUtils.getSampleSize(8160, 6120, 4_000_000));
+        // 4080x3060 = 12.5 MP still exceeds, 2040x1530 fits
+        assertEquals(4, BitmapUtils.getSampleSize(8160, 6120, 12_000_000));
+    }
+
+    @Test
+    public void sampledSizeIsRoundedUp() {
+        assertEquals(4081L * 3061, BitmapUtils.getSampledPixels(8161, 6121, 2));
+        // 8001x4001 with floor division would give 2000x1000, but the decoder produces 2001x1001
+        assertEquals(8, BitmapUtils.getSampleSize(8001, 4001, 2_000_000));
+    }
+}
@@ -0,0 +1,93 @@
+package io.monaca.plugin.barcodescanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    /** Buckets are 4 per power of two, so a value is off by at most 1/8 of it */
+    private static void assertApproximately(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected / 8 + 1);
+    }
+
+    @Test
+    public void emptyHistogramReturnsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void percentilesOfUniformValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 100);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(50050, histogram.getMean());
+        assertApproximately(50000, histogram.getPercentile(50));
+        assertApproximately(90000, histogram.getPercentile(90));
+        assertApproximately(99000, histogram.getPercentile(99));
+        assertEquals(100000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void percentilesStayWithinRecordedRange() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1234);
+
+        assertEquals(1234, histogram.getPercentile(0));
+        assertEquals(1234, histogram.getPercentile(50));
+        assertEquals(1234, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void recordsNanosAndIgnoresNegative() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(2_000_000);
+        histogram.recordNanos(-1);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(2000, histogram.getMean());
+    }
+
+    @Test
+    public void hugeValuesGoToLastBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE / 2);
+        histogram.record(3);
+
+        assertEquals(3, histogram.getPercentile(50));
+        assertEquals(Long.MAX_VALUE / 2, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void convertsToMillis() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1500);
+        histogram.record(2500);
+
+        JSONObject json = histogram.toJSON();
+        assertEquals(2, json.getLong("count"));
+        assertEquals(2.0, json.getDouble("mean"), 0.001);
+        assertEquals(1.5, json.getDouble("min"), 0.001);
+        assertEquals(2.5, json.getDouble("max"), 0.001);
+    }
+
+    @Test
+    public void resetClearsValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0.0, histogram.toJSON().optDouble("min"), 0.001);
+    }
+}
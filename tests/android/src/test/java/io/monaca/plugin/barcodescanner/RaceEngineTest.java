@@ -0,0 +1,159 @@
+package io.monaca.plugin.barcodescanner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Rect;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class RaceEngineTest {
+
+    /** Engine completing only when told to */
+    private static final class ManualEngine implements DetectionEngine {
+        final List<DetectionFrame> frames = new ArrayList<>();
+        final List<Callback> callbacks = new ArrayList<>();
+
+        @Override
+        public void detect(DetectionFrame frame, Callback callback) {
+            frames.add(frame);
+            callbacks.add(callback);
+        }
+
+        void complete(int index, List<DetectedCode> codes) {
+            callbacks.get(index).onCandidates(Collections.emptyList());
+            callbacks.get(index).onSuccess(codes);
+            callbacks.get(index).onComplete();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /** Records the calls in order */
+    private static final class Recorder implements DetectionEngine.Callback {
+        final List<String> events = new ArrayList<>();
+        List<DetectedCode> codes;
+
+        @Override
+        public void onCandidates(List<CodeCandidate> candidates) {
+            events.add("candidates");
+        }
+
+        @Override
+        public void onSuccess(List<DetectedCode> codes) {
+            this.codes = codes;
+            events.add(codes.isEmpty() ? "empty" : "success");
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            events.add("failure");
+        }
+
+        @Override
+        public void onComplete() {
+            events.add("complete");
+        }
+    }
+
+    private static DetectionFrame frame() {
+        byte[] nv21 = new byte[4 * 2 * 3 / 2];
+        for (int i = 0; i < nv21.length; i ++) {
+            nv21[i] = (byte) i;
+        }
+        return DetectionFrame.fromNV21(nv21, 4, 2, 0, new Rect(0, 0, 4, 2));
+    }
+
+    private static List<DetectedCode> code() {
+        return Collections.singletonList(new DetectedCode(Barcode.FORMAT_QR_CODE, "a", "a", null,
+                Barcode.TYPE_TEXT, null, null));
+    }
+
+    @Test
+    public void secondEngineWorksOnCopy() {
+        ManualEngine first = new ManualEngine();
+        ManualEngine second = new ManualEngine();
+        DetectionFrame frame = frame();
+
+        new RaceEngine(first, second).detect(frame, new Recorder());
+
+        assertSame(frame, first.frames.get(0));
+        assertNotSame(frame.getNV21(), second.frames.get(0).getNV21());
+        assertArrayEquals(frame.getNV21(), second.frames.get(0).getNV21());
+    }
+
+    @Test
+    public void frameIsReleasedBeforeSlowerEngineReports() {
+        ManualEngine first = new ManualEngine();
+        ManualEngine second = new ManualEngine();
+        Recorder recorder = new Recorder();
+
+        new RaceEngine(first, second).detect(frame(), recorder);
+        first.complete(0, Collections.emptyList());
+        assertEquals(Arrays.asList("candidates", "complete"), recorder.events);
+
+        second.complete(0, code());
+        assertEquals(Arrays.asList("candidates", "complete", "candidates", "success"), recorder.events);
+    }
+
+    @Test
+    public void winnerIsReportedOnce() {
+        ManualEngine first = new ManualEngine();
+        ManualEngine second = new ManualEngine();
+        Recorder recorder = new Recorder();
+
+        new RaceEngine(first, second).detect(frame(), recorder);
+        second.complete(0, code());
+        first.complete(0, code());
+
+        assertEquals(Arrays.asList("candidates", "success", "candidates", "complete"), recorder.events);
+    }
+
+    @Test
+    public void emptyResultWaitsForBothEngines() {
+        ManualEngine first = new ManualEngine();
+        ManualEngine second = new ManualEngine();
+        Recorder recorder = new Recorder();
+
+        new RaceEngine(first, second).detect(frame(), recorder);
+        second.complete(0, Collections.emptyList());
+        assertEquals(Collections.singletonList("candidates"), recorder.events);
+        first.complete(0, Collections.emptyList());
+
+        assertEquals(Arrays.asList("candidates", "candidates", "empty", "complete"), recorder.events);
+    }
+
+    @Test
+    public void busySecondEngineIsSkipped() {
+        ManualEngine first = new ManualEngine();
+        ManualEngine second = new ManualEngine();
+        RaceEngine engine = new RaceEngine(first, second);
+        Recorder recorder = new Recorder();
+
+        engine.detect(frame(), new Recorder());
+        first.complete(0, Collections.emptyList());
+        engine.detect(frame(), recorder);
+
+        assertEquals(2, first.frames.size());
+        assertEquals(1, second.frames.size());
+        first.complete(1, Collections.emptyList());
+        assertEquals(Arrays.asList("candidates", "empty", "complete"), recorder.events);
+
+        // the second engine takes the next frame once completed
+        second.complete(0, Collections.emptyList());
+        engine.detect(frame(), new Recorder());
+        assertEquals(2, second.frames.size());
+    }
+}
@@ -0,0 +1,115 @@
+package io.monaca.plugin.barcodescanner;
+
+import android.graphics.Rect;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Synthetic luma images of codes rendered by ZXing.
+ *
+ * Images are NV21 buffers with a neutral chroma, so they can be passed both as luma
+ * (first width * height bytes) and as NV21 frames.
+ */
+public final class SyntheticCodes {
+
+    private SyntheticCodes() {
+    }
+
+    /**
+     * Render a code filling an image
+     *
+     * @param format code format
+     * @param text   contents
+     * @param width  image width (even)
+     * @param height image height (even)
+     * @return NV21 buffer
+     */
+    public static byte[] render(BarcodeFormat format, String text, int width, int height) {
+        byte[] nv21 = blank(width, height);
+        draw(nv21, width, format, text, 0, 0, width, height);
+        return nv21;
+    }
+
+    /**
+     * Render a code in an area of a blank image
+     *
+     * @param format code format
+     * @param text   contents
+     * @param width  image width (even)
+     * @param height image height (even)
+     * @param area   area of the code in the image
+     * @return NV21 buffer
+     */
+    public static byte[] render(BarcodeFormat format, String text, int width, int height, Rect area) {
+        byte[] nv21 = blank(width, height);
+        draw(nv21, width, format, text, area.left, area.top, area.width(), area.height());
+        return nv21;
+    }
+
+    /**
+     * Render a sheet of QR codes laid out in a grid
+     *
+     * Each code fills a square cell of the given size with a quiet zone of one module,
+     * and the codes contain their index ("code-0", "code-1", ...).
+     *
+     * @param count number of codes
+     * @param cell  cell size (px)
+     * @param width image width (even, at least one cell)
+     * @return NV21 buffer of width x getSheetHeight(count, cell, width)
+     */
+    public static byte[] sheet(int count, int cell, int width) {
+        int columns = width / cell;
+        int height = getSheetHeight(count, cell, width);
+        byte[] nv21 = blank(width, height);
+        for (int i = 0; i < count; i ++) {
+            draw(nv21, width, BarcodeFormat.QR_CODE, "code-" + i, (i % columns) * cell, (i / columns) * cell,
+                    cell, cell);
+        }
+        return nv21;
+    }
+
+    /**
+     * Get the height of a sheet
+     *
+     * @param count number of codes
+     * @param cell  cell size (px)
+     * @param width image width
+     * @return image height (even)
+     */
+    public static int getSheetHeight(int count, int cell, int width) {
+        int columns = width / cell;
+        int rows = (count + columns - 1) / columns;
+        return (rows * cell + 1) & ~1;
+    }
+
+    private static byte[] blank(int width, int height) {
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        Arrays.fill(nv21, 0, width * height, (byte) 255);
+        Arrays.fill(nv21, width * height, nv21.length, (byte) 128);
+        return nv21;
+    }
+
+    private static void draw(byte[] luma, int stride, BarcodeFormat format, String text,
+                             int left, int top, int width, int height) {
+        Map<EncodeHintType, Object> hints = Collections.singletonMap(EncodeHintType.MARGIN, 1);
+        BitMatrix matrix;
+        try {
+            matrix = new MultiFormatWriter().encode(text, format, width, height, hints);
+        } catch (WriterException e) {
+            throw new IllegalArgumentException(e);
+        }
+        for (int y = 0; y < height; y ++) {
+            for (int x = 0; x < width; x ++) {
+                luma[(top + y) * stride + left + x] = (byte) (matrix.get(x, y) ? 0 : 255);
+            }
+        }
+    }
+}
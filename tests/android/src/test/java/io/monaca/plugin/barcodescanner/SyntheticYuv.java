@@ -0,0 +1,140 @@
+package io.monaca.plugin.barcodescanner;
+
+import android.media.Image.Plane;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Synthetic YUV_420_888 planes in the layouts produced by camera HALs.
+ *
+ * Like the buffers of a real Image, the last row of a plane is not padded:
+ * the buffer ends right after the last pixel.
+ */
+public final class SyntheticYuv {
+
+    public enum Layout {
+        /** U and V planes share one VU interleaved buffer, no row padding */
+        NV21,
+        /** Interleaved U and V planes with pixelStride 2 in separate buffers, padded rows */
+        PADDED_SEMI_PLANAR,
+        /** Separate U and V planes with pixelStride 1, padded rows */
+        PADDED_PLANAR
+    }
+
+    /** Row padding used by the padded layouts (bytes) */
+    public static final int ROW_PADDING = 64;
+
+    private SyntheticYuv() {
+    }
+
+    /**
+     * Create planes of an image filled with pseudo random pixels.
+     *
+     * @param width image width (even)
+     * @param height image height (even)
+     * @param layout plane layout
+     * @param seed random seed
+     * @return Y, U and V planes
+     */
+    public static Plane[] create(int width, int height, Layout layout, long seed) {
+        Random random = new Random(seed);
+        int uvWidth = width / 2;
+        int uvHeight = height / 2;
+        switch (layout) {
+            case NV21: {
+                ByteBuffer y = ByteBuffer.wrap(randomBytes(random, width * height));
+                byte[] vu = randomBytes(random, uvWidth * uvHeight * 2);
+                ByteBuffer v = ByteBuffer.wrap(vu, 0, vu.length - 1).slice();
+                ByteBuffer u = ByteBuffer.wrap(vu, 1, vu.length - 1).slice();
+                return new Plane[] {
+                        new SyntheticPlane(y, width, 1),
+                        new SyntheticPlane(u, width, 2),
+                        new SyntheticPlane(v, width, 2)
+                };
+            }
+            case PADDED_SEMI_PLANAR: {
+                int yRowStride = width + ROW_PADDING;
+                int uvRowStride = width + ROW_PADDING;
+                return new Plane[] {
+                        new SyntheticPlane(randomPlane(random, yRowStride, width, height), yRowStride, 1),
+                        new SyntheticPlane(randomPlane(random, uvRowStride, uvWidth * 2 - 1, uvHeight), uvRowStride, 2),
+                        new SyntheticPlane(randomPlane(random, uvRowStride, uvWidth * 2 - 1, uvHeight), uvRowStride, 2)
+                };
+            }
+            case PADDED_PLANAR:
+            default: {
+                int yRowStride = width + ROW_PADDING;
+                int uvRowStride = uvWidth + ROW_PADDING;
+                return new Plane[] {
+                        new SyntheticPlane(randomPlane(random, yRowStride, width, height), yRowStride, 1),
+                        new SyntheticPlane(randomPlane(random, uvRowStride, uvWidth, uvHeight), uvRowStride, 1),
+                        new SyntheticPlane(randomPlane(random, uvRowStride, uvWidth, uvHeight), uvRowStride, 1)
+                };
+            }
+        }
+    }
+
+    /**
+     * Reference conversion reading every pixel with an absolute get().
+     *
+     * @return NV21 data of the crop rectangle
+     */
+    public static byte[] toNV21(Plane[] planes, int left, int top, int width, int height) {
+        byte[] out = new byte[width * height * 3 / 2];
+        int pos = 0;
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                out[pos++] = get(planes[0], left + col, top + row);
+            }
+        }
+        for (int row = 0; row < height / 2; row++) {
+            for (int col = 0; col < width / 2; col++) {
+                out[pos++] = get(planes[2], left / 2 + col, top / 2 + row);
+                out[pos++] = get(planes[1], left / 2 + col, top / 2 + row);
+            }
+        }
+        return out;
+    }
+
+    private static byte get(Plane plane, int x, int y) {
+        return plane.getBuffer().get(y * plane.getRowStride() + x * plane.getPixelStride());
+    }
+
+    private static ByteBuffer randomPlane(Random random, int rowStride, int rowLength, int rows) {
+        return ByteBuffer.wrap(randomBytes(random, (rows - 1) * rowStride + rowLength));
+    }
+
+    private static byte[] randomBytes(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static final class SyntheticPlane extends Plane {
+        private final ByteBuffer buffer;
+        private final int rowStride;
+        private final int pixelStride;
+
+        SyntheticPlane(ByteBuffer buffer, int rowStride, int pixelStride) {
+            this.buffer = buffer;
+            this.rowStride = rowStride;
+            this.pixelStride = pixelStride;
+        }
+
+        @Override
+        public int getRowStride() {
+            return rowStride;
+        }
+
+        @Override
+        public int getPixelStride() {
+            return pixelStride;
+        }
+
+        @Override
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package io.monaca.plugin.barcodescanner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.graphics.Rect;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TiledDetectorTest {
+
+    private static DetectedCode code(String value, Rect box) {
+        return new DetectedCode(Barcode.FORMAT_QR_CODE, value, value, null, Barcode.TYPE_TEXT, box, null);
+    }
+
+    @Test
+    public void tilesCoverImageWithOverlap() {
+        List<Rect> tiles = TiledDetector.getTiles(2500, 1500, 1024, 128);
+
+        // steps of 896: x = 0, 896, 1476 (shifted into the image), y = 0, 476
+        assertEquals(Arrays.asList(
+                new Rect(0, 0, 1024, 1024), new Rect(896, 0, 1920, 1024), new Rect(1476, 0, 2500, 1024),
+                new Rect(0, 476, 1024, 1500), new Rect(896, 476, 1920, 1500), new Rect(1476, 476, 2500, 1500)),
+                tiles);
+    }
+
+    @Test
+    public void smallImageIsOneTile() {
+        assertEquals(Arrays.asList(new Rect(0, 0, 500, 300)), TiledDetector.getTiles(500, 300, 1024, 128));
+    }
+
+    @Test
+    public void everyPixelIsInTile() {
+        int width = 3001;
+        int height = 2003;
+        List<Rect> tiles = TiledDetector.getTiles(width, height, 700, 100);
+        for (int y = 0; y < height; y += 37) {
+            for (int x = 0; x < width; x += 41) {
+                boolean covered = false;
+                for (Rect tile : tiles) {
+                    covered |= tile.contains(x, y);
+                }
+                assertTrue(x + "," + y, covered);
+            }
+        }
+        for (Rect tile : tiles) {
+            assertTrue(new Rect(0, 0, width, height).contains(tile));
+        }
+    }
+
+    @Test
+    public void mapsScaledTileToSourceRect() {
+        assertEquals(new Rect(0, 0, 512, 512), TiledDetector.getSourceRect(new Rect(0, 0, 1024, 1024), 2f, 1000, 800));
+        assertEquals(new Rect(448, 238, 750, 400),
+                TiledDetector.getSourceRect(new Rect(896, 476, 1500, 800), 2f, 750, 400));
+        assertEquals(new Rect(0, 0, 2000, 1600), TiledDetector.getSourceRect(new Rect(0, 0, 1000, 800), 0.5f, 2000, 1600));
+        // rounding never exceeds the image
+        assertEquals(new Rect(332, 0, 333, 333), TiledDetector.getSourceRect(new Rect(999, 0, 1000, 1000), 3f, 333, 333));
+    }
+
+    @Test
+    public void mergesSameCodeInOverlappingTiles() {
+        DetectedCode partial = code("a", new Rect(100, 100, 150, 200));
+        DetectedCode whole = code("a", new Rect(100, 100, 200, 200));
+        DetectedCode other = code("b", new Rect(100, 100, 200, 200));
+        DetectedCode elsewhere = code("a", new Rect(1000, 1000, 1100, 1100));
+
+        List<DetectedCode> merged = TiledDetector.merge(Arrays.asList(partial, other, whole, elsewhere));
+
+        assertEquals(3, merged.size());
+        assertSame(whole, merged.get(0));
+        assertSame(other, merged.get(1));
+        assertSame(elsewhere, merged.get(2));
+    }
+
+    @Test
+    public void mergesCodesWithoutBoxByValue() {
+        List<DetectedCode> merged = TiledDetector.merge(Arrays.asList(code("a", null), code("a", new Rect(0, 0, 10, 10))));
+
+        assertEquals(1, merged.size());
+    }
+
+    @Test
+    public void parsesOptions() throws Exception {
+        assertNull(TiledDetector.Options.fromJSON(null));
+        assertNull(TiledDetector.Options.fromJSON(new JSONObject("{\"enable\": false}")));
+
+        TiledDetector.Options options = TiledDetector.Options.fromJSON(
+                new JSONObject("{\"enable\": true, \"tileSize\": 32, \"overlap\": 100, \"scales\": [1, 0.5, 3, -1]}"));
+        assertEquals(64, options.tileSize);
+        assertEquals(32, options.overlap);
+        assertArrayEquals(new float[] {1f, 0.5f}, options.scales, 0.0001f);
+        assertTrue(options.parallelism >= 1 && options.parallelism <= 4);
+
+        options = TiledDetector.Options.fromJSON(new JSONObject("{\"enable\": true, \"parallelism\": 0}"));
+        assertEquals(1, options.parallelism);
+        options = TiledDetector.Options.fromJSON(new JSONObject("{\"enable\": true, \"parallelism\": 8}"));
+        assertEquals(8, options.parallelism);
+    }
+
+    @Test
+    public void scaledTilesMapToFullImage() {
+        TiledDetector.Options options = new TiledDetector.Options();
+        options.scales = new float[] {1f, 0.5f};
+        List<TiledDetector.Tile> tiles = TiledDetector.getScaledTiles(2500, 1500, 2f, options);
+
+        // 6 tiles at scale 1 and 2 tiles of the 1250x750 image at scale 0.5
+        assertEquals(8, tiles.size());
+        assertEquals(2f, tiles.get(0).toFull, 0.0001f);
+        TiledDetector.Tile scaled = tiles.get(6);
+        assertEquals(new Rect(0, 0, 1024, 750), scaled.rect);
+        assertEquals(1250, scaled.scaledWidth);
+        assertEquals(750, scaled.scaledHeight);
+        assertEquals(4f, scaled.toFull, 0.0001f);
+        assertEquals(new Rect(226, 0, 1250, 750), tiles.get(7).rect);
+    }
+
+    /** Worker reporting a code per tile, named by the tile position */
+    private static final class CountingWorker implements TiledDetector.Worker {
+        static final AtomicInteger running = new AtomicInteger();
+        static final AtomicInteger peak = new AtomicInteger();
+        final AtomicInteger closed;
+        boolean busy = false;
+
+        CountingWorker(AtomicInteger closed) {
+            this.closed = closed;
+        }
+
+        @Override
+        public List<DetectedCode> detect(TiledDetector.Tile tile) throws InterruptedException {
+            // a worker never detects two tiles at once
+            assertTrue(!busy);
+            busy = true;
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(1);
+            running.decrementAndGet();
+            busy = false;
+            return Collections.singletonList(code(tile.rect.left + "," + tile.rect.top, new Rect(tile.rect)));
+        }
+
+        @Override
+        public void close() {
+            closed.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void detectsEveryTileOnceInOrder() throws Exception {
+        TiledDetector.Options options = new TiledDetector.Options();
+        options.tileSize = 100;
+        options.overlap = 0;
+        List<TiledDetector.Tile> tiles = TiledDetector.getScaledTiles(1000, 1000, 1f, options);
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger closed = new AtomicInteger();
+        AtomicInteger firstClosed = new AtomicInteger();
+        CountingWorker.peak.set(0);
+
+        List<DetectedCode> codes = TiledDetector.detect(tiles, new CountingWorker(firstClosed), () -> {
+            created.incrementAndGet();
+            return new CountingWorker(closed);
+        }, 3);
+
+        assertEquals(100, codes.size());
+        for (int i = 0; i < tiles.size(); i ++) {
+            Rect rect = tiles.get(i).rect;
+            assertEquals(rect.left + "," + rect.top, codes.get(i).getText());
+        }
+        assertEquals(2, created.get());
+        assertEquals(2, closed.get());
+        // the worker of the caller belongs to the caller
+        assertEquals(0, firstClosed.get());
+        assertTrue(CountingWorker.peak.get() <= 3);
+    }
+
+    @Test
+    public void singleWorkerRunsOnCallingThread() throws Exception {
+        List<TiledDetector.Tile> tiles = TiledDetector.getScaledTiles(300, 300, 1f, new TiledDetector.Options());
+        Thread caller = Thread.currentThread();
+        List<DetectedCode> codes = TiledDetector.detect(tiles, new TiledDetector.Worker() {
+            @Override
+            public List<DetectedCode> detect(TiledDetector.Tile tile) {
+                assertSame(caller, Thread.currentThread());
+                return Collections.singletonList(code("a", new Rect(tile.rect)));
+            }
+
+            @Override
+            public void close() {
+            }
+        }, () -> {
+            throw new AssertionError("no other worker is needed");
+        }, 4);
+
+        assertEquals(1, codes.size());
+    }
+
+    @Test
+    public void failureOfWorkerStopsDetection() throws Exception {
+        TiledDetector.Options options = new TiledDetector.Options();
+        options.tileSize = 100;
+        options.overlap = 0;
+        List<TiledDetector.Tile> tiles = TiledDetector.getScaledTiles(1000, 1000, 1f, options);
+        ExecutionException error = new ExecutionException(new IllegalStateException("detector"));
+        AtomicInteger detected = new AtomicInteger();
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        TiledDetector.WorkerFactory factory = () -> new TiledDetector.Worker() {
+            @Override
+            public List<DetectedCode> detect(TiledDetector.Tile tile) throws ExecutionException {
+                threads.add(Thread.currentThread());
+                if (detected.incrementAndGet() == 10) {
+                    throw error;
+                }
+                return Collections.emptyList();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        try {
+            TiledDetector.detect(tiles, factory.create(), factory, 2);
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(error, e);
+        }
+        assertTrue(detected.get() < tiles.size());
+        // the workers are terminated before returning
+        for (Thread thread : threads) {
+            if (thread != Thread.currentThread()) {
+                thread.join(1000);
+                assertTrue(!thread.isAlive());
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package io.monaca.plugin.barcodescanner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ZxingEngineTest {
+
+    private static final String EAN = "4901234567894";
+
+    /** Render a code into an NV21 buffer (white chroma-less frame) */
+    private static byte[] render(BarcodeFormat format, String text, int width, int height) throws WriterException {
+        BitMatrix matrix = new MultiFormatWriter().encode(text, format, width, height);
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        Arrays.fill(nv21, (byte) 128);
+        for (int y = 0; y < height; y ++) {
+            for (int x = 0; x < width; x ++) {
+                nv21[y * width + x] = (byte) (matrix.get(x, y) ? 0 : 255);
+            }
+        }
+        return nv21;
+    }
+
+    private static List<DetectedCode> detect(ZxingEngine engine, DetectionFrame frame) throws InterruptedException {
+        return detect(engine, frame, new ArrayList<>());
+    }
+
+    private static List<DetectedCode> detect(ZxingEngine engine, DetectionFrame frame,
+                                             List<CodeCandidate> candidates) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<List<DetectedCode>> result = new AtomicReference<>();
+        engine.detect(frame, new DetectionEngine.Callback() {
+            @Override
+            public void onCandidates(List<CodeCandidate> located) {
+                candidates.addAll(located);
+            }
+
+            @Override
+            public void onSuccess(List<DetectedCode> codes) {
+                result.set(codes);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                throw new AssertionError(e);
+            }
+
+            @Override
+            public void onComplete() {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        return result.get();
+    }
+
+    @Test
+    public void qrCodeHasResultPointsInsteadOfCorners() throws Exception {
+        ZxingEngine engine = new ZxingEngine(new int[] {Barcode.FORMAT_QR_CODE}, Runnable::run);
+        byte[] nv21 = render(BarcodeFormat.QR_CODE, "hello", 200, 200);
+        try {
+            List<DetectedCode> codes = detect(engine,
+                    DetectionFrame.fromNV21(nv21, 200, 200, 0, new Rect(100, 50, 300, 250)));
+
+            assertEquals(1, codes.size());
+            DetectedCode code = codes.get(0);
+            assertEquals(Barcode.FORMAT_QR_CODE, code.getFormat());
+            assertEquals("hello", code.getText());
+            assertNull(code.getBoundingBox());
+            assertNull(code.getCornerPoints());
+            assertTrue(code.getResultPoints().length >= 3);
+            for (Point point : code.getResultPoints()) {
+                // offset by the crop of the frame
+                assertTrue(point.x >= 100 && point.x < 300 && point.y >= 50 && point.y < 250);
+            }
+            JSONObject json = code.toJSON();
+            assertTrue(json.has("resultPoints"));
+            assertTrue(!json.has("cornerPoints") && !json.has("boundingBox"));
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    public void decodedQrCodeIsCandidateWithModuleSize() throws Exception {
+        ZxingEngine engine = new ZxingEngine(new int[] {Barcode.FORMAT_QR_CODE}, Runnable::run);
+        // version 1 (21 modules) + quiet zone of 4 modules, 6 pixels per module
+        byte[] nv21 = render(BarcodeFormat.QR_CODE, "hello", 200, 200);
+        List<CodeCandidate> candidates = new ArrayList<>();
+        try {
+            assertEquals(1, detect(engine, DetectionFrame.fromNV21(nv21, 200, 200, 0,
+                    new Rect(0, 0, 200, 200)), candidates).size());
+
+            assertEquals(1, candidates.size());
+            CodeCandidate candidate = candidates.get(0);
+            assertEquals(Barcode.FORMAT_QR_CODE, candidate.getFormat());
+            assertEquals(6, candidate.getPixelsPerModule(), 0.5);
+            // the code is 126 pixels wide from (37, 37)
+            assertEquals(126, candidate.getBoundingBox().width(), 6);
+            assertEquals(37, candidate.getBoundingBox().left, 3);
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    public void undecodedQrCodeIsCandidateByFinderPatterns() throws Exception {
+        ZxingEngine engine = new ZxingEngine(new int[] {Barcode.FORMAT_QR_CODE}, Runnable::run);
+        byte[] nv21 = render(BarcodeFormat.QR_CODE, "hello", 200, 200);
+        // erase the modules outside the finder patterns (9..20) so that the code cannot be decoded
+        for (int y = 37 + 9 * 6; y < 37 + 21 * 6; y ++) {
+            Arrays.fill(nv21, y * 200 + 37 + 9 * 6, y * 200 + 37 + 21 * 6, (byte) 255);
+        }
+        List<CodeCandidate> candidates = new ArrayList<>();
+        try {
+            assertTrue(detect(engine, DetectionFrame.fromNV21(nv21, 200, 200, 0,
+                    new Rect(10, 20, 210, 220)), candidates).isEmpty());
+
+            assertEquals(1, candidates.size());
+            CodeCandidate candidate = candidates.get(0);
+            assertEquals(6, candidate.getPixelsPerModule(), 0.5);
+            assertEquals(10 + 37, candidate.getBoundingBox().left, 3);
+            assertEquals(20 + 37, candidate.getBoundingBox().top, 3);
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    public void linearCodeCandidateUsesTypicalWidth() {
+        CodeCandidate candidate = ZxingEngine.toCandidate(Barcode.FORMAT_EAN_13,
+                new ResultPoint[] {new ResultPoint(0, 50), new ResultPoint(226, 50)}, Collections.emptyList(), 0, 0);
+
+        assertEquals(new Rect(0, 50, 226, 50), candidate.getBoundingBox());
+        // 113 modules including the quiet zones
+        assertEquals(2, candidate.getPixelsPerModule(), 0.001);
+    }
+
+    @Test
+    public void decodesOnlyRequestedFormats() throws Exception {
+        byte[] nv21 = render(BarcodeFormat.EAN_13, EAN, 400, 120);
+        DetectionFrame frame = DetectionFrame.fromNV21(nv21, 400, 120, 0, new Rect(0, 0, 400, 120));
+
+        ZxingEngine qrOnly = new ZxingEngine(new int[] {Barcode.FORMAT_QR_CODE}, Runnable::run);
+        ZxingEngine ean = new ZxingEngine(new int[] {Barcode.FORMAT_EAN_13}, Runnable::run);
+        try {
+            assertTrue(detect(qrOnly, frame).isEmpty());
+            List<DetectedCode> codes = detect(ean, frame);
+            assertEquals(1, codes.size());
+            assertEquals(EAN, codes.get(0).getText());
+            assertEquals(Barcode.TYPE_PRODUCT, codes.get(0).getValueType());
+        } finally {
+            qrOnly.close();
+            ean.close();
+        }
+    }
+
+    @Test
+    public void decodesRotatedFrame() throws Exception {
+        int width = 400;
+        int height = 120;
+        byte[] upright = render(BarcodeFormat.EAN_13, EAN, width, height);
+        // sensor frame which becomes upright when rotated by 90 degrees clockwise
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        ZxingEngine.rotateLuma(upright, width, height, 270, nv21);
+
+        ZxingEngine engine = new ZxingEngine(new int[] {Barcode.FORMAT_EAN_13}, Runnable::run);
+        try {
+            List<DetectedCode> codes = detect(engine,
+                    DetectionFrame.fromNV21(nv21, height, width, 90, new Rect(0, 0, width, height)));
+            assertEquals(1, codes.size());
+            assertEquals(EAN, codes.get(0).getText());
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    public void decodesLumaOnlyFrame() throws Exception {
+        int width = 400;
+        int height = 120;
+        byte[] upright = render(BarcodeFormat.EAN_13, EAN, width, height);
+        byte[] luma = new byte[width * height];
+        ZxingEngine.rotateLuma(upright, width, height, 270, luma);
+
+        ZxingEngine engine = new ZxingEngine(new int[] {Barcode.FORMAT_EAN_13}, false, false, Runnable::run);
+        try {
+            List<DetectedCode> codes = detect(engine,
+                    DetectionFrame.fromLuma(luma, height, width, 90, new Rect(0, 0, width, height)));
+            assertEquals(1, codes.size());
+            assertEquals(EAN, codes.get(0).getText());
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    public void rotateLumaRoundTrips() {
+        byte[] src = {1, 2, 3, 4, 5, 6};
+        byte[] rotated = new byte[6];
+        byte[] back = new byte[6];
+
+        ZxingEngine.rotateLuma(src, 3, 2, 90, rotated);
+        assertEquals("[4, 1, 5, 2, 6, 3]", Arrays.toString(rotated));
+        ZxingEngine.rotateLuma(rotated, 2, 3, 270, back);
+        assertEquals(Arrays.toString(src), Arrays.toString(back));
+    }
+
+    @Test
+    public void rotateLumaMatchesPerPixelRotation() {
+        int width = 37;
+        int height = 23;
+        byte[] src = new byte[width * height];
+        new Random(1).nextBytes(src);
+        for (int rotation : new int[] {0, 90, 180, 270}) {
+            byte[] expected = new byte[src.length];
+            for (int y = 0; y < height; y ++) {
+                for (int x = 0; x < width; x ++) {
+                    int dx = rotation == 90 ? height - 1 - y : rotation == 180 ? width - 1 - x : rotation == 270 ? y : x;
+                    int dy = rotation == 90 ? x : rotation == 180 ? height - 1 - y : rotation == 270 ? width - 1 - x : y;
+                    int dstWidth = rotation % 180 == 0 ? width : height;
+                    expected[dy * dstWidth + dx] = src[y * width + x];
+                }
+            }
+            byte[] rotated = new byte[src.length];
+            ZxingEngine.rotateLuma(src, width, height, rotation, rotated);
+            assertArrayEquals("rotation " + rotation, expected, rotated);
+        }
+    }
+
+    @Test
+    public void singleModeDecodesFirstCodeWithoutTryHarder() throws Exception {
+        ZxingEngine engine = new ZxingEngine(new int[] {Barcode.FORMAT_QR_CODE, Barcode.FORMAT_EAN_13}, false, false,
+                Runnable::run);
+        try {
+            byte[] qr = render(BarcodeFormat.QR_CODE, "hello", 200, 200);
+            List<CodeCandidate> candidates = new ArrayList<>();
+            List<DetectedCode> codes = detect(engine, DetectionFrame.fromNV21(qr, 200, 200, 0,
+                    new Rect(0, 0, 200, 200)), candidates);
+            assertEquals(1, codes.size());
+            assertEquals("hello", codes.get(0).getText());
+            // the result points are the finder patterns themselves
+            assertEquals(1, candidates.size());
+            assertEquals(6, candidates.get(0).getPixelsPerModule(), 0.5);
+
+            // the reader set up once is reused for the next frames
+            byte[] ean = render(BarcodeFormat.EAN_13, EAN, 400, 120);
+            codes = detect(engine, DetectionFrame.fromNV21(ean, 400, 120, 0, new Rect(0, 0, 400, 120)));
+            assertEquals(1, codes.size());
+            assertEquals(EAN, codes.get(0).getText());
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    public void linearCodeKeepsBothEndsAsResultPoints() {
+        Result result = new Result(EAN, null,
+                new ResultPoint[] {new ResultPoint(10.4f, 50), new ResultPoint(190.6f, 50)}, BarcodeFormat.EAN_13);
+
+        DetectedCode code = ZxingEngine.toDetectedCode(result, new int[] {Barcode.FORMAT_ALL_FORMATS}, 5, 7);
+
+        assertNotNull(code);
+        assertNull(code.getBoundingBox());
+        assertNull(code.getCornerPoints());
+        assertEquals(2, code.getResultPoints().length);
+        assertEquals(new Point(15, 57), code.getResultPoints()[0]);
+        assertEquals(new Point(196, 57), code.getResultPoints()[1]);
+    }
+
+    @Test
+    public void filtersFormatsNotRequested() {
+        Result result = new Result(EAN, null, null, BarcodeFormat.EAN_13);
+
+        assertNull(ZxingEngine.toDetectedCode(result, new int[] {Barcode.FORMAT_QR_CODE}, 0, 0));
+        assertNotNull(ZxingEngine.toDetectedCode(result, new int[] {Barcode.FORMAT_EAN_13}, 0, 0));
+        // not supported by MLKit
+        assertNull(ZxingEngine.toDetectedCode(new Result("x", null, null, BarcodeFormat.MAXICODE),
+                new int[] {Barcode.FORMAT_ALL_FORMATS}, 0, 0));
+    }
+}
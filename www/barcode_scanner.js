@@ -8,5 +8,37 @@ BarcodeScanner.prototype.scan = function(success, fail, config) {
   cordova.exec(success, fail, "MonacaBarcodeScannerPlugin", "scan", [config]);
 };
 
+BarcodeScanner.prototype.stop = function(success, fail) {
+  cordova.exec(success, fail, "MonacaBarcodeScannerPlugin", "stop", []);
+};
+
+BarcodeScanner.prototype.openSession = function(success, fail, config) {
+  cordova.exec(success, fail, "MonacaBarcodeScannerPlugin", "openSession", [config]);
+};
+
+BarcodeScanner.prototype.closeSession = function(success, fail) {
+  cordova.exec(success, fail, "MonacaBarcodeScannerPlugin", "closeSession", []);
+};
+
+BarcodeScanner.prototype.scanImage = function(uri, success, fail, config) {
+  cordova.exec(success, fail, "MonacaBarcodeScannerPlugin", "scanImage", [uri, config]);
+};
+
+BarcodeScanner.prototype.scanImages = function(uris, success, fail, config) {
+  cordova.exec(success, fail, "MonacaBarcodeScannerPlugin", "scanImages", [uris, config]);
+};
+
+BarcodeScanner.prototype.cancelScanImages = function(success, fail) {
+  cordova.exec(success, fail, "MonacaBarcodeScannerPlugin", "cancelScanImages", []);
+};
+
+BarcodeScanner.prototype.prepare = function(success, fail, config) {
+  cordova.exec(success, fail, "MonacaBarcodeScannerPlugin", "prepare", [config]);
+};
+
+BarcodeScanner.prototype.getStats = function(success, fail) {
+  cordova.exec(success, fail, "MonacaBarcodeScannerPlugin", "getStats", []);
+};
+
 monaca.BarcodeScanner = new BarcodeScanner();
 module.exports = monaca.BarcodeScanner;